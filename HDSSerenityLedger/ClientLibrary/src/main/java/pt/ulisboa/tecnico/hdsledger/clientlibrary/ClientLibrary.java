@@ -1,6 +1,7 @@
 package pt.ulisboa.tecnico.hdsledger.clientlibrary;
 
 import pt.ulisboa.tecnico.hdsledger.service.services.UDPService;
+import pt.ulisboa.tecnico.hdsledger.shared.SharedScheduler;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.AuthenticatedPerfectLink;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerCheckBalanceRequest;
@@ -11,13 +12,16 @@ import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.NodeProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.crypto.CryptoUtils;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.KeyRegistry;
 import pt.ulisboa.tecnico.hdsledger.shared.logger.ProcessLogger;
 
 import java.text.MessageFormat;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -26,6 +30,8 @@ import java.util.concurrent.atomic.AtomicLong;
 public class ClientLibrary implements UDPService {
 
     private static final boolean AUTHENTICATED_PERFECT_LINK_LOGS_ENABLED = false;
+    // Time to wait for a quorum of matching read-only responses before checking the balance through consensus
+    private static final long READ_TIMEOUT = 2000;
     private final ProcessLogger logger;
     private final ClientProcessConfig clientConfig;
     private final ProcessConfig[] clientsConfig;
@@ -35,6 +41,8 @@ public class ClientLibrary implements UDPService {
     // Response ID -> Sender ID -> Message
     private final Map<Long, Map<String, LedgerResponse>> ledgerResponses = new ConcurrentHashMap<>();
     private final Map<Long, Map<String, LedgerResponse>> ledgerAcks = new ConcurrentHashMap<>();
+    // Request ID -> Read-only balance request not answered yet
+    private final Map<Long, PendingRead> pendingReads = new ConcurrentHashMap<>();
     private AuthenticatedPerfectLink authenticatedPerfectLink;
     private int quorumSize;
     private int f;
@@ -50,6 +58,7 @@ public class ClientLibrary implements UDPService {
                     clientConfig,
                     clientConfig.getPort(),
                     nodesConfig,
+                    new KeyRegistry(nodesConfig, clientsConfig, clientConfig.getId()),
                     AUTHENTICATED_PERFECT_LINK_LOGS_ENABLED
             );
 
@@ -64,6 +73,10 @@ public class ClientLibrary implements UDPService {
 
     /**
      * Checks the balance of an account.
+     * <p>
+     * The balance is first read from the state of the nodes, without consensus, and accepted once a quorum of nodes
+     * answers the same balance for the same consensus instance. If the responses disagree, or no quorum answers in time,
+     * the balance is checked through consensus instead.
      *
      * @param accountId the account id
      */
@@ -77,9 +90,48 @@ public class ClientLibrary implements UDPService {
             return;
         }
 
+        long requestId = requestIdCounter.getAndIncrement();
+        pendingReads.put(requestId, new PendingRead(accountId, new HashMap<>()));
+        SharedScheduler.get().schedule(() -> CompletableFuture.runAsync(
+                () -> fallBackToConsensus(requestId, "no quorum of responses in time")
+        ), READ_TIMEOUT, TimeUnit.MILLISECONDS);
+
+        sendBalanceRequest(requestId, accountId, Message.Type.READ_BALANCE);
+    }
+
+    /**
+     * Checks the balance of an account of a read-only request through consensus, if the request is still pending.
+     *
+     * @param requestId the ID of the read-only request
+     * @param reason    why the read-only request failed
+     */
+    private void fallBackToConsensus(long requestId, String reason) {
+        PendingRead pendingRead = pendingReads.get(requestId);
+        if (pendingRead == null)
+            return;
+
+        // Waits for a response being handled, which may have answered the request
+        synchronized (pendingRead) {
+            if (!pendingReads.remove(requestId, pendingRead))
+                return;
+        }
+
+        logger.info(MessageFormat.format("Could not read balance of account {0} for request ID {1} ({2}). Checking it through consensus...",
+                pendingRead.accountId(), requestId, reason));
+        sendBalanceRequest(requestIdCounter.getAndIncrement(), pendingRead.accountId(), Message.Type.BALANCE);
+    }
+
+    /**
+     * Sends a signed balance request to every node.
+     *
+     * @param requestId the request ID
+     * @param accountId the account id
+     * @param type      BALANCE, to check the balance through consensus, or READ_BALANCE, to read it from the nodes
+     */
+    private void sendBalanceRequest(long requestId, String accountId, Message.Type type) {
         try {
             final var ledgerRequest = LedgerCheckBalanceRequest.builder()
-                    .requestId(requestIdCounter.getAndIncrement())
+                    .requestId(requestId)
                     .accountId(accountId)
                     .requesterId(clientConfig.getId())
                     .build();
@@ -89,7 +141,7 @@ public class ClientLibrary implements UDPService {
 
             final var request = SignedLedgerRequest.builder()
                     .senderId(clientConfig.getId())
-                    .type(Message.Type.BALANCE)
+                    .type(type)
                     .ledgerRequest(ledgerRequest)
                     .signature(signature)
                     .build();
@@ -150,6 +202,7 @@ public class ClientLibrary implements UDPService {
 
                     switch (ledgerResponse.getType()) {
                         case BALANCE_RESPONSE, TRANSFER_RESPONSE -> handleLedgerResponse(ledgerResponse);
+                        case READ_BALANCE_RESPONSE -> handleReadResponse(ledgerResponse);
                         case IGNORE -> { /* Do nothing */ }
                         case LEDGER_ACK -> {
                             final var requestIdAcks = ledgerAcks.computeIfAbsent(ledgerResponse.getOriginalRequestId(), k -> new HashMap<>());
@@ -175,6 +228,56 @@ public class ClientLibrary implements UDPService {
         }).start();
     }
 
+    /**
+     * Handles a read-only balance response, accepting the balance once a quorum of nodes answers it from the same
+     * consensus instance, or checking it through consensus once no response can reach a quorum.
+     *
+     * @param ledgerResponse the read-only response
+     */
+    private void handleReadResponse(LedgerResponse ledgerResponse) {
+        long requestId = ledgerResponse.getOriginalRequestId();
+        PendingRead pendingRead = pendingReads.get(requestId);
+        if (pendingRead == null)
+            return;
+
+        LedgerResponse accepted = null;
+        boolean disagree = false;
+        synchronized (pendingRead) {
+            // Answered, or checked through consensus, in the meantime
+            if (pendingReads.get(requestId) != pendingRead)
+                return;
+
+            pendingRead.responses().putIfAbsent(ledgerResponse.getSenderId(), ledgerResponse);
+
+            HashMap<LedgerResponse, Integer> frequency = new HashMap<>();
+            pendingRead.responses().values().forEach(response -> frequency.merge(response, 1, Integer::sum));
+
+            var mostFrequent = frequency.entrySet().stream().max(Map.Entry.comparingByValue()).orElseThrow();
+            if (mostFrequent.getValue() >= quorumSize) {
+                pendingReads.remove(requestId);
+                accepted = mostFrequent.getKey();
+            } else {
+                // Even if the remaining nodes agree with the most frequent response, it cannot reach a quorum
+                disagree = mostFrequent.getValue() + nodesConfig.length - pendingRead.responses().size() < quorumSize;
+            }
+        }
+
+        if (accepted != null)
+            logger.info(MessageFormat.format("Received balance response: \"{0}\" for request ID {1}", accepted.getMessage(), requestId));
+        else if (disagree)
+            fallBackToConsensus(requestId, "responses disagree");
+    }
+
+    /**
+     * A read-only balance request not answered yet.
+     * Its responses are only accessed while holding its lock.
+     *
+     * @param accountId the account id
+     * @param responses sender ID -> read-only response
+     */
+    private record PendingRead(String accountId, Map<String, LedgerResponse> responses) {
+    }
+
     /**
      * Handles a ledger response, BALANCE or TRANSFER.
      *
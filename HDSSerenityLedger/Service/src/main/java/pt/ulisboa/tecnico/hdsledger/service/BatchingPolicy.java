@@ -0,0 +1,106 @@
+package pt.ulisboa.tecnico.hdsledger.service;
+
+import java.text.MessageFormat;
+
+/**
+ * The {@code BatchingPolicy} class decides when the accumulated requests are cut into a block: when they reach the
+ * batch size, {@link #MAX_BATCH_BYTES}, or the maximum age of the oldest request, whichever comes first.
+ * <p>
+ * The batch size is the number of requests expected to arrive while a consensus instance decides, split among the
+ * instances running at the same time, so blocks grow with the load and a lone request is proposed right away.
+ * A batch waits at most twice the time it is expected to take to fill, and never more than the latency budget.
+ * <p>
+ * This class is thread-safe.
+ */
+public class BatchingPolicy {
+
+    // Bounds of the batch size, in requests
+    public static final int MIN_BATCH_REQUESTS = 1;
+    public static final int MAX_BATCH_REQUESTS = 256;
+    // Maximum size of the requests of a batch, in bytes
+    public static final int MAX_BATCH_BYTES = 128 * 1024;
+    // Smoothing factor for the arrival interval and the decide latency
+    private static final double ALPHA = 1.0 / 8;
+    // Times the expected fill time of a batch it may wait for
+    private static final int FILL_SLACK = 2;
+
+    // Maximum time a request waits to be proposed, in milliseconds
+    private final long latencyBudget;
+    private final int pipelineDepth;
+    private double arrivalInterval = -1;
+    private double decideLatency = -1;
+    private long lastArrival = -1;
+    private int batchSize = MIN_BATCH_REQUESTS;
+
+    public BatchingPolicy(long latencyBudget, int pipelineDepth) {
+        if (latencyBudget < 1)
+            throw new IllegalArgumentException("The latency budget must be at least 1 ms");
+        if (pipelineDepth < 1)
+            throw new IllegalArgumentException("The pipeline depth must be at least 1");
+
+        this.latencyBudget = latencyBudget;
+        this.pipelineDepth = pipelineDepth;
+    }
+
+    /**
+     * Records the arrival of a request.
+     *
+     * @param now The arrival time, in nanoseconds
+     */
+    public synchronized void recordArrival(long now) {
+        if (lastArrival >= 0)
+            arrivalInterval = smooth(arrivalInterval, (now - lastArrival) / 1_000_000.0);
+
+        lastArrival = now;
+        updateBatchSize();
+    }
+
+    /**
+     * Records the time a consensus instance took to decide.
+     *
+     * @param latency The time from the proposal to the decision, in milliseconds
+     */
+    public synchronized void recordDecide(double latency) {
+        decideLatency = smooth(decideLatency, latency);
+        updateBatchSize();
+    }
+
+    /**
+     * Returns the number of requests at which a block is cut.
+     *
+     * @return The batch size
+     */
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Returns the maximum time the oldest accumulated request waits before a block is cut.
+     *
+     * @return The maximum age, in milliseconds
+     */
+    public synchronized long getMaxAge() {
+        if (arrivalInterval < 0)
+            return latencyBudget;
+
+        return Math.clamp(Math.round(FILL_SLACK * batchSize * arrivalInterval), 1, latencyBudget);
+    }
+
+    private void updateBatchSize() {
+        if (arrivalInterval <= 0 || decideLatency < 0)
+            return;
+
+        long expectedArrivals = Math.round(Math.ceil(decideLatency / (arrivalInterval * pipelineDepth)));
+        batchSize = (int) Math.clamp(expectedArrivals, MIN_BATCH_REQUESTS, MAX_BATCH_REQUESTS);
+    }
+
+    private static double smooth(double average, double sample) {
+        return average < 0 ? sample : (1 - ALPHA) * average + ALPHA * sample;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MessageFormat.format("Batching(size={0}, maxAge={1}ms, arrivalInterval={2}ms, decideLatency={3}ms)",
+                batchSize, getMaxAge(), arrivalInterval, decideLatency);
+    }
+}
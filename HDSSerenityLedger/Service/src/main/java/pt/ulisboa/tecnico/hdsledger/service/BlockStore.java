@@ -0,0 +1,131 @@
+package pt.ulisboa.tecnico.hdsledger.service;
+
+import pt.ulisboa.tecnico.hdsledger.shared.models.Block;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code BlockStore} class keeps the proposed blocks by their digest, since consensus messages other than
+ * PRE-PREPARE only carry the digest of the block they refer to.
+ * <p>
+ * Blocks fetched from other nodes are only stored if someone is waiting for them, and are stored under the digest
+ * computed locally, so a node cannot make another one store a block under a digest that does not match it.
+ * <p>
+ * Only the first copy of a block is stored, and the copies received later are replaced by it, so all the messages
+ * referring to a block share the same object.
+ * <p>
+ * This class is thread-safe.
+ */
+public class BlockStore {
+
+    // Digest -> Stored block
+    private final Map<String, StoredBlock> blocks = new HashMap<>();
+    // Digest -> Block being waited for
+    private final Map<String, AwaitedBlock> awaited = new HashMap<>();
+
+    /**
+     * Stores a block proposed for a consensus instance.
+     *
+     * @param consensusInstance The consensus instance
+     * @param digest            The digest of the block
+     * @param block             The block
+     * @return The stored block, which is a previously stored copy of the block if there is one
+     */
+    public synchronized Block put(int consensusInstance, String digest, Block block) {
+        Block storedBlock = blocks.computeIfAbsent(digest, k -> new StoredBlock(consensusInstance, block)).block();
+
+        AwaitedBlock awaitedBlock = awaited.remove(digest);
+        if (awaitedBlock != null)
+            awaitedBlock.block.complete(storedBlock);
+
+        return storedBlock;
+    }
+
+    /**
+     * Stores a block fetched from another node, if someone is waiting for it.
+     *
+     * @param consensusInstance The consensus instance
+     * @param block             The block
+     * @return True if the block was stored
+     */
+    public boolean offer(int consensusInstance, Block block) {
+        String digest = block.getDigest();
+
+        synchronized (this) {
+            if (!awaited.containsKey(digest))
+                return false;
+
+            put(consensusInstance, digest, block);
+            return true;
+        }
+    }
+
+    /**
+     * Gets a block by its digest.
+     *
+     * @param digest The digest of the block
+     * @return The block, if stored
+     */
+    public synchronized Optional<Block> get(String digest) {
+        return Optional.ofNullable(blocks.get(digest)).map(StoredBlock::block);
+    }
+
+    /**
+     * Gets a block by its digest, once it is stored.
+     * Nothing waits for the block: the returned future is completed by whoever stores it, or by the timeout.
+     *
+     * @param digest  The digest of the block
+     * @param timeout The maximum time to wait, in milliseconds
+     * @return A future completed with the block, or with empty if it was not stored before the timeout
+     */
+    public CompletableFuture<Optional<Block>> await(String digest, long timeout) {
+        final AwaitedBlock awaitedBlock;
+        synchronized (this) {
+            if (blocks.containsKey(digest))
+                return CompletableFuture.completedFuture(Optional.of(blocks.get(digest).block()));
+
+            awaitedBlock = awaited.computeIfAbsent(digest, k -> new AwaitedBlock());
+            awaitedBlock.waiters++;
+        }
+
+        CompletableFuture<Optional<Block>> result = awaitedBlock.block.thenApply(Optional::of)
+                .completeOnTimeout(Optional.empty(), timeout, TimeUnit.MILLISECONDS);
+
+        result.whenComplete((block, e) -> {
+            synchronized (this) {
+                if (--awaitedBlock.waiters == 0)
+                    awaited.remove(digest, awaitedBlock);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * Removes the blocks proposed for consensus instances before the given one.
+     *
+     * @param consensusInstance The oldest consensus instance whose blocks are kept
+     */
+    public synchronized void prune(int consensusInstance) {
+        blocks.values().removeIf(storedBlock -> storedBlock.consensusInstance() < consensusInstance);
+    }
+
+    /**
+     * A block and the consensus instance it was proposed for.
+     */
+    private record StoredBlock(int consensusInstance, Block block) {
+    }
+
+    /**
+     * A block being waited for and the number of fetches waiting for it.
+     */
+    private static final class AwaitedBlock {
+        private final CompletableFuture<Block> block = new CompletableFuture<>();
+        // Guarded by the block store
+        private int waiters;
+    }
+}
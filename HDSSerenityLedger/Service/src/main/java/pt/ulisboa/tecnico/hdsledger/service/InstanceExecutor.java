@@ -0,0 +1,123 @@
+package pt.ulisboa.tecnico.hdsledger.service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntFunction;
+
+/**
+ * The {@code InstanceExecutor} class drives each consensus instance as an actor: the tasks of an instance are queued
+ * in its own mailbox and run one at a time, in the order they were submitted, while the tasks of different instances
+ * run in parallel on a shared pool.
+ * <p>
+ * A mailbox only starts running once its instance is ready, so tasks for instances that cannot be handled yet
+ * are kept queued instead of holding a thread.
+ * <p>
+ * Tasks must never block: a task that needs something that is not available yet, such as a block being fetched,
+ * submits its continuation to the mailbox once it is, so the pool only needs one thread per processor.
+ * <p>
+ * This class is thread-safe.
+ */
+public class InstanceExecutor {
+
+    // Maximum number of tasks run before handing the thread to the other mailboxes
+    private static final int TASKS_PER_RUN = 32;
+
+    private final ForkJoinPool pool;
+    // Consensus instance -> Future completed when the instance is ready to run its tasks
+    private final IntFunction<CompletableFuture<?>> readiness;
+    // Consensus instance -> Mailbox
+    private final Map<Integer, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    public InstanceExecutor(IntFunction<CompletableFuture<?>> readiness) {
+        this.readiness = readiness;
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+    }
+
+    /**
+     * Queues a task in the mailbox of a consensus instance.
+     *
+     * @param consensusInstance The consensus instance
+     * @param task              The task
+     */
+    public void submit(int consensusInstance, Runnable task) {
+        // Queued inside compute, so the mailbox cannot be pruned in between
+        mailboxes.compute(consensusInstance, (k, mailbox) -> {
+            if (mailbox == null)
+                mailbox = new Mailbox(readiness.apply(consensusInstance));
+
+            mailbox.tasks.add(task);
+            mailbox.schedule();
+            return mailbox;
+        });
+    }
+
+    /**
+     * Runs a task on the shared pool, outside of any mailbox.
+     * Used for tasks that do not touch the state of a consensus instance, and must not wait behind its tasks.
+     *
+     * @param task The task
+     */
+    public void execute(Runnable task) {
+        pool.execute(task);
+    }
+
+    /**
+     * Removes the idle mailboxes of the consensus instances before the given one.
+     * A task submitted later for one of them creates a new mailbox.
+     *
+     * @param consensusInstance The oldest consensus instance whose mailbox is kept
+     */
+    public void prune(int consensusInstance) {
+        mailboxes.keySet().stream()
+                .filter(instance -> instance < consensusInstance)
+                .forEach(instance -> mailboxes.computeIfPresent(instance, (k, mailbox) -> mailbox.isIdle() ? null : mailbox));
+    }
+
+    /**
+     * The tasks of a consensus instance, run by at most one thread at a time.
+     */
+    private final class Mailbox implements Runnable {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        // Whether the mailbox is queued in or running on the pool
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private final CompletableFuture<?> ready;
+
+        private Mailbox(CompletableFuture<?> ready) {
+            this.ready = ready;
+            ready.thenRun(this::schedule);
+        }
+
+        private void schedule() {
+            if (ready.isDone() && !tasks.isEmpty() && scheduled.compareAndSet(false, true))
+                pool.execute(this);
+        }
+
+        private boolean isIdle() {
+            return !scheduled.get() && tasks.isEmpty();
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = 0; i < TASKS_PER_RUN; i++) {
+                    Runnable task = tasks.poll();
+                    if (task == null)
+                        break;
+
+                    task.run();
+                }
+            } finally {
+                scheduled.set(false);
+                // Tasks queued while the last one ran would otherwise be left behind
+                schedule();
+            }
+        }
+    }
+}
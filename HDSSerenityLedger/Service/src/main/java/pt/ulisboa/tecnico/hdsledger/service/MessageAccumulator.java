@@ -1,64 +1,174 @@
 package pt.ulisboa.tecnico.hdsledger.service;
 
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.BinaryWireCodec;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
 import pt.ulisboa.tecnico.hdsledger.shared.config.NodeProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.models.Block;
+import pt.ulisboa.tecnico.hdsledger.shared.models.RequestReference;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 /**
  * The {@code MessageAccumulator} class represents a mempool for the ledger requests.
- * It accumulates requests until a threshold is reached or a timer expires.
+ * It accumulates requests until the {@link BatchingPolicy} cuts them into a block.
+ * <p>
+ * Requests are indexed by client ID and request ID, so a request is only admitted once and is found and removed in
+ * constant time. The requests of each client are kept in the order they arrived, and blocks take them in that order,
+ * one client at a time, so a client cannot fill every block with its own requests.
+ * <p>
+ * Requests proposed in a consensus instance that is still running are left out of new blocks, so that the instances
+ * running at the same time propose different requests. They are proposed again if the instance decides another block.
+ * Requests not proposed for {@link #MAX_REQUEST_AGE} milliseconds, and the oldest ones once the mempool holds
+ * {@link #MAX_MEMPOOL_BYTES}, are evicted.
+ * <p>
+ * This class is thread-safe.
  */
 public class MessageAccumulator {
 
-    private static final int TRANSACTION_THRESHOLD = 3;
-    private final List<SignedLedgerRequest> accumulatedMessages = new ArrayList<>();
+    // Maximum time a request waits to be proposed before it is evicted, in milliseconds
+    public static final long MAX_REQUEST_AGE = 60_000;
+    // Maximum size of the accumulated requests, in bytes
+    public static final long MAX_MEMPOOL_BYTES = 16L * 1024 * 1024;
+
+    // Client ID -> Request ID -> Request, in arrival order
+    private final Map<String, LinkedHashMap<Long, PendingRequest>> clientRequests = new LinkedHashMap<>();
+    // Consensus instance -> Requests proposed in it
+    private final Map<Integer, List<PendingRequest>> proposedRequests = new HashMap<>();
+    // Consensus instance -> Time its first block was proposed, in nanoseconds
+    private final Map<Integer, Long> proposedAt = new HashMap<>();
+    // Number and encoded size of the requests not proposed in a running instance
+    private int unproposedCount = 0;
+    private long unproposedBytes = 0;
+    // Encoded size of all the accumulated requests, in bytes
+    private long accumulatedBytes = 0;
     private final NodeProcessConfig config;
+    private final BatchingPolicy batchingPolicy;
 
     public MessageAccumulator(NodeProcessConfig config) {
         this.config = config;
+        this.batchingPolicy = new BatchingPolicy(config.getMaxBatchDelay(), config.getPipelineDepth());
     }
 
     /**
-     * Accumulates a request.
+     * Accumulates a request, unless a request with the same client and request ID is already accumulated.
+     * Evicts the requests that waited too long, and the oldest ones if the mempool is full.
      *
      * @param request the request to accumulate
+     * @return true if the request was accumulated, false otherwise
+     */
+    public synchronized boolean accumulate(SignedLedgerRequest request) {
+        long now = System.nanoTime();
+        evictExpired(now);
+
+        var requests = clientRequests.computeIfAbsent(request.getSenderId(), k -> new LinkedHashMap<>());
+        long requestId = request.getLedgerRequest().getRequestId();
+        if (requests.containsKey(requestId))
+            return false;
+
+        PendingRequest pendingRequest = new PendingRequest(request, now, BinaryWireCodec.encodePayload(request).length);
+        if (!evictForSpace(pendingRequest.size)) {
+            if (requests.isEmpty())
+                clientRequests.remove(request.getSenderId());
+            return false;
+        }
+
+        requests.put(requestId, pendingRequest);
+        accumulatedBytes += pendingRequest.size;
+        unproposedCount++;
+        unproposedBytes += pendingRequest.size;
+        batchingPolicy.recordArrival(now);
+        return true;
+    }
+
+    /**
+     * Checks if there are requests not proposed in a running consensus instance.
+     *
+     * @return true if there are unproposed requests, false otherwise
+     */
+    public synchronized boolean hasUnproposedRequests() {
+        return unproposedCount > 0;
+    }
+
+    /**
+     * Checks if the unproposed requests fill a block.
+     *
+     * @return true if a block is full, false otherwise
      */
-    public void accumulate(SignedLedgerRequest request) {
-        accumulatedMessages.add(request);
+    public synchronized boolean isBatchFull() {
+        return unproposedCount >= batchingPolicy.getBatchSize() || unproposedBytes >= BatchingPolicy.MAX_BATCH_BYTES;
+    }
+
+    /**
+     * Gets the time left until the oldest unproposed request reaches the maximum age of a batch.
+     *
+     * @return the time left in milliseconds, zero if it was already reached, or -1 if there are no unproposed requests
+     */
+    public synchronized long getBatchDelay() {
+        long oldestArrival = Long.MAX_VALUE;
+        for (var requests : clientRequests.values()) {
+            for (var pendingRequest : requests.values()) {
+                if (pendingRequest.proposedIn == -1) {
+                    oldestArrival = Math.min(oldestArrival, pendingRequest.arrivedAt);
+                    break;
+                }
+            }
+        }
+
+        if (oldestArrival == Long.MAX_VALUE)
+            return -1;
+
+        long age = (System.nanoTime() - oldestArrival) / 1_000_000;
+        return Math.max(batchingPolicy.getMaxAge() - age, 0);
     }
 
     /**
-     * Checks if there are enough requests to create a block.
+     * Gets the current batch size.
      *
-     * @return true if there are enough requests, false otherwise
+     * @return the number of requests at which a block is cut
      */
-    public boolean enoughRequests() {
-        return accumulatedMessages.size() >= TRANSACTION_THRESHOLD;
+    public int getBatchSize() {
+        return batchingPolicy.getBatchSize();
     }
 
     /**
-     * Gets a block of requests.
+     * Gets a block of unproposed requests, up to the batch size and {@link BatchingPolicy#MAX_BATCH_BYTES}.
+     * The requests are taken one client at a time, each client's in the order they arrived.
      *
-     * @return an optional block of requests
+     * @return a block of requests
      */
     public synchronized Block getBlock() {
-        var block = new Block();
+        int batchSize = batchingPolicy.getBatchSize();
+        List<SignedLedgerRequest> requests = new ArrayList<>();
+        long bytes = 0;
 
-        for (int i = 0; i < Math.min(TRANSACTION_THRESHOLD, accumulatedMessages.size()); i++) {
-            var request = accumulatedMessages.get(i);
-            if (request == null)
-                break;
+        List<Iterator<PendingRequest>> clients = new ArrayList<>(clientRequests.size());
+        for (var clientQueue : clientRequests.values())
+            clients.add(clientQueue.values().iterator());
 
-            block.addRequest(request);
-        }
+        while (!clients.isEmpty()) {
+            var clientIterator = clients.iterator();
+            while (clientIterator.hasNext()) {
+                PendingRequest pendingRequest = nextUnproposed(clientIterator.next());
+                if (pendingRequest == null) {
+                    clientIterator.remove();
+                    continue;
+                }
 
-        block.setCreatorId(config.getId());
+                bytes += pendingRequest.size;
+                if (requests.size() >= batchSize || bytes > BatchingPolicy.MAX_BATCH_BYTES && !requests.isEmpty())
+                    return new Block(requests, config.getId());
 
+                requests.add(pendingRequest.request);
+            }
+        }
 
-        return block;
+        return new Block(requests, config.getId());
     }
 
     /**
@@ -66,7 +176,182 @@ public class MessageAccumulator {
      *
      * @param request the request to remove
      */
-    public void remove(SignedLedgerRequest request) {
-        accumulatedMessages.remove(request);
+    public synchronized void remove(SignedLedgerRequest request) {
+        var requests = clientRequests.get(request.getSenderId());
+        if (requests == null)
+            return;
+
+        PendingRequest pendingRequest = requests.remove(request.getLedgerRequest().getRequestId());
+        if (pendingRequest == null)
+            return;
+
+        if (requests.isEmpty())
+            clientRequests.remove(request.getSenderId());
+
+        accumulatedBytes -= pendingRequest.size;
+        if (pendingRequest.proposedIn == -1) {
+            unproposedCount--;
+            unproposedBytes -= pendingRequest.size;
+        }
+
+        // Left in the list of its consensus instance, which is released with it
+        pendingRequest.proposedIn = -1;
+        pendingRequest.removed = true;
+    }
+
+    /**
+     * Removes the requests of a decided block from the accumulator.
+     *
+     * @param block the decided block
+     */
+    public synchronized void removeAll(Block block) {
+        block.getRequests().forEach(this::remove);
+    }
+
+    /**
+     * Marks the accumulated requests of a block as proposed in a consensus instance.
+     *
+     * @param consensusInstance the consensus instance
+     * @param block             the proposed block
+     */
+    public synchronized void markProposed(int consensusInstance, Block block) {
+        proposedAt.putIfAbsent(consensusInstance, System.nanoTime());
+
+        for (var request : block.getRequests()) {
+            PendingRequest pendingRequest = get(request.getSenderId(), request.getLedgerRequest().getRequestId());
+            if (pendingRequest == null || pendingRequest.proposedIn == consensusInstance)
+                continue;
+
+            if (pendingRequest.proposedIn == -1) {
+                unproposedCount--;
+                unproposedBytes -= pendingRequest.size;
+            }
+
+            pendingRequest.proposedIn = consensusInstance;
+            proposedRequests.computeIfAbsent(consensusInstance, k -> new ArrayList<>()).add(pendingRequest);
+        }
+    }
+
+    /**
+     * Makes the requests proposed in a consensus instance that has finished available to new blocks again.
+     * The requests of the decided block are removed separately.
+     * The time the instance took to decide, since its block was proposed, adapts the batch size.
+     *
+     * @param consensusInstance the consensus instance
+     */
+    public synchronized void release(int consensusInstance) {
+        Long startedAt = proposedAt.remove(consensusInstance);
+        if (startedAt != null)
+            batchingPolicy.recordDecide((System.nanoTime() - startedAt) / 1_000_000.0);
+        // Instances are released in order, so a block received late for an earlier one is not kept
+        proposedAt.keySet().removeIf(instance -> instance < consensusInstance);
+
+        List<PendingRequest> requests = proposedRequests.remove(consensusInstance);
+        if (requests == null)
+            return;
+
+        for (var pendingRequest : requests) {
+            // Removed, or proposed again in a later instance
+            if (pendingRequest.removed || pendingRequest.proposedIn != consensusInstance)
+                continue;
+
+            pendingRequest.proposedIn = -1;
+            unproposedCount++;
+            unproposedBytes += pendingRequest.size;
+        }
+    }
+
+    /**
+     * Finds an accumulated request by its reference.
+     *
+     * @param reference the reference to the request
+     * @return the request, if accumulated
+     */
+    public synchronized Optional<SignedLedgerRequest> find(RequestReference reference) {
+        return Optional.ofNullable(get(reference.clientId(), reference.requestId()))
+                .map(pendingRequest -> pendingRequest.request)
+                .filter(reference::matches);
+    }
+
+    private PendingRequest get(String clientId, long requestId) {
+        var requests = clientRequests.get(clientId);
+        return requests == null ? null : requests.get(requestId);
+    }
+
+    private static PendingRequest nextUnproposed(Iterator<PendingRequest> iterator) {
+        while (iterator.hasNext()) {
+            PendingRequest pendingRequest = iterator.next();
+            if (pendingRequest.proposedIn == -1)
+                return pendingRequest;
+        }
+
+        return null;
+    }
+
+    /**
+     * Evicts the unproposed requests that waited more than {@link #MAX_REQUEST_AGE}.
+     * Only the first requests of each client need to be checked, since they are kept in arrival order.
+     *
+     * @param now the current time, in nanoseconds
+     */
+    private void evictExpired(long now) {
+        long maxAge = MAX_REQUEST_AGE * 1_000_000;
+        List<SignedLedgerRequest> expired = new ArrayList<>();
+
+        for (var requests : clientRequests.values()) {
+            for (var pendingRequest : requests.values()) {
+                if (pendingRequest.proposedIn != -1)
+                    continue;
+                if (now - pendingRequest.arrivedAt <= maxAge)
+                    break;
+
+                expired.add(pendingRequest.request);
+            }
+        }
+
+        expired.forEach(this::remove);
+    }
+
+    /**
+     * Evicts the oldest unproposed requests until there is space for a new request.
+     *
+     * @param size the size of the new request, in bytes
+     * @return true if there is space for the request, false otherwise
+     */
+    private boolean evictForSpace(long size) {
+        while (accumulatedBytes + size > MAX_MEMPOOL_BYTES) {
+            PendingRequest oldest = null;
+            for (var requests : clientRequests.values()) {
+                PendingRequest pendingRequest = nextUnproposed(requests.values().iterator());
+                if (pendingRequest != null && (oldest == null || pendingRequest.arrivedAt < oldest.arrivedAt))
+                    oldest = pendingRequest;
+            }
+
+            // The requests of the running instances are never evicted
+            if (oldest == null)
+                return false;
+
+            remove(oldest.request);
+        }
+
+        return true;
+    }
+
+    /**
+     * An accumulated request, with its arrival time, encoded size and the consensus instance it is proposed in.
+     */
+    private static final class PendingRequest {
+        private final SignedLedgerRequest request;
+        private final long arrivedAt;
+        private final int size;
+        // Consensus instance the request was last proposed in, or -1 if it is not proposed in a running instance
+        private int proposedIn = -1;
+        private boolean removed = false;
+
+        private PendingRequest(SignedLedgerRequest request, long arrivedAt, int size) {
+            this.request = request;
+            this.arrivedAt = arrivedAt;
+            this.size = size;
+        }
     }
 }
@@ -2,17 +2,18 @@ package pt.ulisboa.tecnico.hdsledger.service;
 
 import pt.ulisboa.tecnico.hdsledger.service.services.LedgerService;
 import pt.ulisboa.tecnico.hdsledger.service.services.NodeService;
+import pt.ulisboa.tecnico.hdsledger.shared.SharedScheduler;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.AuthenticatedPerfectLink;
 import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.NodeProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfigBuilder;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.KeyRegistry;
 import pt.ulisboa.tecnico.hdsledger.shared.logger.ProcessLogger;
 
 import java.text.MessageFormat;
 import java.util.Arrays;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A node in the system.
@@ -50,25 +51,24 @@ public class Node {
 
         logger.info(MessageFormat.format("Running at \u001B[34m{0}:{1}\u001B[37m", nodeConfig.getHostname(), String.valueOf(nodeConfig.getPort())));
 
+        // Public keys of every node and client, loaded once
+        KeyRegistry keyRegistry = new KeyRegistry(nodeConfigs, clientConfigs, id);
+
         // Abstraction to send and receive messages
-        AuthenticatedPerfectLink authenticatedPerfectLinkToNodes = new AuthenticatedPerfectLink(nodeConfig, nodeConfig.getPort(), nodeConfigs, ACTIVATE_AUTHENTICATED_LINK_NODE_LOGGING);
-        AuthenticatedPerfectLink authenticatedPerfectLinkToClients = new AuthenticatedPerfectLink(nodeConfig, nodeConfig.getClientPort(), clientConfigs, ACTIVATE_AUTHENTICATED_LINK_CLIENT_LOGGING);
+        AuthenticatedPerfectLink authenticatedPerfectLinkToNodes = new AuthenticatedPerfectLink(nodeConfig, nodeConfig.getPort(), nodeConfigs, keyRegistry, ACTIVATE_AUTHENTICATED_LINK_NODE_LOGGING);
+        AuthenticatedPerfectLink authenticatedPerfectLinkToClients = new AuthenticatedPerfectLink(nodeConfig, nodeConfig.getClientPort(), clientConfigs, keyRegistry, ACTIVATE_AUTHENTICATED_LINK_CLIENT_LOGGING);
 
         if (nodeConfig.getBehavior().equals(ProcessConfig.ProcessBehavior.CRASH_AFTER_FIXED_TIME)) {
             var crashTimeout = nodeConfig.getCrashTimeout();
-            new Timer().schedule(new TimerTask() {
-                public void run() {
-                    System.exit(0);
-                }
-            }, crashTimeout);
+            SharedScheduler.get().schedule(() -> System.exit(0), crashTimeout, TimeUnit.MILLISECONDS);
         }
         final MessageAccumulator messageAccumulator = new MessageAccumulator(nodeConfig);
 
         // Service to handle the node's logic - consensus
-        NodeService nodeService = new NodeService(authenticatedPerfectLinkToNodes, authenticatedPerfectLinkToClients, nodeConfig, nodeConfigs, clientConfigs, messageAccumulator);
+        NodeService nodeService = new NodeService(authenticatedPerfectLinkToNodes, authenticatedPerfectLinkToClients, nodeConfig, nodeConfigs, clientConfigs, keyRegistry, messageAccumulator);
 
         // Service to handle the node's logic - ledger
-        LedgerService ledgerService = new LedgerService(authenticatedPerfectLinkToClients, nodeService, clientConfigs, messageAccumulator);
+        LedgerService ledgerService = new LedgerService(authenticatedPerfectLinkToClients, nodeService, keyRegistry, messageAccumulator);
 
         nodeService.listen();
         ledgerService.listen();
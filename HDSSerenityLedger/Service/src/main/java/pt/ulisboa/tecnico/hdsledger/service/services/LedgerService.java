@@ -1,19 +1,20 @@
 package pt.ulisboa.tecnico.hdsledger.service.services;
 
 import pt.ulisboa.tecnico.hdsledger.service.MessageAccumulator;
-import pt.ulisboa.tecnico.hdsledger.shared.MultiThreadTimer;
+import pt.ulisboa.tecnico.hdsledger.shared.RestartableTimer;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.AuthenticatedPerfectLink;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerCheckBalanceRequest;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerResponse;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerTransferRequest;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
-import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.KeyRegistry;
 import pt.ulisboa.tecnico.hdsledger.shared.logger.ProcessLogger;
 
 import java.text.MessageFormat;
-import java.util.TimerTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
@@ -21,27 +22,30 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 public class LedgerService implements UDPService {
 
-    private static final int DELAY = 2000;
-    final MultiThreadTimer timer = new MultiThreadTimer();
+    final RestartableTimer timer = new RestartableTimer();
+    // Starts consensus one block at a time, since starting it may wait for the previous consensus
+    private final ExecutorService proposalExecutor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("ledger-proposer").daemon().factory());
     private final NodeService nodeService;
     private final ProcessLogger logger;
-    private final ClientProcessConfig[] clientsConfig; // All clients configuration
+    private final KeyRegistry keyRegistry; // Public keys of all clients
     private final MessageAccumulator messageAccum;
     // Link to communicate with the clients
     private final AuthenticatedPerfectLink authenticatedPerfectLink;
-    private final AtomicBoolean previousConsensusStartFinished = new AtomicBoolean(true);
+    // Whether a proposal is queued in the proposal executor and has not started yet
+    private final AtomicBoolean proposalQueued = new AtomicBoolean(false);
 
 
     public LedgerService(
             AuthenticatedPerfectLink authenticatedPerfectLink,
             NodeService nodeService,
-            ClientProcessConfig[] clientsConfig,
+            KeyRegistry keyRegistry,
             MessageAccumulator messageAccum
     ) {
         this.nodeService = nodeService;
         this.authenticatedPerfectLink = authenticatedPerfectLink;
         this.logger = new ProcessLogger(LedgerService.class.getName(), nodeService.getConfig().getId());
-        this.clientsConfig = clientsConfig;
+        this.keyRegistry = keyRegistry;
         this.messageAccum = messageAccum;
     }
 
@@ -55,7 +59,7 @@ public class LedgerService implements UDPService {
         logger.info(MessageFormat.format("Received transfer request: {0}", request));
 
         try {
-            boolean validTransfer = request.verifySignature(clientsConfig);
+            boolean validTransfer = request.verifySignature(keyRegistry);
             if (!validTransfer)
                 logger.warn("Failed to transfer: signature of the request is not from the source account.");
 
@@ -92,7 +96,7 @@ public class LedgerService implements UDPService {
         logger.info(MessageFormat.format("Received balance request: {0}", request));
 
         try {
-            if (!request.verifySignature(clientsConfig)) {
+            if (!request.verifySignature(keyRegistry)) {
                 logger.warn("Failed to check balance: signature of the request is not from the requester.");
                 return;
             }
@@ -118,6 +122,24 @@ public class LedgerService implements UDPService {
         }
     }
 
+    /**
+     * Handles a read-only balance request, answering it from the state of the ledger without consensus.
+     * The client accepts the balance once a quorum of nodes answers it from the same state.
+     *
+     * @param request the balance request
+     */
+    public void uponReadBalance(SignedLedgerRequest request) {
+        logger.info(MessageFormat.format("Received read-only balance request: {0}", request));
+
+        if (!request.verifySignature(keyRegistry)) {
+            logger.warn("Failed to read balance: signature of the request is not from the requester.");
+            return;
+        }
+
+        LedgerResponse response = nodeService.getLedger().readBalance(request);
+        authenticatedPerfectLink.send(request.getSenderId(), response);
+    }
+
     /**
      * Accumulate messages and propose a block if the threshold is reached.
      *
@@ -133,54 +155,63 @@ public class LedgerService implements UDPService {
                 && signedLedgerRequest.getSenderId().equals("101"))
             return;
 
-        messageAccum.accumulate(signedLedgerRequest);
+        if (!messageAccum.accumulate(signedLedgerRequest)) {
+            logger.info(MessageFormat.format("Request {0} is already accumulated or does not fit. Not accumulating.", signedLedgerRequest));
+            return;
+        }
 
         checkConsensus();
     }
 
     /**
-     * Checks if there are enough requests to start consensus.
-     * If there are, and the previous consensus has finished, start a new consensus.
-     * Otherwise, start a timer to check again.
+     * Checks if the accumulated requests fill a block.
+     * If they do, queue a proposal. Otherwise, start a timer to propose them when the oldest one is too old.
      */
     private void checkConsensus() {
         logger.debug("Checking consensus...");
-        boolean startConsensus = false;
-        synchronized (previousConsensusStartFinished) {
-            if (previousConsensusStartFinished.get() && messageAccum.enoughRequests()) {
-                previousConsensusStartFinished.set(false);
-                startConsensus = true;
-            }
+
+        if (messageAccum.isBatchFull()) {
+            queueProposal();
+            return;
         }
 
-        if (startConsensus) {
-            nodeService.startConsensus(messageAccum::getBlock);
-            previousConsensusStartFinished.set(true);
-        } else
-            timer.startTimer(new TimerTask() {
-                @Override
-                public void run() {
-                    logger.debug("Timer elapsed. Checking consensus...");
-                    checkConsensusWithoutEnoughRequests();
-                }
-            }, DELAY);
+        long delay = messageAccum.getBatchDelay();
+        if (delay == 0)
+            queueProposal();
+        else if (delay > 0)
+            timer.startTimer(() -> {
+                logger.debug("Timer elapsed. Checking consensus...");
+                queueProposal();
+            }, delay);
+    }
+
+    /**
+     * Queues the proposal of a block, unless one is already queued.
+     */
+    private void queueProposal() {
+        if (proposalQueued.compareAndSet(false, true))
+            proposalExecutor.execute(this::propose);
     }
 
     /**
-     * Checks if there are enough requests to start consensus.
-     * If there are, and the previous consensus has finished, start a new consensus.
-     * Otherwise, wait for the previous consensus to finish.
+     * Starts consensus for a block of the accumulated requests, if there are any not proposed yet once the
+     * consensus instance can start, so the requests decided in the meantime do not lead to an empty block.
+     * Runs in the proposal executor, so the next proposal waits for this one to start.
      */
-    private void checkConsensusWithoutEnoughRequests() {
-        if (previousConsensusStartFinished.get()) {
+    private void propose() {
+        proposalQueued.set(false);
+        nodeService.awaitPipelineSlot();
+
+        if (!messageAccum.hasUnproposedRequests()) {
+            logger.debug("No requests to propose. Not starting consensus");
+            return;
+        }
+
+        try {
             nodeService.startConsensus(messageAccum::getBlock);
-        } else {
-            try {
-                Thread.sleep(100); //TODO: Change to wait-notify
-                checkConsensusWithoutEnoughRequests();
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
+        } finally {
+            // Requests left out of this block, or that arrived while it waited, are proposed later
+            checkConsensus();
         }
     }
 
@@ -202,6 +233,7 @@ public class LedgerService implements UDPService {
                             switch (ledgerRequest.getType()) {
                                 case BALANCE -> uponBalance(ledgerRequest);
                                 case TRANSFER -> uponTransfer(ledgerRequest);
+                                case READ_BALANCE -> uponReadBalance(ledgerRequest);
                                 case IGNORE -> {/* Do nothing */}
                                 default ->
                                         logger.warn(MessageFormat.format("Received unknown message type: {0}", ledgerRequest.getType()));
@@ -1,31 +1,47 @@
 package pt.ulisboa.tecnico.hdsledger.service.services;
 
 import lombok.Getter;
+import pt.ulisboa.tecnico.hdsledger.service.BlockStore;
+import pt.ulisboa.tecnico.hdsledger.service.InstanceExecutor;
 import pt.ulisboa.tecnico.hdsledger.service.MessageAccumulator;
+import pt.ulisboa.tecnico.hdsledger.service.services.message_bucket.CheckpointMessageBucket;
 import pt.ulisboa.tecnico.hdsledger.service.services.message_bucket.CommitMessageBucket;
 import pt.ulisboa.tecnico.hdsledger.service.services.message_bucket.PrepareMessageBucket;
 import pt.ulisboa.tecnico.hdsledger.service.services.message_bucket.RoundChangeMessageBucket;
-import pt.ulisboa.tecnico.hdsledger.shared.MultiThreadTimer;
+import pt.ulisboa.tecnico.hdsledger.shared.RestartableTimer;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.AuthenticatedPerfectLink;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.consensus_message.ConsensusMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
 import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.NodeProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.KeyRegistry;
 import pt.ulisboa.tecnico.hdsledger.shared.logger.ProcessLogger;
 import pt.ulisboa.tecnico.hdsledger.shared.models.Block;
+import pt.ulisboa.tecnico.hdsledger.shared.models.CompactBlock;
 import pt.ulisboa.tecnico.hdsledger.shared.models.InstanceInfo;
 import pt.ulisboa.tecnico.hdsledger.shared.models.Ledger;
 import pt.ulisboa.tecnico.hdsledger.shared.models.PreparedRoundValuePair;
+import pt.ulisboa.tecnico.hdsledger.shared.models.RequestReference;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.TimerTask;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 /**
@@ -36,6 +52,19 @@ public class NodeService implements UDPService {
     // Expire time for the round-change timer
     private static final long ROUND_CHANGE_TIMER_EXPIRE_TIME = 7000;
     private static final int STARTING_ROUND = 1;
+    // Maximum time to wait for a block requested from other nodes, in milliseconds
+    private static final long BLOCK_FETCH_TIMEOUT = 2000;
+    // Number of consensus instances, before the stable checkpoint, whose blocks and commit quorums are kept to answer
+    // block requests and late round-change messages
+    private static final int BLOCK_RETENTION_INSTANCES = 100;
+    // Number of consensus instances between checkpoints
+    private static final int CHECKPOINT_INTERVAL = 10;
+    // Number of consensus instances past the pipeline whose messages are queued, from nodes slightly ahead of this one
+    private static final int FUTURE_INSTANCE_SLACK = CHECKPOINT_INTERVAL;
+    // Messages that change the state of their consensus instance, which is discarded after a stable checkpoint
+    private static final Set<Message.Type> INSTANCE_STATE_TYPES =
+            EnumSet.of(Message.Type.PRE_PREPARE, Message.Type.PREPARE, Message.Type.COMMIT, Message.Type.ROUND_CHANGE);
+    // Last consensus instance whose block was appended to the ledger, all previous ones included
     public final AtomicInteger lastDecidedConsensusInstance = new AtomicInteger(0);
     private final ProcessLogger logger;
     private final MessageAccumulator messageAccum;
@@ -51,6 +80,14 @@ public class NodeService implements UDPService {
     private final CommitMessageBucket commitMessages;
     // Consensus instance -> Round -> List of round-change messages
     private final RoundChangeMessageBucket roundChangeMessages;
+    // Consensus instance -> List of checkpoint messages
+    private final CheckpointMessageBucket checkpointMessages;
+    // Consensus instance -> Digest of the state of the ledger after its block, for the checkpoints not yet stable
+    private final Map<Integer, String> checkpointStateDigests = new ConcurrentHashMap<>();
+    // Last consensus instance whose checkpoint is stable, all the state of the instances up to it is discarded
+    private final AtomicInteger stableCheckpoint = new AtomicInteger(0);
+    // Consensus instance -> Quorum of commit messages that decided it, kept after the rest of its state is discarded
+    private final ConcurrentSkipListMap<Integer, List<SignedMessage>> decidedCertificates = new ConcurrentSkipListMap<>();
     // Store if already received pre-prepare for a given <consensus, round>
     private final Map<Integer, Map<Integer, Boolean>> receivedPrePrepare = new ConcurrentHashMap<>();
     // Store if already received quorum of round-change for a given <consensus, round>
@@ -58,16 +95,20 @@ public class NodeService implements UDPService {
     // Consensus instance information per consensus instance
     private final Map<Integer, InstanceInfo> instanceInfo = new ConcurrentHashMap<>();
     private final AtomicInteger lastProposedConsensusInstance = new AtomicInteger(0);
-    // Timers for the consensus instances, triggering round-change
-    private final Map<Integer, MultiThreadTimer> timers = new ConcurrentHashMap<>();
-    // Lock objects for prepare messages
-    private final Map<Integer, Object> prepareLockObjects = new ConcurrentHashMap<>();
-    // Lock objects for decides
-    private final Map<Integer, Object> decideLockObjects = new ConcurrentHashMap<>();
-    // Lock objects for round-change messages
-    private final Map<Integer, Object> roundChangeLockObjects = new ConcurrentHashMap<>();
-    // Wait for consensus object
-    private final Map<Integer, Object> waitForConsensusObjects = new ConcurrentHashMap<>();
+    // Timers for the consensus instances not decided yet, triggering round-change
+    private final Map<Integer, RestartableTimer> timers = new ConcurrentHashMap<>();
+    // Runs the handlers of each consensus instance one at a time, and different instances in parallel
+    private final InstanceExecutor instanceExecutor;
+    // Consensus instance -> Future completed when its block is appended to the ledger
+    private final Map<Integer, CompletableFuture<Void>> appendedInstances = new ConcurrentHashMap<>();
+    // Public keys and verified signatures of the clients
+    private final KeyRegistry keyRegistry;
+    // Proposed blocks by digest, referred to by the prepare, commit and round-change messages
+    private final BlockStore blockStore = new BlockStore();
+    // Consensus instance -> Decided block waiting for the blocks of the previous instances to be appended
+    private final ConcurrentSkipListMap<Integer, Block> decidedBlocks = new ConcurrentSkipListMap<>();
+    // Block digest -> Requests fetched from the leader, to rebuild a compact pre-prepare
+    private final Map<String, CompletableFuture<Block>> pendingRequestFetches = new ConcurrentHashMap<>();
 
     @Getter
     private final Ledger ledger;
@@ -78,20 +119,26 @@ public class NodeService implements UDPService {
             NodeProcessConfig config,
             NodeProcessConfig[] nodesConfig,
             ClientProcessConfig[] clientsConfig,
+            KeyRegistry keyRegistry,
             MessageAccumulator messageAccum
     ) {
         this.authenticatedPerfectLinkNode = authenticatedPerfectLinkNode;
         this.authenticatedPerfectLinkClient = authenticatedPerfectLinkClient;
         this.config = config;
         this.nodesConfig = nodesConfig;
+        this.keyRegistry = keyRegistry;
 
-        this.prepareMessages = new PrepareMessageBucket(nodesConfig.length);
-        this.commitMessages = new CommitMessageBucket(nodesConfig.length);
-        this.roundChangeMessages = new RoundChangeMessageBucket(nodesConfig.length);
+        List<String> nodeIds = Arrays.stream(nodesConfig).map(ProcessConfig::getId).toList();
+        this.prepareMessages = new PrepareMessageBucket(nodeIds);
+        this.commitMessages = new CommitMessageBucket(nodeIds);
+        this.roundChangeMessages = new RoundChangeMessageBucket(nodeIds);
+        this.checkpointMessages = new CheckpointMessageBucket(nodeIds);
 
         this.logger = new ProcessLogger(NodeService.class.getName(), config.getId());
         this.messageAccum = messageAccum;
-        this.ledger = new Ledger(clientsConfig, nodesConfig, config);
+        this.ledger = new Ledger(clientsConfig, nodesConfig, config, keyRegistry);
+        // The handlers of an instance only run once it enters the pipeline
+        this.instanceExecutor = new InstanceExecutor(this::getPipelineSlot);
     }
 
     /**
@@ -140,10 +187,21 @@ public class NodeService implements UDPService {
         final int localConsensusInstance = getNextConsensusInstanceToPropose();
 
         logger.debug(MessageFormat.format("Starting consensus for instance {0} and waiting for previous consensus", localConsensusInstance));
-        waitForPreviousConsensus(localConsensusInstance);
-        logger.debug(MessageFormat.format("Previous consensus instance {0} decided", localConsensusInstance - 1));
+        // Holds the caller back from proposing further instances, the handlers never wait
+        getPipelineSlot(localConsensusInstance).join();
+        logger.debug(MessageFormat.format("Previous consensus instance {0} decided", localConsensusInstance - config.getPipelineDepth()));
 
+        instanceExecutor.submit(localConsensusInstance, () -> proposeConsensus(localConsensusInstance, inputValueSupplier));
+    }
 
+    /**
+     * Proposes a value for a consensus instance, if the node is the leader, and starts its timer.
+     * Runs in the mailbox of the consensus instance.
+     *
+     * @param localConsensusInstance The consensus instance
+     * @param inputValueSupplier     Value to value agreed upon
+     */
+    private void proposeConsensus(int localConsensusInstance, Supplier<Block> inputValueSupplier) {
         final var existingConsensus = this.instanceInfo.put(localConsensusInstance, new InstanceInfo());
 
         if (existingConsensus != null) {
@@ -164,20 +222,14 @@ public class NodeService implements UDPService {
 
             logger.debug(MessageFormat.format("Proposing consensus for instance {0} with value {1}", localConsensusInstance, inputValue));
 
-            filterRequests(inputValue);
+            inputValue = filterRequests(localConsensusInstance, inputValue);
+            messageAccum.markProposed(localConsensusInstance, inputValue);
 
             final var senderId = this.config.getBehavior() == ProcessConfig.ProcessBehavior.LEADER_IMPERSONATION
                     ? this.config.getId()
                     : getLeaderId(localConsensusInstance, STARTING_ROUND); // Impersonate leader
 
-            final var messageToBroadcast = ConsensusMessage.builder()
-                    .senderId(senderId)
-                    .type(Message.Type.PRE_PREPARE)
-                    .consensusInstance(localConsensusInstance)
-                    .round(STARTING_ROUND)
-                    .value(inputValue)
-                    .messageId(-1)
-                    .build();
+            final var messageToBroadcast = buildPrePrepare(senderId, localConsensusInstance, STARTING_ROUND, inputValue);
 
             if (nodeIsLeader)
                 logger.info(MessageFormat.format("Broadcasting {0} - Node is leader", messageToBroadcast));
@@ -195,22 +247,66 @@ public class NodeService implements UDPService {
         startTimer(localConsensusInstance);
     }
 
+    /**
+     * Builds the pre-prepare message proposing a block, in the block format of the node.
+     * The block is stored, so that the other nodes can fetch it or the requests they are missing.
+     *
+     * @param senderId          The id of the sender of the message
+     * @param consensusInstance The consensus instance
+     * @param round             The round
+     * @param value             The block to propose
+     * @return The pre-prepare message
+     */
+    private ConsensusMessage buildPrePrepare(String senderId, int consensusInstance, int round, Block value) {
+        String digest = value.getDigest();
+        blockStore.put(consensusInstance, digest, value);
+
+        var builder = ConsensusMessage.builder()
+                .senderId(senderId)
+                .type(Message.Type.PRE_PREPARE)
+                .consensusInstance(consensusInstance)
+                .round(round)
+                .messageId(-1);
+
+        if (config.getBlockFormat() == NodeProcessConfig.BlockFormat.COMPACT)
+            builder.compactValue(CompactBlock.of(value)).valueDigest(digest);
+        else
+            builder.value(value);
+
+        return builder.build();
+    }
+
     /**
      * Filters the requests in the block that are invalid, also removing them from the message accumulator.
      *
-     * @param block Block to filter requests
+     * @param consensusInstance Consensus instance the block is proposed for
+     * @param block             Block to filter requests
+     * @return The block with only the valid requests
      */
-    private void filterRequests(Block block) {
-        var iterator = block.getRequests().iterator();
-        while (iterator.hasNext()) {
-            var request = iterator.next();
-            if (!ledger.validateRequest(request)) {
+    private Block filterRequests(int consensusInstance, Block block) {
+        List<Block> pendingBlocks = getPendingBlocks(consensusInstance);
+
+        List<SignedLedgerRequest> validRequests = new ArrayList<>(block.getRequests().size());
+        for (var request : block.getRequests()) {
+            if (ledger.validateRequest(request, pendingBlocks)) {
+                validRequests.add(request);
+            } else {
                 logger.info(MessageFormat.format("Request {0} is invalid. Removing from block...", request));
                 logger.debug(MessageFormat.format("Current ledger: {0}", ledger.getAccounts()));
-                iterator.remove();
                 messageAccum.remove(request);
             }
         }
+
+        return validRequests.size() == block.getRequests().size() ? block : block.withRequests(validRequests);
+    }
+
+    /**
+     * Waits until the next consensus instance to propose enters the pipeline.
+     * Lets the caller decide whether there is anything left to propose once the instance can start.
+     */
+    public void awaitPipelineSlot() {
+        int nextConsensusInstance = Math.max(lastProposedConsensusInstance.get(), lastDecidedConsensusInstance.get()) + 1;
+        getPipelineSlot(nextConsensusInstance).join();
     }
 
     /**
@@ -239,29 +335,64 @@ public class NodeService implements UDPService {
         ConsensusMessage message = ((ConsensusMessage) signedMessage.getMessage());
         int consensusInstance = message.getConsensusInstance();
         int round = message.getRound();
-        Block value = message.getValue();
         String senderId = message.getSenderId();
-        int senderMessageId = message.getMessageId();
 
         logger.info(MessageFormat.format("Received {0} from node {1}", message, senderId));
 
-        if (!waitAndValidate(message)) {
+        // Checked before rebuilding or validating the block, so only the leader can make the node fetch or verify requests
+        if (!isNodeLeader(consensusInstance, round, senderId)) {
+            logger.info(MessageFormat.format("Received PRE-PREPARE({0}, {1}, _) from node {2}, not the leader. Ignoring...", consensusInstance, round, senderId));
+            return;
+        }
+
+        if (message.getValue() != null) {
+            handlePrePrepareBlock(message, message.getValue());
+            return;
+        }
+
+        whenFetched(consensusInstance, rebuildBlock(message), block -> {
+            if (block.isEmpty()) {
+                // The round-change triggered by the timer makes the leader propose again
+                logger.info(MessageFormat.format("Could not rebuild the block of {0}. Ignoring...", message));
+                return;
+            }
+
+            handlePrePrepareBlock(message, block.get());
+        });
+    }
+
+    /**
+     * Handles a pre-prepare message from the leader once its block is known, broadcasting prepare if it is justified.
+     *
+     * @param message Pre-prepare message
+     * @param value   The block of the message
+     */
+    private void handlePrePrepareBlock(ConsensusMessage message, Block value) {
+        int consensusInstance = message.getConsensusInstance();
+        int round = message.getRound();
+        String senderId = message.getSenderId();
+        int senderMessageId = message.getMessageId();
+
+        if (!validateBlock(consensusInstance, value)) {
             logger.info("Received invalid pre-prepare message. Ignoring... " + message);
             logger.debug(MessageFormat.format("Current ledger: {0}", ledger.getAccounts()));
             return;
         }
 
-        if (!isNodeLeader(consensusInstance, round, senderId) || !justifyPrePrepare(consensusInstance, round, value)) {
-            logger.info(MessageFormat.format("Received PRE-PREPARE({0}, {1}, _) from node {2}, but not justified. Replying to acknowledge reception", consensusInstance, round, senderId));
+        String digest = value.getDigest();
 
-            // TODO Improve mechanism. Do not send ACK, keep receiving the same pre-prepare message without treating it as duplicate to eventually make the condition true
+        if (!justifyPrePrepare(consensusInstance, round, digest)) {
+            // The link already acknowledges the reception, so the leader stops retransmitting
+            logger.info(MessageFormat.format("Received PRE-PREPARE({0}, {1}, _) from node {2}, but not justified. Ignoring...", consensusInstance, round, senderId));
 
-            Message responseMessage = new Message(this.config.getId(), Message.Type.ACK);
-            responseMessage.setMessageId(senderMessageId);
-            this.authenticatedPerfectLinkNode.send(senderId, responseMessage);
+            // TODO Improve mechanism. Keep receiving the same pre-prepare message without treating it as duplicate to eventually make the condition true
             return;
         }
 
+        // The same block received again is replaced by the one already stored, so all its copies share one object
+        value = blockStore.put(consensusInstance, digest, value);
+        messageAccum.markProposed(consensusInstance, value);
+
         this.instanceInfo.putIfAbsent(consensusInstance, new InstanceInfo(value));
         receivedPrePrepare.putIfAbsent(consensusInstance, new ConcurrentHashMap<>());
 
@@ -275,7 +406,7 @@ public class NodeService implements UDPService {
                 .type(Message.Type.PREPARE)
                 .consensusInstance(consensusInstance)
                 .round(round)
-                .value(value)
+                .valueDigest(digest)
                 .replyTo(senderId)
                 .replyToMessageId(senderMessageId)
                 .messageId(-1)
@@ -295,12 +426,11 @@ public class NodeService implements UDPService {
         ConsensusMessage message = ((ConsensusMessage) signedMessage.getMessage());
         int consensusInstance = message.getConsensusInstance();
         int round = message.getRound();
-        Block block = message.getValue();
         String senderId = message.getSenderId();
 
         logger.info(MessageFormat.format("Received {0} from node {1}", message, senderId));
 
-        if (!waitAndValidate(message)) {
+        if (!validateBlock(message)) {
             logger.info("Received invalid prepare message. Ignoring... " + message);
             logger.debug(MessageFormat.format("Current ledger: {0}", ledger.getAccounts()));
             return;
@@ -308,71 +438,229 @@ public class NodeService implements UDPService {
 
         prepareMessages.addMessage(signedMessage);
 
-        this.instanceInfo.putIfAbsent(consensusInstance, new InstanceInfo(block));
+        this.instanceInfo.putIfAbsent(consensusInstance, new InstanceInfo(blockStore.get(message.getValueDigest()).orElse(null)));
         InstanceInfo instance = this.instanceInfo.get(consensusInstance);
 
-        synchronized (prepareLockObjects.computeIfAbsent(consensusInstance, k -> new Object())) {
-            if (instance.getPreparedRound() != -1) {
-                logger.info(MessageFormat.format("Already received quorum of PREPARE for Consensus Instance {0}. Replying with COMMIT to make sure it reaches the initial sender", consensusInstance));
+        if (instance.getPreparedRound() != -1) {
+            logger.info(MessageFormat.format("Already received quorum of PREPARE for Consensus Instance {0}. Replying with COMMIT to make sure it reaches the initial sender", consensusInstance));
 
+            this.authenticatedPerfectLinkNode.send(
+                    message.getSenderId(),
+                    ConsensusMessage.builder()
+                            .senderId(config.getId())
+                            .type(Message.Type.COMMIT)
+                            .consensusInstance(consensusInstance)
+                            .round(instance.getPreparedRound())
+                            .replyTo(message.getSenderId())
+                            .replyToMessageId(message.getMessageId())
+                            .valueDigest(instance.getPreparedValueDigest())
+                            .build()
+            );
+
+            return;
+        }
+
+        Optional<String> preparedValueDigest = prepareMessages.hasValidPrepareQuorum(consensusInstance, round);
+
+        if (preparedValueDigest.isPresent() && instance.getPreparedRound() < round) {
+            instance.setPreparedRound(round);
+            instance.setPreparedValueDigest(preparedValueDigest.get());
+
+            // TODO Change to normal broadcast instead of sending only to those who sent prepare messages (needs ACK to be sent in all messages, though)
+
+            logger.info(MessageFormat.format("Received quorum of PREPARE({0}, {1}, {2}). Broadcasting COMMIT({0}, {1}, \u001B[36m{2}\u001B[37m)", consensusInstance, round, preparedValueDigest.get()));
+
+            prepareMessages.getMessages(consensusInstance, round).forEach(senderSignedMessage -> {
+                ConsensusMessage senderMessage = (ConsensusMessage) senderSignedMessage.getMessage();
                 this.authenticatedPerfectLinkNode.send(
-                        message.getSenderId(),
+                        senderMessage.getSenderId(),
                         ConsensusMessage.builder()
                                 .senderId(config.getId())
                                 .type(Message.Type.COMMIT)
                                 .consensusInstance(consensusInstance)
-                                .round(instance.getPreparedRound())
-                                .replyTo(message.getSenderId())
-                                .replyToMessageId(message.getMessageId())
-                                .value(instance.getPreparedValue())
+                                .round(round)
+                                .replyTo(senderMessage.getSenderId())
+                                .replyToMessageId(senderMessage.getMessageId())
+                                .valueDigest(preparedValueDigest.get())
                                 .build()
                 );
+            });
+        }
+    }
 
-                return;
-            }
+    /**
+     * Validates the block contained in the message.
+     * Messages that only carry the digest of the block are valid, since the block was validated with the pre-prepare.
+     *
+     * @param message Consensus message
+     * @return True if the block is valid, false otherwise
+     */
+    public boolean validateBlock(ConsensusMessage message) {
+        return message.getValue() == null || validateBlock(message.getConsensusInstance(), message.getValue());
+    }
 
-            Optional<Block> preparedValue = prepareMessages.hasValidPrepareQuorum(consensusInstance, round);
+    /**
+     * Validates a block against the state of the ledger once the blocks already decided for the previous instances
+     * are appended. Only called once the consensus instance entered the pipeline.
+     *
+     * @param consensusInstance The consensus instance the block is proposed for
+     * @param block             The block
+     * @return True if the block is valid, false otherwise
+     */
+    private boolean validateBlock(int consensusInstance, Block block) {
+        return ledger.validateBlock(block, getPendingBlocks(consensusInstance));
+    }
 
-            if (preparedValue.isPresent() && instance.getPreparedRound() < round) {
-                synchronized (instance) {
-                    instance.setPreparedRound(round);
-                    instance.setPreparedValue(preparedValue.get());
-                }
+    /**
+     * Gets the blocks decided for the consensus instances before the given one that were not appended yet.
+     *
+     * @param consensusInstance The consensus instance
+     * @return The pending blocks, in instance order
+     */
+    private List<Block> getPendingBlocks(int consensusInstance) {
+        return new ArrayList<>(decidedBlocks.headMap(consensusInstance).values());
+    }
 
-                // TODO Change to normal broadcast instead of sending only to those who sent prepare messages (needs ACK to be sent in all messages, though)
-
-                logger.info(MessageFormat.format("Received quorum of PREPARE({0}, {1}, {2}). Broadcasting COMMIT({0}, {1}, \u001B[36m{2}\u001B[37m)", consensusInstance, round, preparedValue.get()));
-
-                prepareMessages.getMessages(consensusInstance, round).values().forEach(senderSignedMessage -> {
-                    ConsensusMessage senderMessage = (ConsensusMessage) senderSignedMessage.getMessage();
-                    this.authenticatedPerfectLinkNode.send(
-                            senderMessage.getSenderId(),
-                            ConsensusMessage.builder()
-                                    .senderId(config.getId())
-                                    .type(Message.Type.COMMIT)
-                                    .consensusInstance(consensusInstance)
-                                    .round(round)
-                                    .replyTo(senderMessage.getSenderId())
-                                    .replyToMessageId(senderMessage.getMessageId())
-                                    .value(preparedValue.get())
-                                    .build()
-                    );
-                });
-            }
+    /**
+     * Rebuilds the block of a compact pre-prepare from the accumulated requests, fetching the missing ones from
+     * the leader.
+     *
+     * @param message Compact pre-prepare message
+     * @return A future completed with the block, or with empty if some of its requests were not found
+     */
+    private CompletableFuture<Optional<Block>> rebuildBlock(ConsensusMessage message) {
+        CompactBlock compactBlock = message.getCompactValue();
+        if (compactBlock == null)
+            return CompletableFuture.completedFuture(Optional.empty());
+
+        Map<RequestReference, SignedLedgerRequest> found = new HashMap<>();
+        List<RequestReference> missing = new ArrayList<>();
+        for (RequestReference reference : compactBlock.getRequests()) {
+            if (found.containsKey(reference))
+                continue;
+
+            messageAccum.find(reference).ifPresentOrElse(
+                    request -> found.put(reference, request),
+                    () -> missing.add(reference)
+            );
         }
+
+        if (missing.isEmpty())
+            return CompletableFuture.completedFuture(assembleBlock(compactBlock, found));
+
+        logger.info(MessageFormat.format("Missing {0} of the {1} requests of {2}. Fetching them from the leader",
+                String.valueOf(missing.size()), String.valueOf(compactBlock.getRequests().size()), message));
+
+        return fetchRequests(message, missing).thenApply(fetched -> {
+            for (SignedLedgerRequest request : fetched) {
+                missing.stream()
+                        .filter(reference -> reference.matches(request))
+                        .forEach(reference -> found.put(reference, request));
+            }
+
+            return assembleBlock(compactBlock, found);
+        });
     }
 
     /**
-     * Waits for the previous consensus to be decided and validates the block contained in the message.
+     * Assembles the block of a compact block from its requests.
      *
-     * @param message Consensus message
-     * @return True if the block is valid, false otherwise
+     * @param compactBlock The compact block
+     * @param found        The requests found, by reference
+     * @return The block, if all of its requests were found
      */
-    public boolean waitAndValidate(ConsensusMessage message) {
-        waitForPreviousConsensus(message.getConsensusInstance());
-        final var block = message.getValue();
+    private static Optional<Block> assembleBlock(CompactBlock compactBlock, Map<RequestReference, SignedLedgerRequest> found) {
+        if (!found.keySet().containsAll(compactBlock.getRequests()))
+            return Optional.empty();
 
-        return ledger.validateBlock(block);
+        List<SignedLedgerRequest> requests = new ArrayList<>();
+        compactBlock.getRequests().forEach(reference -> requests.add(found.get(reference)));
+
+        return Optional.of(new Block(requests, compactBlock.getCreatorId()));
+    }
+
+    /**
+     * Requests the given requests of a compact pre-prepare from its sender.
+     *
+     * @param message Compact pre-prepare message
+     * @param missing The references to the missing requests
+     * @return A future completed with the requests received before the timeout, which may not be the requested ones
+     */
+    private CompletableFuture<List<SignedLedgerRequest>> fetchRequests(ConsensusMessage message, List<RequestReference> missing) {
+        if (message.getValueDigest() == null)
+            return CompletableFuture.completedFuture(List.of());
+
+        CompletableFuture<Block> response = new CompletableFuture<>();
+        if (pendingRequestFetches.putIfAbsent(message.getValueDigest(), response) != null)
+            return CompletableFuture.completedFuture(List.of());
+
+        this.authenticatedPerfectLinkNode.send(
+                message.getSenderId(),
+                ConsensusMessage.builder()
+                        .senderId(config.getId())
+                        .type(Message.Type.FETCH_REQUESTS)
+                        .consensusInstance(message.getConsensusInstance())
+                        .round(message.getRound())
+                        .compactValue(new CompactBlock(missing, message.getCompactValue().getCreatorId()))
+                        .valueDigest(message.getValueDigest())
+                        .build()
+        );
+
+        return response.completeOnTimeout(null, BLOCK_FETCH_TIMEOUT, TimeUnit.MILLISECONDS)
+                .whenComplete((block, e) -> pendingRequestFetches.remove(message.getValueDigest(), response))
+                .thenApply(block -> block == null ? List.of() : block.getRequests());
+    }
+
+    /**
+     * Gets a block by its digest, requesting it from the given nodes if it is not stored yet.
+     *
+     * @param consensusInstance The consensus instance the block was proposed for
+     * @param round             The round the block was proposed in
+     * @param digest            The digest of the block
+     * @param nodeIds           The nodes that are expected to have the block
+     * @return A future completed with the block, or with empty if it was not received before the timeout
+     */
+    private CompletableFuture<Optional<Block>> fetchBlock(int consensusInstance, int round, String digest, Collection<String> nodeIds) {
+        Optional<Block> block = blockStore.get(digest);
+        if (block.isPresent())
+            return CompletableFuture.completedFuture(block);
+
+        ConsensusMessage request = ConsensusMessage.builder()
+                .senderId(config.getId())
+                .type(Message.Type.BLOCK_REQUEST)
+                .consensusInstance(consensusInstance)
+                .round(round)
+                .valueDigest(digest)
+                .build();
+
+        logger.info(MessageFormat.format("Block {0} not known. Requesting it from nodes {1}", digest, nodeIds));
+
+        // Registered before requesting, so the response is not discarded as unrequested
+        CompletableFuture<Optional<Block>> fetched = blockStore.await(digest, BLOCK_FETCH_TIMEOUT);
+
+        nodeIds.stream()
+                .filter(nodeId -> !nodeId.equals(config.getId()))
+                .forEach(nodeId -> this.authenticatedPerfectLinkNode.send(nodeId, request));
+
+        return fetched;
+    }
+
+    /**
+     * Runs a continuation of a handler once a block is fetched, without waiting for it.
+     * If the block is already known, the continuation runs right away, otherwise it is queued in the mailbox of the
+     * consensus instance when the fetch completes.
+     *
+     * @param consensusInstance The consensus instance of the handler
+     * @param fetch             The fetch of the block
+     * @param continuation      The rest of the handler
+     */
+    private void whenFetched(int consensusInstance, CompletableFuture<Optional<Block>> fetch, Consumer<Optional<Block>> continuation) {
+        if (fetch.isDone()) {
+            continuation.accept(fetch.join());
+            return;
+        }
+
+        fetch.thenAccept(block -> instanceExecutor.submit(consensusInstance, () -> continuation.accept(block)));
     }
 
 
@@ -388,7 +676,7 @@ public class NodeService implements UDPService {
 
         logger.info(MessageFormat.format("Received {0} from node {1}", message, message.getSenderId()));
 
-        if (!waitAndValidate(message)) {
+        if (!validateBlock(message)) {
             logger.info(MessageFormat.format("Received invalid commit message. Ignoring... {0}", message));
             logger.debug(MessageFormat.format("Current ledger: {0}", ledger.getAccounts()));
             return;
@@ -404,66 +692,231 @@ public class NodeService implements UDPService {
             return;
         }
 
-        synchronized (decideLockObjects.computeIfAbsent(consensusInstance, k -> new Object())) {
-            if (instance.alreadyDecided()) {
-                logger.info(MessageFormat.format("Received {0} from node {1} but already decided for Consensus Instance {2}, ignoring...", message, message.getSenderId(), consensusInstance));
-                return;
-            }
+        if (instance.alreadyDecided()) {
+            logger.info(MessageFormat.format("Received {0} from node {1} but already decided for Consensus Instance {2}, ignoring...", message, message.getSenderId(), consensusInstance));
+            return;
+        }
 
-            Optional<Block> commitValue = commitMessages.hasValidCommitQuorum(consensusInstance, round);
+        Optional<String> commitValueDigest = commitMessages.hasValidCommitQuorum(consensusInstance, round);
 
-            if (commitValue.isPresent()) {
-                stopTimer(consensusInstance);
+        if (commitValueDigest.isPresent()) {
+            String digest = commitValueDigest.get();
+            whenFetched(consensusInstance, fetchBlock(consensusInstance, round, digest,
+                            commitMessages.getMessages(consensusInstance, round).stream().map(commit -> commit.getMessage().getSenderId()).toList()),
+                    commitValue -> decide(consensusInstance, round, digest, commitValue));
+        } else {
+            logger.debug(MessageFormat.format("Did not receive quorum of COMMIT({0}, {1}, _) yet", consensusInstance, round));
+            logger.debug(MessageFormat.format("Current quorum: {0}", commitMessages.getMessages(consensusInstance, round)));
+        }
+    }
 
-                var block = commitValue.get();
+    /**
+     * Decides on the block of a commit quorum once it is fetched.
+     *
+     * @param consensusInstance The consensus instance
+     * @param round             The round of the commit quorum
+     * @param digest            The digest of the block
+     * @param commitValue       The block, if it was fetched
+     */
+    private void decide(int consensusInstance, int round, String digest, Optional<Block> commitValue) {
+        InstanceInfo instance = this.instanceInfo.get(consensusInstance);
 
-                instance.setDecidedRound(round);
-                instance.setDecidedValue(block);
+        // Another commit may have decided the instance, or a checkpoint pruned it, while the block was fetched
+        if (instance == null || instance.alreadyDecided())
+            return;
 
-                logger.info(MessageFormat.format("Decided on block {0} for Consensus Instance {1}, Round {2} successfully", commitValue.get(), consensusInstance, round));
-                logger.info(MessageFormat.format("Starting or waiting to append block {0} to ledger...", commitValue.get()));
+        if (commitValue.isEmpty()) {
+            // A later commit, or the commit quorum sent back on round-change, tries again
+            logger.info(MessageFormat.format("Received quorum of COMMIT({0}, {1}, {2}) but could not fetch the block yet", consensusInstance, round, digest));
+            return;
+        }
 
-                waitForPreviousConsensus(consensusInstance); // TODO Optimize to not wait in the thread, store a list of consensus values that are to be appended later
+        stopTimer(consensusInstance);
 
-                appendToLedger(block);
+        var block = commitValue.get();
 
-                int decidedConsensusInstance = lastDecidedConsensusInstance.incrementAndGet();
-                Object waitObject = waitForConsensusObjects.computeIfAbsent(decidedConsensusInstance, k -> new Object());
-                synchronized (waitObject) {
-                    waitObject.notifyAll();
-                }
-            } else {
-                logger.debug(MessageFormat.format("Did not receive quorum of COMMIT({0}, {1}, _) yet", consensusInstance, round));
-                logger.debug(MessageFormat.format("Current quorum: {0}", commitMessages.getMessages(consensusInstance, round).values()));
+        instance.setDecidedRound(round);
+        instance.setDecidedValue(block);
+        commitMessages.getValidCommitQuorumMessages(consensusInstance, round)
+                .ifPresent(commitQuorumMessages -> decidedCertificates.put(consensusInstance, commitQuorumMessages));
+
+        logger.info(MessageFormat.format("Decided on block {0} for Consensus Instance {1}, Round {2} successfully", block, consensusInstance, round));
+        logger.info(MessageFormat.format("Starting or waiting to append block {0} to ledger...", block));
+
+        decidedBlocks.put(consensusInstance, block);
+        appendDecidedBlocks();
+    }
+
+    /**
+     * Appends the decided blocks to the ledger in instance order, for as long as the block of the next instance
+     * is decided, and lets the instances waiting for them enter the pipeline.
+     */
+    private void appendDecidedBlocks() {
+        synchronized (decidedBlocks) {
+            while (true) {
+                int nextConsensusInstance = lastDecidedConsensusInstance.get() + 1;
+                Block block = decidedBlocks.get(nextConsensusInstance);
+                if (block == null)
+                    return;
+
+                appendToLedger(nextConsensusInstance, block);
+                decidedBlocks.remove(nextConsensusInstance);
+                messageAccum.release(nextConsensusInstance);
+
+                if (nextConsensusInstance % CHECKPOINT_INTERVAL == 0)
+                    broadcastCheckpoint(nextConsensusInstance);
+
+                lastDecidedConsensusInstance.set(nextConsensusInstance);
+                CompletableFuture<Void> appended = appendedInstances.remove(nextConsensusInstance);
+                if (appended != null)
+                    appended.complete(null);
             }
         }
     }
 
     /**
-     * Append block to the ledger.
+     * Broadcasts a checkpoint with the digest of the state of the ledger, right after the block of the consensus
+     * instance is appended.
      *
-     * @param block Block to append
+     * @param consensusInstance The consensus instance of the checkpoint
      */
-    private void appendToLedger(Block block) {
-        logger.info(MessageFormat.format("Started to append block {0} to ledger decided on instance {1}...", block, lastDecidedConsensusInstance.get() + 1));
+    private void broadcastCheckpoint(int consensusInstance) {
+        String stateDigest = ledger.getStateDigest();
+        checkpointStateDigests.put(consensusInstance, stateDigest);
 
-        synchronized (messageAccum) {
-            synchronized (ledger) {
-                // TODO: What to do if the block is not added (Should not happen in decide)
-                if (!ledger.validateBlock(block))
-                    logger.error(MessageFormat.format("Block {0} not added", block));
+        ConsensusMessage messageToBroadcast = ConsensusMessage.builder()
+                .senderId(config.getId())
+                .type(Message.Type.CHECKPOINT)
+                .consensusInstance(consensusInstance)
+                .round(CheckpointMessageBucket.CHECKPOINT_ROUND)
+                .valueDigest(stateDigest)
+                .messageId(-1)
+                .build();
 
-                var responses = ledger.addBlock(block);
-                for (var response : responses)
-                    authenticatedPerfectLinkClient.send(response.getOriginalRequestSenderId(), response);
+        logger.info(MessageFormat.format("Reached checkpoint of Consensus Instance {0}. Broadcasting {1}", consensusInstance, messageToBroadcast));
 
-                for (var request : block.getRequests())
-                    messageAccum.remove(request);
+        this.authenticatedPerfectLinkNode.broadcast(messageToBroadcast);
+        updateStableCheckpoint(consensusInstance);
+    }
 
-                logger.info(MessageFormat.format("Appended block {0} to ledger", block));
-                logger.debug(MessageFormat.format("Current ledger: {0}", ledger.getAccounts()));
-            }
+    /**
+     * Handle checkpoint messages and make the checkpoint stable if there is a valid quorum matching the local state.
+     *
+     * @param signedMessage Signed message to be handled
+     */
+    public void uponCheckpoint(SignedMessage signedMessage) {
+        ConsensusMessage message = ((ConsensusMessage) signedMessage.getMessage());
+        int consensusInstance = message.getConsensusInstance();
+
+        logger.info(MessageFormat.format("Received {0} from node {1}", message, message.getSenderId()));
+
+        if (consensusInstance % CHECKPOINT_INTERVAL != 0 || message.getRound() != CheckpointMessageBucket.CHECKPOINT_ROUND
+                || message.getValueDigest() == null || consensusInstance <= stableCheckpoint.get()) {
+            logger.info(MessageFormat.format("Received invalid or outdated checkpoint message. Ignoring... {0}", message));
+            return;
         }
+
+        checkpointMessages.addMessage(signedMessage);
+        updateStableCheckpoint(consensusInstance);
+    }
+
+    /**
+     * Makes the checkpoint of a consensus instance stable, if a quorum of nodes reached the same state of the ledger
+     * as this node after its block, and discards the state of the consensus instances up to it.
+     *
+     * @param consensusInstance The consensus instance of the checkpoint
+     */
+    private void updateStableCheckpoint(int consensusInstance) {
+        String localStateDigest = checkpointStateDigests.get(consensusInstance);
+        Optional<String> stateDigest = checkpointMessages.hasValidCheckpointQuorum(consensusInstance);
+        if (localStateDigest == null || stateDigest.isEmpty())
+            return;
+
+        if (!stateDigest.get().equals(localStateDigest)) {
+            logger.error(MessageFormat.format("\u001B[31mCRITICAL:\u001B[37m Quorum of CHECKPOINT({0}, {1}) does not match the local state {2}",
+                    consensusInstance, stateDigest.get(), localStateDigest));
+            return;
+        }
+
+        if (stableCheckpoint.getAndAccumulate(consensusInstance, Math::max) >= consensusInstance)
+            return;
+
+        logger.info(MessageFormat.format("Checkpoint of Consensus Instance {0} is stable. Discarding the state of the instances up to it", consensusInstance));
+
+        int firstKeptInstance = consensusInstance + 1;
+        prepareMessages.prune(firstKeptInstance);
+        commitMessages.prune(firstKeptInstance);
+        roundChangeMessages.prune(firstKeptInstance);
+        checkpointMessages.prune(firstKeptInstance);
+        checkpointStateDigests.keySet().removeIf(instance -> instance < firstKeptInstance);
+        instanceInfo.keySet().removeIf(instance -> instance < firstKeptInstance);
+        receivedPrePrepare.keySet().removeIf(instance -> instance < firstKeptInstance);
+        receivedRoundChangeQuorum.keySet().removeIf(instance -> instance < firstKeptInstance);
+        timers.keySet().removeIf(instance -> instance < firstKeptInstance);
+        instanceExecutor.prune(firstKeptInstance);
+
+        decidedCertificates.headMap(firstKeptInstance - BLOCK_RETENTION_INSTANCES).clear();
+        blockStore.prune(firstKeptInstance - BLOCK_RETENTION_INSTANCES);
+        // The requests added to the ledger are kept, to keep them from being executed again (see Ledger)
+    }
+
+    /**
+     * Handle messages of consensus instances whose state was discarded after a stable checkpoint.
+     * A round-change message comes from a node that did not decide yet, so it is answered with the quorum of commit
+     * messages that decided the instance. The other messages are late, and ignored.
+     *
+     * @param signedMessage Signed message to be handled
+     */
+    private void uponDiscardedInstance(SignedMessage signedMessage) {
+        ConsensusMessage message = ((ConsensusMessage) signedMessage.getMessage());
+
+        if (message.getType() != Message.Type.ROUND_CHANGE) {
+            logger.debug(MessageFormat.format("Received {0} from node {1} before the stable checkpoint. Ignoring...", message, message.getSenderId()));
+            return;
+        }
+
+        logger.info(MessageFormat.format("Received {0} from node {1} before the stable checkpoint, sending the quorum of COMMIT back to sender", message, message.getSenderId()));
+        sendDecidedCertificate(message.getConsensusInstance(), message.getSenderId());
+    }
+
+    /**
+     * Sends the quorum of commit messages that decided a consensus instance to a node, so it can decide as well.
+     *
+     * @param consensusInstance The consensus instance
+     * @param nodeId            The node
+     */
+    private void sendDecidedCertificate(int consensusInstance, String nodeId) {
+        List<SignedMessage> commitQuorumMessages = decidedCertificates.get(consensusInstance);
+        if (commitQuorumMessages == null) {
+            logger.info(MessageFormat.format("Quorum of COMMIT for Consensus Instance {0} was already discarded", consensusInstance));
+            return;
+        }
+
+        commitQuorumMessages.forEach(commitQuorumSignedMessage ->
+                this.authenticatedPerfectLinkNode.sendSignedMessage(nodeId, commitQuorumSignedMessage));
+    }
+
+    /**
+     * Append block to the ledger.
+     *
+     * @param consensusInstance Consensus instance the block was decided on
+     * @param block             Block to append
+     */
+    private void appendToLedger(int consensusInstance, Block block) {
+        logger.info(MessageFormat.format("Started to append block {0} to ledger decided on instance {1}...", block, consensusInstance));
+
+        // Appends are serialized by the caller, and readers only see the published state, so no lock is held
+        var responses = ledger.addBlock(consensusInstance, block);
+        messageAccum.removeAll(block);
+
+        for (var response : responses)
+            authenticatedPerfectLinkClient.send(response.getOriginalRequestSenderId(), response);
+
+        logger.info(MessageFormat.format("Appended block {0} to ledger", block));
+        logger.debug(MessageFormat.format("Current ledger: {0}", ledger.getAccounts()));
+        logger.debug(MessageFormat.format("Verified signature cache: {0} hits, {1} misses",
+                String.valueOf(keyRegistry.getVerifiedSignatures().getHits()), String.valueOf(keyRegistry.getVerifiedSignatures().getMisses())));
+        logger.debug(MessageFormat.format("Batch size: {0} requests", String.valueOf(messageAccum.getBatchSize())));
     }
 
 
@@ -498,89 +951,95 @@ public class NodeService implements UDPService {
         if (instance.alreadyDecided()) {
             logger.info(MessageFormat.format("Received {0} from node {1} but already decided for Consensus Instance {2}, sending the quorum of COMMIT back to sender", message, message.getSenderId(), consensusInstance));
 
-            commitMessages.getValidCommitQuorumMessages(consensusInstance, instance.getDecidedRound()).ifPresent(commitQuorumMessages ->
-                    commitQuorumMessages.forEach(commitQuorumSignedMessage -> {
-                        this.authenticatedPerfectLinkNode.sendSignedMessage(
-                                message.getSenderId(),
-                                commitQuorumSignedMessage
-                        );
-                    }));
-
+            sendDecidedCertificate(consensusInstance, message.getSenderId());
             return;
         }
 
-        synchronized (roundChangeLockObjects.computeIfAbsent(consensusInstance, k -> new Object())) {
-            if (instance.getCurrentRound() <= round) {
-                List<SignedMessage> greaterRoundChangeMessages =
-                        this.roundChangeMessages.getMessagesFromRoundGreaterThan(consensusInstance, round);
-                int f = Math.floorDiv(nodesConfig.length - 1, 3);
+        if (instance.getCurrentRound() <= round) {
+            Optional<Integer> lowestGreaterRound = this.roundChangeMessages.getLowestRoundGreaterThan(consensusInstance, round);
 
-                if (greaterRoundChangeMessages.size() >= f + 1) {
-                    int newRound = greaterRoundChangeMessages.stream()
-                            .mapToInt(signedRoundChangeMessage -> ((ConsensusMessage) signedRoundChangeMessage.getMessage()).getRound())
-                            .min().orElseThrow();
+            if (lowestGreaterRound.isPresent()) {
+                int newRound = lowestGreaterRound.get();
 
-                    instance.setCurrentRound(newRound);
+                instance.setCurrentRound(newRound);
 
-                    ConsensusMessage messageToBroadcast = ConsensusMessage.builder()
-                            .senderId(config.getId())
-                            .type(Message.Type.ROUND_CHANGE)
-                            .consensusInstance(consensusInstance)
-                            .round(newRound)
-                            .preparedRound(instance.getPreparedRound())
-                            .preparedValue(instance.getPreparedValue())
-                            .messageId(-1)
-                            .build();
+                ConsensusMessage messageToBroadcast = ConsensusMessage.builder()
+                        .senderId(config.getId())
+                        .type(Message.Type.ROUND_CHANGE)
+                        .consensusInstance(consensusInstance)
+                        .round(newRound)
+                        .preparedRound(instance.getPreparedRound())
+                        .preparedValueDigest(instance.getPreparedValueDigest())
+                        .messageId(-1)
+                        .build();
 
-                    logger.info(MessageFormat.format("Updated round to {0} for Consensus Instance {1}. Broadcasting {2}", newRound, consensusInstance, messageToBroadcast));
+                logger.info(MessageFormat.format("Updated round to {0} for Consensus Instance {1}. Broadcasting {2}", newRound, consensusInstance, messageToBroadcast));
 
-                    startTimer(consensusInstance);
-                    this.authenticatedPerfectLinkNode.broadcast(messageToBroadcast);
-                }
+                startTimer(consensusInstance);
+                this.authenticatedPerfectLinkNode.broadcast(messageToBroadcast);
             }
+        }
 
-            if (receivedRoundChangeQuorum.computeIfAbsent(consensusInstance, k -> new ConcurrentHashMap<>()).get(round) != null) {
-                logger.info(MessageFormat.format("Already received quorum of ROUND-CHANGE({0}, {1}, _, _). Ignoring...", consensusInstance, round));
-                return;
-            }
+        if (receivedRoundChangeQuorum.computeIfAbsent(consensusInstance, k -> new ConcurrentHashMap<>()).get(round) != null) {
+            logger.info(MessageFormat.format("Already received quorum of ROUND-CHANGE({0}, {1}, _, _). Ignoring...", consensusInstance, round));
+            return;
+        }
 
-            var roundChangeQuorumMessages = roundChangeMessages.getValidRoundChangeQuorumMessages(consensusInstance, round).orElse(null);
-            if (roundChangeQuorumMessages == null)
-                return;
+        var roundChangeQuorumMessages = roundChangeMessages.getValidRoundChangeQuorumMessages(consensusInstance, round).orElse(null);
+        if (roundChangeQuorumMessages == null)
+            return;
 
-            Optional<PreparedRoundValuePair> highestPrepared = RoundChangeMessageBucket.getHighestPrepared(roundChangeQuorumMessages);
+        Optional<PreparedRoundValuePair> highestPrepared = RoundChangeMessageBucket.getHighestPrepared(roundChangeQuorumMessages);
 
-            var nodeIsLeader = isNodeLeader(consensusInstance, round, this.config.getId());
+        var nodeIsLeader = isNodeLeader(consensusInstance, round, this.config.getId());
 
-            if (nodeIsLeader && justifyRoundChange(consensusInstance, roundChangeQuorumMessages) && highestPrepared.isPresent()) {
-                receivedRoundChangeQuorum.get(consensusInstance).putIfAbsent(round, true);
+        if (nodeIsLeader && justifyRoundChange(consensusInstance, roundChangeQuorumMessages) && highestPrepared.isPresent()) {
+            if (!highestPrepared.get().isNull()) {
+                List<String> nodeIds = Arrays.stream(nodesConfig).map(ProcessConfig::getId).toList();
+                whenFetched(consensusInstance, fetchBlock(consensusInstance, highestPrepared.get().round(), highestPrepared.get().valueDigest(), nodeIds), preparedValue -> {
+                    if (preparedValue.isEmpty()) {
+                        // The next round-change message of this round tries again
+                        logger.info(MessageFormat.format("Received quorum of ROUND-CHANGE({0}, {1}, _, _) but could not fetch the prepared block yet", consensusInstance, round));
+                        return;
+                    }
 
+                    broadcastRoundChangePrePrepare(consensusInstance, round, preparedValue.get());
+                });
+            } else {
                 Block inputValue = instance.getInputValue();
                 if (inputValue == null) {
-                    inputValue = messageAccum.getBlock();
+                    inputValue = filterRequests(consensusInstance, messageAccum.getBlock());
                     instance.setInputValue(inputValue);
 
-                    filterRequests(inputValue);
+                    messageAccum.markProposed(consensusInstance, inputValue);
                 }
 
-                Block valueToBroadcast = !highestPrepared.get().isNull()
-                        ? highestPrepared.get().value()
-                        : instance.getInputValue();
+                broadcastRoundChangePrePrepare(consensusInstance, round, inputValue);
+            }
+        }
+    }
 
-                ConsensusMessage messageToBroadcast = ConsensusMessage.builder()
-                        .senderId(config.getId())
-                        .type(Message.Type.PRE_PREPARE)
-                        .consensusInstance(consensusInstance)
-                        .round(round)
-                        .value(valueToBroadcast)
-                        .messageId(-1)
-                        .build();
+    /**
+     * Broadcasts the pre-prepare of the new round once the leader has a round-change quorum, unless it already did.
+     *
+     * @param consensusInstance The consensus instance
+     * @param round             The new round
+     * @param valueToBroadcast  The block to propose
+     */
+    private void broadcastRoundChangePrePrepare(int consensusInstance, int round, Block valueToBroadcast) {
+        InstanceInfo instance = this.instanceInfo.get(consensusInstance);
+        if (instance == null || instance.alreadyDecided())
+            return;
 
-                logger.info(MessageFormat.format("Received quorum of ROUND-CHANGE({0}, {1}, _, _). Broadcasting {2}", consensusInstance, round, messageToBroadcast));
+        // The prepared block may have been fetched for more than one round-change message of the round
+        if (receivedRoundChangeQuorum.computeIfAbsent(consensusInstance, k -> new ConcurrentHashMap<>()).putIfAbsent(round, true) != null)
+            return;
 
-                this.authenticatedPerfectLinkNode.broadcast(messageToBroadcast);
-            }
-        }
+        ConsensusMessage messageToBroadcast = buildPrePrepare(config.getId(), consensusInstance, round, valueToBroadcast);
+
+        logger.info(MessageFormat.format("Received quorum of ROUND-CHANGE({0}, {1}, _, _). Broadcasting {2}", consensusInstance, round, messageToBroadcast));
+
+        this.authenticatedPerfectLinkNode.broadcast(messageToBroadcast);
     }
 
     /**
@@ -596,18 +1055,124 @@ public class NodeService implements UDPService {
         message.getPrepareQuorumPiggybackList().forEach(signedPrepareMessage -> {
             ConsensusMessage prepareMessage = (ConsensusMessage) signedPrepareMessage.getMessage();
 
-            if (!waitAndValidate(prepareMessage))
+            // The round change may be authenticated with a session key, but each prepare must carry its sender's signature
+            if (!authenticatedPerfectLinkNode.verifySignature(signedPrepareMessage)) {
+                logger.info(MessageFormat.format("Received piggybacked {0} with invalid signature. Ignoring...", prepareMessage));
+                return;
+            }
+
+            if (!validateBlock(prepareMessage))
                 return;
 
-            if (prepareMessages.getMessages(consensusInstance, prepareMessage.getRound()).get(prepareMessage.getSenderId()) == null)
+            if (!prepareMessages.hasMessage(consensusInstance, prepareMessage.getRound(), prepareMessage.getSenderId()))
                 uponPrepare(signedPrepareMessage);
         });
     }
 
+    /**
+     * Handle block requests, replying with the block if it is known.
+     *
+     * @param signedMessage Signed message to be handled
+     */
+    public void uponBlockRequest(SignedMessage signedMessage) {
+        ConsensusMessage message = ((ConsensusMessage) signedMessage.getMessage());
+
+        logger.info(MessageFormat.format("Received {0} from node {1}", message, message.getSenderId()));
+
+        Optional<Block> block = blockStore.get(message.getValueDigest());
+        if (block.isEmpty()) {
+            logger.info(MessageFormat.format("Block {0} requested by node {1} is not known. Ignoring...", message.getValueDigest(), message.getSenderId()));
+            return;
+        }
+
+        this.authenticatedPerfectLinkNode.send(
+                message.getSenderId(),
+                ConsensusMessage.builder()
+                        .senderId(config.getId())
+                        .type(Message.Type.BLOCK_RESPONSE)
+                        .consensusInstance(message.getConsensusInstance())
+                        .round(message.getRound())
+                        .replyTo(message.getSenderId())
+                        .replyToMessageId(message.getMessageId())
+                        .value(block.get())
+                        .build()
+        );
+    }
+
+    /**
+     * Handle block responses, storing the block if it was requested.
+     *
+     * @param signedMessage Signed message to be handled
+     */
+    public void uponBlockResponse(SignedMessage signedMessage) {
+        ConsensusMessage message = ((ConsensusMessage) signedMessage.getMessage());
+
+        logger.info(MessageFormat.format("Received {0} from node {1}", message, message.getSenderId()));
+
+        if (message.getValue() == null || !blockStore.offer(message.getConsensusInstance(), message.getValue()))
+            logger.info(MessageFormat.format("Received block from node {0} that was not requested. Ignoring...", message.getSenderId()));
+    }
+
+    /**
+     * Handle requests for some of the requests of a proposed block, replying with the ones found in the block.
+     *
+     * @param signedMessage Signed message to be handled
+     */
+    public void uponFetchRequests(SignedMessage signedMessage) {
+        ConsensusMessage message = ((ConsensusMessage) signedMessage.getMessage());
+
+        logger.info(MessageFormat.format("Received {0} from node {1}", message, message.getSenderId()));
+
+        Optional<Block> block = blockStore.get(message.getValueDigest());
+        if (block.isEmpty() || message.getCompactValue() == null) {
+            logger.info(MessageFormat.format("Block {0} requested by node {1} is not known. Ignoring...", message.getValueDigest(), message.getSenderId()));
+            return;
+        }
+
+        List<SignedLedgerRequest> requests = block.get().getRequests().stream()
+                .filter(request -> message.getCompactValue().getRequests().stream().anyMatch(reference -> reference.matches(request)))
+                .toList();
+
+        this.authenticatedPerfectLinkNode.send(
+                message.getSenderId(),
+                ConsensusMessage.builder()
+                        .senderId(config.getId())
+                        .type(Message.Type.FETCHED_REQUESTS)
+                        .consensusInstance(message.getConsensusInstance())
+                        .round(message.getRound())
+                        .replyTo(message.getSenderId())
+                        .replyToMessageId(message.getMessageId())
+                        .value(new Block(requests, block.get().getCreatorId()))
+                        .valueDigest(message.getValueDigest())
+                        .build()
+        );
+    }
+
+    /**
+     * Handle the requests fetched from the leader, completing the rebuild of the compact pre-prepare waiting for them.
+     *
+     * @param signedMessage Signed message to be handled
+     */
+    public void uponFetchedRequests(SignedMessage signedMessage) {
+        ConsensusMessage message = ((ConsensusMessage) signedMessage.getMessage());
+
+        logger.info(MessageFormat.format("Received {0} from node {1}", message, message.getSenderId()));
+
+        CompletableFuture<Block> response = pendingRequestFetches.get(message.getValueDigest());
+        if (response == null || message.getValue() == null
+                || !isNodeLeader(message.getConsensusInstance(), message.getRound(), message.getSenderId())) {
+            logger.info(MessageFormat.format("Received requests from node {0} that were not requested. Ignoring...", message.getSenderId()));
+            return;
+        }
+
+        // Requests that do not match the references are discarded when rebuilding the block
+        response.complete(message.getValue());
+    }
+
     /**
      * Validate the round change message.
      * A round change message is valid if the prepared round is smaller than the round of the message and
-     * the block contained in the prepared value is valid.
+     * the prepared block, if already known, is valid.
      *
      * @param message Consensus message
      * @return True if the message is valid
@@ -616,14 +1181,12 @@ public class NodeService implements UDPService {
         if (message.getPreparedRound() >= message.getRound())
             return false;
 
-        waitForPreviousConsensus(message.getConsensusInstance());
-
-        if (message.getPreparedValue() == null || message.getPreparedRound() == -1)
+        if (message.getPreparedValueDigest() == null || message.getPreparedRound() == -1)
             return true;
 
-        final var block = message.getPreparedValue();
-
-        return ledger.validateBlock(block);
+        return blockStore.get(message.getPreparedValueDigest())
+                .map(block -> ledger.validateBlock(block, getPendingBlocks(message.getConsensusInstance())))
+                .orElse(true);
     }
 
     @Override
@@ -638,34 +1201,22 @@ public class NodeService implements UDPService {
                         if (!(signedMessage.getMessage() instanceof ConsensusMessage consensusMessage))
                             continue;
 
-                        // Separate thread to handle each message
-                        new Thread(() -> {
-                            try {
-                                switch (consensusMessage.getType()) {
-                                    case PRE_PREPARE -> uponPrePrepare(signedMessage);
-
-                                    case PREPARE -> uponPrepare(signedMessage);
-
-                                    case COMMIT -> uponCommit(signedMessage);
-
-                                    case ROUND_CHANGE -> uponRoundChange(signedMessage);
-
-                                    case ACK -> {
-                                        /*logger.info(MessageFormat.format("Received ACK({0}) from node {1}", message.getMessageId(), message.getSenderId()));*/
-                                    }
-
-                                    case IGNORE -> {
-                                        /*logger.info(MessageFormat.format("\u001B[31mIGNORING\u001B[37m message with ID {0} from node {1}", message.getMessageId(), message.getSenderId()));*/
-                                    }
-
-                                    default ->
-                                            logger.info(MessageFormat.format("Received unknown message from {0}", consensusMessage.getSenderId()));
+                        switch (consensusMessage.getType()) {
+                            // Block and request fetches only use the block store, and the mailbox of the instance may be waiting for them.
+                            // Checkpoints only use their own bucket.
+                            case BLOCK_REQUEST, BLOCK_RESPONSE, FETCH_REQUESTS, FETCHED_REQUESTS, CHECKPOINT ->
+                                    instanceExecutor.execute(() -> handleMessage(signedMessage));
+
+                            default -> {
+                                // Each instance gets a mailbox, so the instances that can be queued are bounded
+                                if (isTooFarAhead(consensusMessage.getConsensusInstance())) {
+                                    logger.info(MessageFormat.format("Received message for a consensus instance too far ahead. Ignoring... {0}", consensusMessage));
+                                    continue;
                                 }
-                            } catch (Exception e) {
-                                logger.error(MessageFormat.format("Error handling message: {0}", e.getMessage()));
-                                e.printStackTrace();
+
+                                instanceExecutor.submit(consensusMessage.getConsensusInstance(), () -> handleMessage(signedMessage));
                             }
-                        }).start();
+                        }
                     } catch (Exception e) {
                         logger.error(MessageFormat.format("Error receiving message: {0}", e.getMessage()));
                         e.printStackTrace();
@@ -678,6 +1229,57 @@ public class NodeService implements UDPService {
         }
     }
 
+    /**
+     * Handle a consensus message according to its type.
+     *
+     * @param signedMessage Signed message to be handled
+     */
+    private void handleMessage(SignedMessage signedMessage) {
+        ConsensusMessage consensusMessage = (ConsensusMessage) signedMessage.getMessage();
+
+        try {
+            if (INSTANCE_STATE_TYPES.contains(consensusMessage.getType())
+                    && consensusMessage.getConsensusInstance() <= stableCheckpoint.get()) {
+                uponDiscardedInstance(signedMessage);
+                return;
+            }
+
+            switch (consensusMessage.getType()) {
+                case PRE_PREPARE -> uponPrePrepare(signedMessage);
+
+                case PREPARE -> uponPrepare(signedMessage);
+
+                case COMMIT -> uponCommit(signedMessage);
+
+                case ROUND_CHANGE -> uponRoundChange(signedMessage);
+
+                case BLOCK_REQUEST -> uponBlockRequest(signedMessage);
+
+                case BLOCK_RESPONSE -> uponBlockResponse(signedMessage);
+
+                case FETCH_REQUESTS -> uponFetchRequests(signedMessage);
+
+                case FETCHED_REQUESTS -> uponFetchedRequests(signedMessage);
+
+                case CHECKPOINT -> uponCheckpoint(signedMessage);
+
+                case ACK -> {
+                    /*logger.info(MessageFormat.format("Received ACK({0}) from node {1}", message.getMessageId(), message.getSenderId()));*/
+                }
+
+                case IGNORE -> {
+                    /*logger.info(MessageFormat.format("\u001B[31mIGNORING\u001B[37m message with ID {0} from node {1}", message.getMessageId(), message.getSenderId()));*/
+                }
+
+                default ->
+                        logger.info(MessageFormat.format("Received unknown message from {0}", consensusMessage.getSenderId()));
+            }
+        } catch (Exception e) {
+            logger.error(MessageFormat.format("Error handling message: {0}", e.getMessage()));
+            e.printStackTrace();
+        }
+    }
+
 
     /**
      * A round change is justified if:
@@ -696,7 +1298,7 @@ public class NodeService implements UDPService {
                     ConsensusMessage consensusMessage = (ConsensusMessage) roundChangeMessage.getMessage();
                     return new PreparedRoundValuePair(
                             consensusMessage.getPreparedRound(),
-                            consensusMessage.getPreparedValue()
+                            consensusMessage.getPreparedValueDigest()
                     ).isNull();
                 })
                 ||
@@ -704,7 +1306,7 @@ public class NodeService implements UDPService {
                         .map(highestPrepared ->
                                 prepareMessages
                                         .hasValidPrepareQuorum(consensusInstance, highestPrepared.round())
-                                        .map(value -> highestPrepared.value().equals(value))
+                                        .map(digest -> digest.equals(highestPrepared.valueDigest()))
                                         .orElse(false)
                         ).orElse(false);
 
@@ -722,10 +1324,10 @@ public class NodeService implements UDPService {
      *
      * @param consensusInstance Consensus instance
      * @param round             Consensus round
-     * @param value             Value in pre-prepare message
+     * @param valueDigest       Digest of the value in pre-prepare message
      * @return True if the pre-prepare message is justified
      */
-    private boolean justifyPrePrepare(int consensusInstance, int round, Block value) {
+    private boolean justifyPrePrepare(int consensusInstance, int round, String valueDigest) {
         if (round == STARTING_ROUND)
             return true;
 
@@ -740,7 +1342,7 @@ public class NodeService implements UDPService {
                     ConsensusMessage consensusMessage = (ConsensusMessage) roundChangeMessage.getMessage();
                     return new PreparedRoundValuePair(
                             consensusMessage.getPreparedRound(),
-                            consensusMessage.getPreparedValue()
+                            consensusMessage.getPreparedValueDigest()
                     ).isNull();
                 })
                 ||
@@ -748,15 +1350,16 @@ public class NodeService implements UDPService {
                         .map(highestPrepared ->
                                 prepareMessages
                                         .hasValidPrepareQuorum(consensusInstance, highestPrepared.round())
-                                        .map(prepareMessageValue -> highestPrepared.value().equals(prepareMessageValue))
+                                        .map(prepareMessageDigest -> prepareMessageDigest.equals(highestPrepared.valueDigest()))
                                         .orElse(false)
                         ).orElse(false) &&
-                        value.equals(highestPreparedPair.get().value()));
+                        valueDigest.equals(highestPreparedPair.get().valueDigest()));
     }
 
     /**
      * Start the timer for the consensus instance, expiring after TIMER_EXPIRE_TIME.
-     * If the timer expires, the round is incremented and a ROUND-CHANGE message is broadcast.
+     * If the timer expires, the round is incremented and a ROUND-CHANGE message is broadcast, in the mailbox of
+     * the consensus instance.
      *
      * @param consensusInstance the consensus instance
      */
@@ -765,52 +1368,53 @@ public class NodeService implements UDPService {
 
         long timeToWait = ROUND_CHANGE_TIMER_EXPIRE_TIME << (instance.getCurrentRound() - 1);
 
-        synchronized (decideLockObjects.computeIfAbsent(consensusInstance, k -> new Object())) {
-            if (instance.alreadyDecided())
-                return;
+        if (instance.alreadyDecided())
+            return;
 
-            logger.info(MessageFormat.format("Starting timer of {0}ms for Consensus Instance {1}", timeToWait, consensusInstance));
-
-            MultiThreadTimer timer = timers.computeIfAbsent(consensusInstance, k -> new MultiThreadTimer());
-            timer.startTimer(new TimerTask() {
-                @Override
-                public void run() {
-                    final int round;
-                    final int preparedRound;
-                    final Block preparedValue;
-
-                    synchronized (instance) {
-                        instance.setCurrentRound(instance.getCurrentRound() + 1);
-                        round = instance.getCurrentRound();
-                        preparedRound = instance.getPreparedRound();
-                        preparedValue = instance.getPreparedValue();
-                    }
+        logger.info(MessageFormat.format("Starting timer of {0}ms for Consensus Instance {1}", timeToWait, consensusInstance));
 
-                    final ConsensusMessage messageToBroadcast = ConsensusMessage.builder()
-                            .senderId(config.getId())
-                            .type(Message.Type.ROUND_CHANGE)
-                            .consensusInstance(consensusInstance)
-                            .round(round)
-                            .preparedRound(preparedRound)
-                            .preparedValue(preparedValue)
-                            .prepareQuorumPiggybackList(prepareMessages.getValidPrepareQuorumMessages(consensusInstance, preparedRound).orElse(null))
-                            .messageId(-1)
-                            .build();
+        RestartableTimer timer = timers.computeIfAbsent(consensusInstance, k -> new RestartableTimer());
+        timer.startTimer(() -> instanceExecutor.submit(consensusInstance, () -> onTimerExpired(consensusInstance)), timeToWait);
+    }
 
-                    logger.info(MessageFormat.format("Timer expired for Consensus Instance {0}. Updated round to {1}, triggering round-change. Broadcasting {2}", consensusInstance, round, messageToBroadcast));
+    /**
+     * Increments the round of the consensus instance and broadcasts a ROUND-CHANGE message, when its timer expires.
+     *
+     * @param consensusInstance the consensus instance
+     */
+    private void onTimerExpired(int consensusInstance) {
+        InstanceInfo instance = instanceInfo.get(consensusInstance);
 
-                    startTimer(consensusInstance);
-                    authenticatedPerfectLinkNode.broadcast(messageToBroadcast);
-                }
-            }, timeToWait);
-        }
+        // The instance may have been decided, or even discarded, while the expiration waited in the mailbox
+        if (instance == null || instance.alreadyDecided())
+            return;
+
+        instance.setCurrentRound(instance.getCurrentRound() + 1);
+        int round = instance.getCurrentRound();
+        int preparedRound = instance.getPreparedRound();
+
+        final ConsensusMessage messageToBroadcast = ConsensusMessage.builder()
+                .senderId(config.getId())
+                .type(Message.Type.ROUND_CHANGE)
+                .consensusInstance(consensusInstance)
+                .round(round)
+                .preparedRound(preparedRound)
+                .preparedValueDigest(instance.getPreparedValueDigest())
+                .prepareQuorumPiggybackList(prepareMessages.getValidPrepareQuorumMessages(consensusInstance, preparedRound).orElse(null))
+                .messageId(-1)
+                .build();
+
+        logger.info(MessageFormat.format("Timer expired for Consensus Instance {0}. Updated round to {1}, triggering round-change. Broadcasting {2}", consensusInstance, round, messageToBroadcast));
+
+        startTimer(consensusInstance);
+        authenticatedPerfectLinkNode.broadcast(messageToBroadcast);
     }
 
     /**
-     * Stop the timer for the consensus instance.
+     * Stop and remove the timer for the consensus instance, once it is decided.
      */
     private void stopTimer(int consensusInstance) {
-        MultiThreadTimer timer = timers.get(consensusInstance);
+        RestartableTimer timer = timers.remove(consensusInstance);
 
         if (timer == null)
             return;
@@ -819,22 +1423,38 @@ public class NodeService implements UDPService {
     }
 
     /**
-     * Waits for the previous consensus to be decided before starting a new one.
+     * Checks whether a consensus instance is more than {@link #FUTURE_INSTANCE_SLACK} instances past the pipeline.
+     * A node this far behind catches up through the quorum of commit messages sent in reply to its round-change
+     * messages, so the messages of such instances are dropped instead of waiting for their pipeline slot.
      *
-     * @param localConsensusInstance current consensus instance waiting to start
+     * @param consensusInstance The consensus instance
+     * @return True if the messages of the consensus instance must be dropped
      */
-    private void waitForPreviousConsensus(int localConsensusInstance) {
-        int previousConsensusInstance = localConsensusInstance - 1;
-        Object waitObject = waitForConsensusObjects.computeIfAbsent(previousConsensusInstance, k -> new Object());
-        synchronized (waitObject) {
-            while (lastDecidedConsensusInstance.get() < previousConsensusInstance) {
-                try {
-                    waitObject.wait();
-                } catch (InterruptedException e) {
-                    logger.error(MessageFormat.format("Error while waiting for previous consensus: {0}", e.getMessage()));
-                    e.printStackTrace();
-                }
-            }
+    private boolean isTooFarAhead(int consensusInstance) {
+        return consensusInstance > lastDecidedConsensusInstance.get() + config.getPipelineDepth() + FUTURE_INSTANCE_SLACK;
+    }
+
+    /**
+     * Gets a future completed when the consensus instance enters the pipeline, that is, when the block of the
+     * consensus instance pipeline depth instances before it is appended to the ledger.
+     * With a pipeline depth of 1, completes when the previous consensus is decided.
+     *
+     * @param consensusInstance The consensus instance
+     * @return The future
+     */
+    private CompletableFuture<Void> getPipelineSlot(int consensusInstance) {
+        int previousConsensusInstance = consensusInstance - config.getPipelineDepth();
+        if (lastDecidedConsensusInstance.get() >= previousConsensusInstance)
+            return CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Void> appended = appendedInstances.computeIfAbsent(previousConsensusInstance, k -> new CompletableFuture<>());
+
+        // The block may have been appended before the future was registered
+        if (lastDecidedConsensusInstance.get() >= previousConsensusInstance) {
+            appendedInstances.remove(previousConsensusInstance, appended);
+            appended.complete(null);
         }
+
+        return appended;
     }
 }
@@ -0,0 +1,29 @@
+package pt.ulisboa.tecnico.hdsledger.service.services.message_bucket;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bucket for checkpoint messages.
+ * Checkpoint messages have no round, so only the ones with the default round count towards a quorum.
+ */
+public class CheckpointMessageBucket extends MessageBucket {
+
+    public static final int CHECKPOINT_ROUND = 0;
+
+    public CheckpointMessageBucket(List<String> nodeIds) {
+        super(nodeIds);
+    }
+
+    /**
+     * Check if the bucket has a valid checkpoint quorum.
+     * <p>
+     * Only one state digest, if any, will have a frequency greater than or equal to the quorum size.
+     *
+     * @param instance The consensus instance of the checkpoint
+     * @return The digest of the state of the ledger if a valid checkpoint quorum exists
+     */
+    public Optional<String> hasValidCheckpointQuorum(int instance) {
+        return getTracker(instance, CHECKPOINT_ROUND).flatMap(QuorumTracker::getQuorumDigest);
+    }
+}
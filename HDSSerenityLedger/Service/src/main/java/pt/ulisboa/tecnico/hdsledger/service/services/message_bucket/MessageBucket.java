@@ -3,37 +3,66 @@ package pt.ulisboa.tecnico.hdsledger.service.services.message_bucket;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.consensus_message.ConsensusMessage;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
  * Bucket to store consensus messages.
+ * <p>
+ * The messages of each instance and round are kept in a {@link QuorumTracker}, which counts the votes for each
+ * digest as they are added. The rounds of each instance are sorted, to find the messages of the rounds after a given one.
  */
 public abstract class MessageBucket {
 
     protected final int quorumSize;
+    // Maximum number of faulty nodes
+    protected final int f;
+    protected final int nodeCount;
+    // Node ID -> Node index
+    private final Map<String, Integer> nodeIndexes = new HashMap<>();
 
-    // Instance -> Round -> Sender ID -> Consensus message
-    protected final Map<Integer, Map<Integer, Map<String, SignedMessage>>> bucket = new ConcurrentHashMap<>();
+    // Instance -> Round -> Messages of the round
+    protected final Map<Integer, ConcurrentNavigableMap<Integer, QuorumTracker>> bucket = new ConcurrentHashMap<>();
 
-    protected MessageBucket(int nodeCount) {
-        int f = Math.floorDiv(nodeCount - 1, 3);
+    protected MessageBucket(List<String> nodeIds) {
+        this.nodeCount = nodeIds.size();
+        for (int i = 0; i < nodeCount; i++)
+            nodeIndexes.put(nodeIds.get(i), i);
+
+        f = Math.floorDiv(nodeCount - 1, 3);
         quorumSize = Math.floorDiv(nodeCount + f, 2) + 1;
     }
 
+    /**
+     * Get the digest a message votes for.
+     *
+     * @param message The message
+     * @return The digest, or null if the message does not vote for any
+     */
+    protected String voteOf(ConsensusMessage message) {
+        return message.getValueDigest();
+    }
+
     /**
      * Add a message to the bucket.
+     * Only the first message of each node for a given instance and round is kept.
      *
      * @param signedMessage The message to add
      */
     public void addMessage(SignedMessage signedMessage) {
         ConsensusMessage message = (ConsensusMessage) signedMessage.getMessage();
-        int consensusInstance = message.getConsensusInstance();
-        int round = message.getRound();
+        Integer nodeIndex = nodeIndexes.get(message.getSenderId());
+        if (nodeIndex == null)
+            return;
 
-        bucket.putIfAbsent(consensusInstance, new ConcurrentHashMap<>());
-        bucket.get(consensusInstance).putIfAbsent(round, new ConcurrentHashMap<>());
-        bucket.get(consensusInstance).get(round).put(message.getSenderId(), signedMessage); // TODO putIfAbsent?
+        bucket.computeIfAbsent(message.getConsensusInstance(), k -> new ConcurrentSkipListMap<>())
+                .computeIfAbsent(message.getRound(), k -> new QuorumTracker(nodeCount, quorumSize))
+                .add(nodeIndex, signedMessage, voteOf(message));
     }
 
     /**
@@ -41,9 +70,36 @@ public abstract class MessageBucket {
      *
      * @param instance The consensus instance
      * @param round    The round
-     * @return The messages
+     * @return The messages, in node order
+     */
+    public List<SignedMessage> getMessages(int instance, int round) {
+        return getTracker(instance, round).map(QuorumTracker::getMessages).orElse(List.of());
+    }
+
+    /**
+     * Check if a node has a message for a given instance and round.
+     *
+     * @param instance The consensus instance
+     * @param round    The round
+     * @param senderId The node ID
+     * @return True if the node has a message
+     */
+    public boolean hasMessage(int instance, int round, String senderId) {
+        Integer nodeIndex = nodeIndexes.get(senderId);
+        return nodeIndex != null && getTracker(instance, round).map(tracker -> tracker.contains(nodeIndex)).orElse(false);
+    }
+
+    /**
+     * Remove the messages of the consensus instances before the given one.
+     *
+     * @param instance The oldest consensus instance whose messages are kept
      */
-    public Map<String, SignedMessage> getMessages(int instance, int round) {
-        return bucket.get(instance).get(round);
+    public void prune(int instance) {
+        bucket.keySet().removeIf(consensusInstance -> consensusInstance < instance);
+    }
+
+    protected Optional<QuorumTracker> getTracker(int instance, int round) {
+        ConcurrentNavigableMap<Integer, QuorumTracker> rounds = bucket.get(instance);
+        return rounds == null ? Optional.empty() : Optional.ofNullable(rounds.get(round));
     }
-}
\ No newline at end of file
+}
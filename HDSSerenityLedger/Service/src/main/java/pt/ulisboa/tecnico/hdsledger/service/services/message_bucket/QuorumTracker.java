@@ -0,0 +1,154 @@
+package pt.ulisboa.tecnico.hdsledger.service.services.message_bucket;
+
+import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * The {@code QuorumTracker} class keeps the messages of a consensus instance and round, at most one per node,
+ * and counts the votes for each digest as the messages are added, so a quorum is known as soon as it is reached.
+ * <p>
+ * Messages and votes are kept in arrays indexed by node number, so adding a message and checking for a quorum
+ * do not allocate. Only the first message of each node counts, so a node cannot vote twice.
+ * <p>
+ * This class is thread-safe.
+ */
+public class QuorumTracker {
+
+    private final int quorumSize;
+    // Node index -> Message
+    private final SignedMessage[] messages;
+    // Node index -> Index of the digest voted, or -1
+    private final int[] nodeVotes;
+    // Distinct digests voted, in the order they were first voted, and the number of votes of each
+    private final String[] digests;
+    private final int[] votes;
+    private int digestCount = 0;
+    private int messageCount = 0;
+    // Index of the digest with a quorum of votes, or -1
+    private int quorumDigestIndex = -1;
+
+    public QuorumTracker(int nodeCount, int quorumSize) {
+        this.quorumSize = quorumSize;
+        this.messages = new SignedMessage[nodeCount];
+        this.digests = new String[nodeCount];
+        this.votes = new int[nodeCount];
+        this.nodeVotes = new int[nodeCount];
+        Arrays.fill(nodeVotes, -1);
+    }
+
+    /**
+     * Adds the message of a node, voting for a digest.
+     *
+     * @param nodeIndex     The index of the node
+     * @param signedMessage The message
+     * @param digest        The digest voted, or null if the message does not vote for any
+     * @return True if the message was added, false if the node already had a message
+     */
+    public synchronized boolean add(int nodeIndex, SignedMessage signedMessage, String digest) {
+        if (messages[nodeIndex] != null)
+            return false;
+
+        messages[nodeIndex] = signedMessage;
+        messageCount++;
+
+        if (digest == null)
+            return true;
+
+        int digestIndex = 0;
+        while (digestIndex < digestCount && !digests[digestIndex].equals(digest))
+            digestIndex++;
+
+        if (digestIndex == digestCount)
+            digests[digestCount++] = digest;
+
+        nodeVotes[nodeIndex] = digestIndex;
+        if (++votes[digestIndex] >= quorumSize && quorumDigestIndex == -1)
+            quorumDigestIndex = digestIndex;
+
+        return true;
+    }
+
+    /**
+     * Checks if a node already has a message.
+     *
+     * @param nodeIndex The index of the node
+     * @return True if the node has a message
+     */
+    public synchronized boolean contains(int nodeIndex) {
+        return messages[nodeIndex] != null;
+    }
+
+    /**
+     * Gets the number of nodes with a message.
+     *
+     * @return The number of messages
+     */
+    public synchronized int size() {
+        return messageCount;
+    }
+
+    /**
+     * Gets the digest voted by a quorum of nodes.
+     * Only one digest, if any, can reach a quorum.
+     *
+     * @return The digest, if a quorum voted for it
+     */
+    public synchronized Optional<String> getQuorumDigest() {
+        return quorumDigestIndex == -1 ? Optional.empty() : Optional.of(digests[quorumDigestIndex]);
+    }
+
+    /**
+     * Gets the messages of the nodes that voted for the digest with a quorum of votes.
+     *
+     * @return The messages, if a quorum voted for the same digest
+     */
+    public synchronized Optional<List<SignedMessage>> getQuorumMessages() {
+        if (quorumDigestIndex == -1)
+            return Optional.empty();
+
+        List<SignedMessage> quorumMessages = new ArrayList<>(votes[quorumDigestIndex]);
+        for (int i = 0; i < messages.length; i++) {
+            if (nodeVotes[i] == quorumDigestIndex)
+                quorumMessages.add(messages[i]);
+        }
+
+        return Optional.of(quorumMessages);
+    }
+
+    /**
+     * Gets the messages of all the nodes.
+     *
+     * @return The messages, in node order
+     */
+    public synchronized List<SignedMessage> getMessages() {
+        List<SignedMessage> allMessages = new ArrayList<>(messageCount);
+        for (SignedMessage signedMessage : messages) {
+            if (signedMessage != null)
+                allMessages.add(signedMessage);
+        }
+
+        return allMessages;
+    }
+
+    /**
+     * Marks the nodes with a message.
+     *
+     * @param senders Node index -> Whether the node sent a message, updated with the nodes of this tracker
+     * @return The number of nodes marked that were not marked before
+     */
+    synchronized int markSenders(boolean[] senders) {
+        int marked = 0;
+        for (int i = 0; i < messages.length; i++) {
+            if (messages[i] != null && !senders[i]) {
+                senders[i] = true;
+                marked++;
+            }
+        }
+
+        return marked;
+    }
+}
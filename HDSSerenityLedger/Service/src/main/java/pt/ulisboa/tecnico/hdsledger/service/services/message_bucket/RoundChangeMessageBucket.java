@@ -4,26 +4,33 @@ import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.consensus_message.ConsensusMessage;
 import pt.ulisboa.tecnico.hdsledger.shared.models.PreparedRoundValuePair;
 
-import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
 
 /**
  * Bucket for round change messages.
  */
 public class RoundChangeMessageBucket extends MessageBucket {
 
-    public RoundChangeMessageBucket(int nodeCount) {
-        super(nodeCount);
+    public RoundChangeMessageBucket(List<String> nodeIds) {
+        super(nodeIds);
+    }
+
+    /**
+     * Round change messages are counted regardless of their prepared value.
+     */
+    @Override
+    protected String voteOf(ConsensusMessage message) {
+        return null;
     }
 
     /**
      * Get the highest prepared pair from the existing round change quorum.
      *
      * @param roundChangeQuorumMessages The messages in the round change quorum messages
-     * @return The highest prepared pair (value, round) of the existing round change quorum
+     * @return The highest prepared pair (round, value digest) of the existing round change quorum
      */
     public static Optional<PreparedRoundValuePair> getHighestPrepared(List<SignedMessage> roundChangeQuorumMessages) {
         return roundChangeQuorumMessages.stream()
@@ -31,7 +38,7 @@ public class RoundChangeMessageBucket extends MessageBucket {
                         ((ConsensusMessage) signedMessage.getMessage()).getPreparedRound()))
                 .map(signedMessage -> {
                     ConsensusMessage message = (ConsensusMessage) signedMessage.getMessage();
-                    return new PreparedRoundValuePair(message.getPreparedRound(), message.getPreparedValue());
+                    return new PreparedRoundValuePair(message.getPreparedRound(), message.getPreparedValueDigest());
                 });
     }
 
@@ -43,34 +50,49 @@ public class RoundChangeMessageBucket extends MessageBucket {
      * @return True if a valid round change quorum exists
      */
     public boolean hasValidRoundChangeQuorum(int instance, int round) {
-        if (!bucket.containsKey(instance) || !bucket.get(instance).containsKey(round))
-            return false;
-
-        return bucket.get(instance).get(round).values().size() >= quorumSize;
+        return getTracker(instance, round).map(tracker -> tracker.size() >= quorumSize).orElse(false);
     }
 
+    /**
+     * Get the valid round change quorum messages for a given instance and round.
+     *
+     * @param instance The consensus instance
+     * @param round    The round
+     * @return The messages
+     */
     public Optional<List<SignedMessage>> getValidRoundChangeQuorumMessages(int instance, int round) {
-        if (!hasValidRoundChangeQuorum(instance, round))
-            return Optional.empty();
-
-        return Optional.of(new ArrayList<>(bucket.get(instance).get(round).values()));
+        return getTracker(instance, round)
+                .filter(tracker -> tracker.size() >= quorumSize)
+                .map(QuorumTracker::getMessages);
     }
 
     /**
-     * Get messages from rounds greater than the specified round.
+     * Get the lowest round greater than the specified round that some node changed to, if at least f+1 different
+     * nodes sent round change messages for rounds greater than the specified round.
      *
-     * @param round The round
-     * @return The messages
+     * @param consensusInstance The consensus instance
+     * @param round             The round
+     * @return The lowest round, if f+1 nodes changed to a greater round
      */
-    public List<SignedMessage> getMessagesFromRoundGreaterThan(int consensusInstance, int round) {
-        List<SignedMessage> messages = new ArrayList<>();
+    public Optional<Integer> getLowestRoundGreaterThan(int consensusInstance, int round) {
+        ConcurrentNavigableMap<Integer, QuorumTracker> rounds = bucket.get(consensusInstance);
+        if (rounds == null)
+            return Optional.empty();
+
+        ConcurrentNavigableMap<Integer, QuorumTracker> greaterRounds = rounds.tailMap(round, false);
+        if (greaterRounds.isEmpty())
+            return Optional.empty();
 
-        for (Map.Entry<Integer, Map<String, SignedMessage>> roundEntry : bucket.get(consensusInstance).entrySet()) {
-            if (roundEntry.getKey() > round)
-                messages.addAll(roundEntry.getValue().values());
+        // Nodes may send round change messages for several rounds, but each one counts once
+        boolean[] senders = new boolean[nodeCount];
+        int senderCount = 0;
+        for (QuorumTracker tracker : greaterRounds.values()) {
+            senderCount += tracker.markSenders(senders);
+            if (senderCount >= f + 1)
+                return Optional.of(greaterRounds.firstKey());
         }
 
-        return messages;
+        return Optional.empty();
     }
 }
 
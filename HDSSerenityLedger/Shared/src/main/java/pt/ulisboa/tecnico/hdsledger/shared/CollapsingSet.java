@@ -1,8 +1,10 @@
 package pt.ulisboa.tecnico.hdsledger.shared;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -45,6 +47,41 @@ public class CollapsingSet implements Set<Integer> {
         }
     }
 
+    /**
+     * Returns the floor of the set: every integer from 0 up to the floor (inclusive) is in the set.
+     *
+     * @return the floor of the set, or -1 if 0 is not in the set
+     */
+    public int getFloor() {
+        synchronized (this.set) {
+            return this.floor;
+        }
+    }
+
+    /**
+     * Returns the integers above the floor, collapsed into ranges of consecutive integers in ascending order.
+     *
+     * @param maxRanges the maximum number of ranges to return, starting from the lowest one
+     * @return the ranges of integers above the floor
+     */
+    public List<Range> getRanges(int maxRanges) {
+        final int[] sorted;
+        synchronized (this.set) {
+            sorted = this.set.stream().mapToInt(Integer::intValue).sorted().toArray();
+        }
+
+        List<Range> ranges = new ArrayList<>();
+        int i = 0;
+        while (i < sorted.length && ranges.size() < maxRanges) {
+            int start = sorted[i];
+            while (i + 1 < sorted.length && sorted[i + 1] == sorted[i] + 1)
+                i++;
+            ranges.add(new Range(start, sorted[i++]));
+        }
+
+        return ranges;
+    }
+
     private boolean unsafeContains(Object o) {
         if (!(o instanceof Integer i)) return false;
         return i <= this.floor || this.set.contains(i);
@@ -130,4 +167,18 @@ public class CollapsingSet implements Set<Integer> {
             this.set.clear();
         }
     }
+
+    /**
+     * A range of consecutive integers.
+     *
+     * @param start the first integer of the range
+     * @param end   the last integer of the range (inclusive)
+     */
+    public record Range(int start, int end) {
+
+        @Override
+        public String toString() {
+            return start == end ? String.valueOf(start) : start + "-" + end;
+        }
+    }
 }
@@ -0,0 +1,35 @@
+package pt.ulisboa.tecnico.hdsledger.shared;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timer that runs a single task at a time on the {@link SharedScheduler}, replacing the scheduled task when restarted.
+ */
+public class RestartableTimer {
+    // Task currently scheduled, if any
+    private ScheduledFuture<?> scheduledTask;
+
+    /**
+     * Start the timer with a task and a delay.
+     * If the timer is already running, the task scheduled before is cancelled.
+     * The task runs on the scheduler thread, so it must be short.
+     *
+     * @param task  the task to run
+     * @param delay the delay in milliseconds
+     */
+    public synchronized void startTimer(Runnable task, long delay) {
+        this.stopTimer();
+        this.scheduledTask = SharedScheduler.get().schedule(task, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop the timer, cancelling the scheduled task if it did not run yet.
+     */
+    public synchronized void stopTimer() {
+        if (this.scheduledTask != null) {
+            this.scheduledTask.cancel(false);
+            this.scheduledTask = null;
+        }
+    }
+}
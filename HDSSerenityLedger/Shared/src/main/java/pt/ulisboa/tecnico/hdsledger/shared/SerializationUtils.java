@@ -7,6 +7,16 @@ import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.MessageDeserializer;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequestDeserializer;
+import pt.ulisboa.tecnico.hdsledger.shared.models.Block;
+import pt.ulisboa.tecnico.hdsledger.shared.models.BlockDeserializer;
+
+import java.io.CharArrayReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
 
 /**
  * The {@code SerializationUtils} class provides utility methods to serialize and deserialize objects.
@@ -17,8 +27,13 @@ public class SerializationUtils {
     private static final Gson gson = new GsonBuilder()
             .registerTypeAdapter(SignedLedgerRequest.class, new SignedLedgerRequestDeserializer())
             .registerTypeAdapter(Message.class, new MessageDeserializer())
+            .registerTypeAdapter(Block.class, new BlockDeserializer())
             .create();
 
+    // Characters decoded from a buffer, reused by each thread (a datagram has at most as many characters as bytes)
+    private static final ThreadLocal<CharBuffer> decodedChars = ThreadLocal.withInitial(() -> CharBuffer.allocate(65536));
+    private static final ThreadLocal<CharsetDecoder> utf8Decoder = ThreadLocal.withInitial(StandardCharsets.UTF_8::newDecoder);
+
     private SerializationUtils() {
         // Hides the implicit public constructor
     }
@@ -55,6 +70,32 @@ public class SerializationUtils {
         return getGson().fromJson(new String(value), clazz);
     }
 
+    /**
+     * Deserializes the remaining bytes of a buffer to an object.
+     * <p>
+     * The bytes are decoded into characters reused by the calling thread and parsed from there,
+     * without copying them to a byte array nor building a string.
+     *
+     * @param buffer the buffer to deserialize, whose position is advanced to its limit
+     * @param clazz  the class of the object to deserialize
+     * @param <T>    the type of the object to deserialize
+     * @return the deserialized object
+     */
+    public static <T> T deserialize(ByteBuffer buffer, Class<T> clazz) {
+        CharBuffer chars = decodedChars.get().clear();
+        if (chars.capacity() < buffer.remaining()) {
+            chars = CharBuffer.allocate(buffer.remaining());
+            decodedChars.set(chars);
+        }
+
+        CharsetDecoder decoder = utf8Decoder.get().reset();
+        CoderResult result = decoder.decode(buffer, chars, true);
+        if (!result.isUnderflow() || !(result = decoder.flush(chars)).isUnderflow())
+            throw new IllegalArgumentException(MessageFormat.format("Cannot decode buffer: {0}", result));
+
+        return getGson().fromJson(new CharArrayReader(chars.array(), 0, chars.position()), clazz);
+    }
+
     /**
      * Deserializes a JSON string to an object.
      *
@@ -0,0 +1,37 @@
+package pt.ulisboa.tecnico.hdsledger.shared;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+/**
+ * The {@code SharedScheduler} class holds the scheduler used for every timer of the process: round-change and batch
+ * timers, retransmissions and delayed ACKs.
+ * <p>
+ * Scheduling and cancelling a task does not create any thread. Cancelled tasks are removed from the queue right away,
+ * so timers that are restarted often do not pile up.
+ * <p>
+ * The tasks run on the single scheduler thread, so they must be short, handing any longer work to another executor.
+ */
+public final class SharedScheduler {
+
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    private SharedScheduler() {
+    }
+
+    /**
+     * Returns the scheduler shared by the whole process.
+     *
+     * @return the scheduler
+     */
+    public static ScheduledExecutorService get() {
+        return SCHEDULER;
+    }
+
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                Thread.ofPlatform().name("shared-scheduler").daemon().factory());
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+}
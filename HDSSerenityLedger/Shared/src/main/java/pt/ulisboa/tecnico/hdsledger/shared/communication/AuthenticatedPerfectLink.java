@@ -1,9 +1,10 @@
 package pt.ulisboa.tecnico.hdsledger.shared.communication;
 
-import com.google.gson.Gson;
 import pt.ulisboa.tecnico.hdsledger.shared.CollapsingSet;
-import pt.ulisboa.tecnico.hdsledger.shared.SerializationUtils;
+import pt.ulisboa.tecnico.hdsledger.shared.SharedScheduler;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.Message.Type;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.BinaryWireCodec;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.WireCodec;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.consensus_message.ConsensusMessage;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerTransferRequest;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
@@ -11,81 +12,210 @@ import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.NodeProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.crypto.CryptoUtils;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.KeyRegistry;
 import pt.ulisboa.tecnico.hdsledger.shared.exception.ErrorMessage;
 import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
 import pt.ulisboa.tecnico.hdsledger.shared.logger.ProcessLogger;
 
+import javax.crypto.SecretKey;
 import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.InterruptedIOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
-import java.net.SocketException;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.security.KeyPair;
 import java.security.PublicKey;
 import java.text.MessageFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * An authenticated perfect link implementation.
  * Provides reliable delivery, no duplication and authenticity.
+ * <p>
+ * Messages are signed by a fixed pool of sender threads and written by a single {@link DatagramTransport} event loop,
+ * while retransmissions are scheduled instead of holding a sleeping thread per message.
+ * <p>
+ * Received messages go through a pipeline: the transport event loop reads the datagrams, a pool of verifier threads
+ * decodes and authenticates them in parallel, and the thread calling {@link #receive()} deduplicates and acknowledges
+ * them. Datagrams from the same address are always verified by the same thread, so the messages of each sender are
+ * received in the order they arrived.
+ * The retransmission timeout of each destination adapts to the round-trip time measured from its ACKs.
+ * <p>
+ * Messages are numbered per destination, so that the receiver can acknowledge all of them with a {@link CumulativeAck},
+ * either piggybacked on the next message it sends back or in an ACK message sent after a short flush interval.
+ * <p>
+ * In the {@link ProcessConfig.LinkAuthentication#SESSION_KEY} mode, the first message to each node is preceded by a
+ * signed {@link KeyExchangeMessage}, and once it is acknowledged, the messages to that node are authenticated with
+ * HMAC instead of signatures. Messages that may be forwarded as proof (PREPARE and COMMIT) also carry a payload
+ * signature, which leaves out the per-destination message ID, destination and ACK, so a broadcast signs them only once.
+ * <p>
+ * Signatures and MACs are computed over the canonical binary encoding of the message ({@link BinaryWireCodec}),
+ * independently of the format in which it is sent.
+ * <p>
+ * Messages larger than a datagram of the path MTU are split by the {@link Fragmenter} and put back together by a
+ * {@link FragmentReassembler}. Retransmissions of a fragmented message skip the fragments that the destination
+ * reported as received in its last fragment ACK, except every other one, since fragment ACKs are not authenticated.
  */
 public class AuthenticatedPerfectLink {
 
     private static final boolean ENABLE_ACK_LOGGING = false;
-    // Time to wait for an ACK before resending the message
-    private static final long BASE_SLEEP_TIME = 1000;
-    // UDP Socket
-    private final DatagramSocket socket;
+    // Number of received messages between each log of the allocated bytes per received message
+    private static final int ALLOCATION_LOG_INTERVAL = 1000;
+    private static final com.sun.management.ThreadMXBean THREAD_MX_BEAN = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // Number of threads signing and encoding outgoing messages
+    private static final int SENDER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+    // Time to wait for a message to piggyback the ACK on, before sending an ACK message
+    private static final long ACK_FLUSH_INTERVAL = 5;
+    // Maximum number of ranges above the floor in a cumulative ACK
+    private static final int MAX_ACK_RANGES = 32;
+    // Number of threads decoding and authenticating received messages
+    private static final int VERIFIER_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    // Maximum number of authenticated messages waiting to be received, before the verifier threads wait
+    private static final int VERIFIED_QUEUE_CAPACITY = 1024;
+    // Non-blocking UDP transport
+    private final DatagramTransport transport;
     // Map of all nodes in the network
     private final Map<String, ProcessConfig> nodes = new ConcurrentHashMap<>();
+    // Address to which messages to each node are sent
+    private final Map<String, InetSocketAddress> nodeAddresses = new ConcurrentHashMap<>();
     // Reference to the node itself
     private final ProcessConfig config;
     // Set of received messages from specific node (prevent duplicates)
     private final Map<String, CollapsingSet> receivedMessages = new ConcurrentHashMap<>();
-    // Set of received ACKs from specific node
-    private final CollapsingSet receivedAcks = new CollapsingSet();
-    // Message counter
-    private final AtomicInteger messageCounter = new AtomicInteger(0);
-    // Send messages to self by pushing to queue instead of through the network
-    private final Queue<SignedMessage> localhostQueue = new ConcurrentLinkedQueue<>();
+    // Whether messages received from specific node are waiting to be acknowledged
+    private final Map<String, AtomicBoolean> ackPending = new ConcurrentHashMap<>();
+    // Messages sent to specific node whose ACK has not been received yet, by message ID
+    private final Map<String, ConcurrentNavigableMap<Integer, PendingMessage>> pendingMessages = new ConcurrentHashMap<>();
+    // Round-trip time estimation for each node, used to compute the retransmission timeout
+    private final Map<String, RttEstimator> rttEstimators = new ConcurrentHashMap<>();
+    // Message counter for each node
+    private final Map<String, AtomicInteger> messageCounters = new ConcurrentHashMap<>();
+    // Identifier of the next transfer, which may be split in fragments
+    private final AtomicInteger transferCounter = new AtomicInteger(0);
+    // Fragmented messages whose ACK has not been received yet, by transfer ID
+    private final Map<Integer, PendingMessage> fragmentedMessages = new ConcurrentHashMap<>();
+    // Puts back together the messages received in fragments
+    private final FragmentReassembler reassembler;
+    // Session key proposed to specific node, waiting for the key exchange to be acknowledged
+    private final Map<String, SecretKey> proposedSessionKeys = new ConcurrentHashMap<>();
+    // Session key authenticating the messages sent to specific node
+    private final Map<String, SecretKey> outgoingSessionKeys = new ConcurrentHashMap<>();
+    // Session key authenticating the messages received from specific node
+    private final Map<String, SecretKey> incomingSessionKeys = new ConcurrentHashMap<>();
+    // Decodes and authenticates the messages sent to self (without using the network) or read by the transport
+    private final ShardedWorkerPool<Delivery> verifierPool;
+    // Authenticated messages waiting to be deduplicated and received
+    private final BlockingQueue<VerifiedMessage> verifiedMessages = new LinkedBlockingQueue<>(VERIFIED_QUEUE_CAPACITY);
+    // Signs and encodes outgoing messages without blocking the caller
+    private final ExecutorService senderPool;
+    // Schedules retransmissions of messages not yet acknowledged and the sending of pending ACKs (shared by the process)
+    private final ScheduledExecutorService scheduler = SharedScheduler.get();
+    // Encodes the messages sent, in the format chosen in the configuration (any format is decoded)
+    private final WireCodec codec;
     private final KeyPair keyPair;
+    // Public keys of the nodes, to verify signatures without reading key files
+    private final KeyRegistry keyRegistry;
     private final ProcessLogger logger;
+    // Bytes allocated while receiving messages, and number of messages received
+    private final AtomicLong receiveAllocatedBytes = new AtomicLong(0);
+    private final AtomicLong receivedMessageCount = new AtomicLong(0);
 
-    public AuthenticatedPerfectLink(ProcessConfig self, int port, ProcessConfig[] nodes, boolean activateLogs) {
+    public AuthenticatedPerfectLink(ProcessConfig self, int port, ProcessConfig[] nodes, KeyRegistry keyRegistry, boolean activateLogs) {
 
         this.keyPair = CryptoUtils.readKeyPair(self.getPrivateKeyPath(), self.getPublicKeyPath());
+        this.keyRegistry = keyRegistry;
+        this.codec = WireCodec.forFormat(self.getWireFormat());
         this.config = self;
         this.logger = new ProcessLogger(AuthenticatedPerfectLink.class.getName(), self.getId());
         if (!activateLogs)
             this.logger.disableLogging();
 
-        Arrays.stream(nodes).forEach(node -> {
-            String id = node.getId();
-            this.nodes.put(id, node);
-            receivedMessages.put(id, new CollapsingSet());
-        });
+        this.verifierPool = new ShardedWorkerPool<>(VERIFIER_THREADS,
+                MessageFormat.format("link-verifier-{0}-{1}", self.getId(), String.valueOf(port)), this::verify);
 
         try {
-            this.socket = new DatagramSocket(port, InetAddress.getByName(config.getHostname()));
-        } catch (UnknownHostException | SocketException e) {
+            for (ProcessConfig node : nodes) {
+                String id = node.getId();
+                this.nodes.put(id, node);
+                this.nodeAddresses.put(id, new InetSocketAddress(InetAddress.getByName(node.getHostname()), getDestinationPort(node)));
+                receivedMessages.put(id, new CollapsingSet());
+                ackPending.put(id, new AtomicBoolean(false));
+                pendingMessages.put(id, new ConcurrentSkipListMap<>());
+                rttEstimators.put(id, new RttEstimator());
+                messageCounters.put(id, new AtomicInteger(0));
+            }
+
+            InetSocketAddress bindAddress = new InetSocketAddress(InetAddress.getByName(config.getHostname()), port);
+            this.transport = new DatagramTransport(bindAddress,
+                    datagram -> verifierPool.submit(datagram.source(), new Delivery(null, datagram)), logger);
+        } catch (UnknownHostException e) {
             throw new HDSSException(ErrorMessage.CANNOT_OPEN_SOCKET);
         }
+
+        this.senderPool = Executors.newFixedThreadPool(SENDER_THREADS,
+                Thread.ofPlatform().name(MessageFormat.format("link-sender-{0}-{1}-", self.getId(), String.valueOf(port)), 0).daemon().factory());
+        this.reassembler = new FragmentReassembler(scheduler, ACK_FLUSH_INTERVAL, transport::send);
     }
 
     /**
-     * Acknowledges all messages with the given message IDs
+     * Returns the port to which messages to the given node are sent.
+     * <p>
+     * If we're a client, we should send messages to the client socket of the blockchain server,
+     * otherwise, we are a server and should send messages to the server socket of the client or to the server socket of the blockchain server.
      *
-     * @param messageIds The message IDs to acknowledge
+     * @param node The node configuration
+     * @return The destination port
      */
-    public void ackAll(List<Integer> messageIds) {
-        receivedAcks.addAll(messageIds);
+    private int getDestinationPort(ProcessConfig node) {
+        return config instanceof ClientProcessConfig
+                ? ((NodeProcessConfig) node).getClientPort()
+                : node.getPort();
+    }
+
+    /**
+     * Returns the current retransmission timeout for messages sent to a specific node.
+     *
+     * @param nodeId The node identifier
+     * @return The retransmission timeout, in milliseconds
+     */
+    public long getRetransmissionTimeout(String nodeId) {
+        return getRttEstimator(nodeId).getRto();
+    }
+
+    /**
+     * Returns the smoothed round-trip time measured to a specific node.
+     *
+     * @param nodeId The node identifier
+     * @return The smoothed round-trip time in milliseconds, or -1 if it was not measured yet
+     */
+    public double getSmoothedRtt(String nodeId) {
+        return getRttEstimator(nodeId).getSmoothedRtt();
+    }
+
+    private RttEstimator getRttEstimator(String nodeId) {
+        RttEstimator rttEstimator = rttEstimators.get(nodeId);
+        if (rttEstimator == null)
+            throw new HDSSException(ErrorMessage.NO_SUCH_NODE);
+
+        return rttEstimator;
     }
 
     /**
@@ -115,14 +245,20 @@ public class AuthenticatedPerfectLink {
             // Send different messages to different nodes (Alter the message)
             nodes.forEach((destId, dest) -> {
                 final var block = prePrepareMessage.getValue();
-                if (!block.getRequests().isEmpty())
-                    block.setRequests(block.getRequests().subList(0, block.getRequests().size() - 1));
-                prePrepareMessage.setValue(block);
+                if (block != null && !block.getRequests().isEmpty())
+                    prePrepareMessage.setValue(block.withRequests(block.getRequests().subList(0, block.getRequests().size() - 1)));
+
+                final var compactBlock = prePrepareMessage.getCompactValue();
+                if (compactBlock != null && !compactBlock.getRequests().isEmpty())
+                    compactBlock.setRequests(compactBlock.getRequests().subList(0, compactBlock.getRequests().size() - 1));
 
                 send(destId, prePrepareMessage);
             });
-        } else
-            nodes.forEach((destId, dest) -> send(destId, data));
+        } else {
+            // Every destination gets the same payload, so it is signed at most once
+            PayloadSigner payloadSigner = new PayloadSigner();
+            nodes.forEach((destId, dest) -> send(destId, data, payloadSigner));
+        }
     }
 
     /**
@@ -134,38 +270,24 @@ public class AuthenticatedPerfectLink {
     public void sendSignedMessage(String nodeId, SignedMessage signedMessage) {
         final SignedMessage localSignedMessage = signedMessage.deepCopy();
 
-        try {
-            ProcessConfig node = nodes.get(nodeId);
-            if (node == null)
-                throw new HDSSException(ErrorMessage.NO_SUCH_NODE);
-
-            // If the message is not ACK, it will be resent
-            InetAddress destAddress = InetAddress.getByName(node.getHostname());
-
-            // If we're a client, we should send messages to the client socket of the blockchain server
-            // otherwise, we are a server and should send messages to the server socket of the client or to the server socket of the blockchain server
-            int destPort = config instanceof ClientProcessConfig
-                    ? ((NodeProcessConfig) node).getClientPort()
-                    : node.getPort();
+        InetSocketAddress destination = nodeAddresses.get(nodeId);
+        if (destination == null)
+            throw new HDSSException(ErrorMessage.NO_SUCH_NODE);
 
-            // Send message to local queue instead of using network if destination in self
-            if (nodeId.equals(this.config.getId())) {
-                this.localhostQueue.add(localSignedMessage);
+        // Send message to local queue instead of using network if destination in self
+        if (nodeId.equals(this.config.getId())) {
+            deliverLocally(localSignedMessage);
 
-                logger.info(MessageFormat.format("Sent {0} to \u001B[33mself (locally)\u001B[37m successfully", localSignedMessage.getMessage()));
+            logger.info(MessageFormat.format("Sent {0} to \u001B[33mself (locally)\u001B[37m successfully", localSignedMessage.getMessage()));
 
-                return;
-            }
+            return;
+        }
 
-            byte[] dataToSend = SerializationUtils.getGson().toJson(localSignedMessage).getBytes();
+        byte[] dataToSend = codec.encode(localSignedMessage);
 
-            unreliableSend(destAddress, destPort, dataToSend);
+        sendDatagrams(dataToSend, destination);
 
-            logger.info(MessageFormat.format("Sending {0} to {1}:{2}", localSignedMessage.getMessage(), destAddress, String.valueOf(destPort)));
-        } catch (UnknownHostException e) {
-            logger.error(MessageFormat.format("Error sending signed message {0} to {1}: {2}", localSignedMessage.getMessage(), nodeId, e.getMessage()));
-            e.printStackTrace();
-        }
+        logger.info(MessageFormat.format("Sending {0} to {1}:{2}", localSignedMessage.getMessage(), destination.getAddress(), String.valueOf(destination.getPort())));
     }
 
     /**
@@ -175,83 +297,395 @@ public class AuthenticatedPerfectLink {
      * @param message The message to be sent
      */
     public void send(String nodeId, Message message) {
+        send(nodeId, message, new PayloadSigner());
+    }
+
+    /**
+     * Sends a message to a specific node with guarantee of delivery, sharing the payload signature with other
+     * destinations of the same message.
+     *
+     * @param nodeId        The node identifier
+     * @param message       The message to be sent
+     * @param payloadSigner The signer of the payload of the message
+     */
+    private void send(String nodeId, Message message, PayloadSigner payloadSigner) {
+        if (message.getType() != Type.KEY_EXCHANGE)
+            exchangeSessionKey(nodeId);
+
         final Message localMessage = message.deepCopy();
-        // Spawn a new thread to send the message
-        // To avoid blocking while waiting for ACK
-        new Thread(() -> {
+        // Sign in the sender pool to avoid blocking while signing
+        senderPool.execute(() -> {
             try {
-                ProcessConfig node = nodes.get(nodeId);
-                if (node == null)
+                InetSocketAddress destination = nodeAddresses.get(nodeId);
+                if (destination == null)
                     throw new HDSSException(ErrorMessage.NO_SUCH_NODE);
 
-                // If the message is not ACK, it will be resent
-                InetAddress destAddress = InetAddress.getByName(node.getHostname());
-
-                // If we're a client, we should send messages to the client socket of the blockchain server
-                // otherwise, we are a server and should send messages to the server socket of the client or to the server socket of the blockchain server
-                int destPort = config instanceof ClientProcessConfig
-                        ? ((NodeProcessConfig) node).getClientPort()
-                        : node.getPort();
-
                 if (localMessage.getType() != Type.ACK)
-                    localMessage.setMessageId(messageCounter.getAndIncrement());
-                int messageId = localMessage.getMessageId();
-
-                int count = 1;
-                long sleepTime = BASE_SLEEP_TIME;
-
-                byte[] signature = CryptoUtils.sign(localMessage, keyPair.getPrivate());
-                SignedMessage signedMessage = new SignedMessage(localMessage, signature);
-
-                byte[] dataToSend = SerializationUtils.getGson().toJson(signedMessage).getBytes();
+                    localMessage.setMessageId(messageCounters.get(nodeId).getAndIncrement());
+                localMessage.setDestinationId(nodeId);
 
                 // Send message to local queue instead of using network if destination in self
                 if (nodeId.equals(this.config.getId())) {
-                    this.localhostQueue.add(signedMessage);
+                    // Messages that never leave the process only need a signature if they may be forwarded
+                    byte[] payloadSignature = requiresSignature(localMessage.getType()) ? payloadSigner.sign(localMessage) : null;
+                    deliverLocally(new SignedMessage(localMessage, null, null, payloadSignature));
 
                     logger.info(MessageFormat.format("Sent {0} to \u001B[33mself (locally)\u001B[37m successfully", localMessage));
 
                     return;
                 }
 
-                for (; ; ) {
-                    logger.info(MessageFormat.format("Sending {0} to {1}:{2} - \u001B[36mAttempt #{3}\u001B[37m", localMessage, destAddress, String.valueOf(destPort), count++));
+                // Piggyback the acknowledgement of the messages received from the destination
+                localMessage.setCumulativeAck(takeCumulativeAck(nodeId));
 
-                    unreliableSend(destAddress, destPort, dataToSend);
+                SignedMessage signedMessage = authenticate(nodeId, localMessage, payloadSigner);
 
-                    // Wait (using exponential back-off), then look for ACK
-                    Thread.sleep(sleepTime);
+                byte[] dataToSend = codec.encode(signedMessage);
 
-                    // Receive method will set receivedAcks when sees corresponding ACK
-                    if (receivedAcks.contains(messageId))
-                        break;
-
-                    sleepTime <<= 1;
+                // ACK is sent without needing for another ACK
+                if (localMessage.getType() == Type.ACK) {
+                    sendDatagrams(dataToSend, destination);
+                    return;
                 }
 
-                logger.info(MessageFormat.format("Message {0} received by {1}:{2} successfully", localMessage, destAddress, String.valueOf(destPort)));
-            } catch (InterruptedException | UnknownHostException e) {
+                int transferId = transferCounter.getAndIncrement();
+                PendingMessage pendingMessage = new PendingMessage(nodeId, localMessage, transferId, Fragmenter.split(transferId, dataToSend),
+                        destination, getRttEstimator(nodeId).getRto());
+                pendingMessages.get(nodeId).put(localMessage.getMessageId(), pendingMessage);
+                if (pendingMessage.datagrams.length > 1)
+                    fragmentedMessages.put(transferId, pendingMessage);
+                transmit(pendingMessage);
+            } catch (HDSSException e) {
                 logger.error(MessageFormat.format("Error sending message {0} to {1}: {2}", message, nodeId, e.getMessage()));
                 e.printStackTrace();
             }
-        }).start();
+        });
     }
 
     /**
-     * Sends a message to a specific node without guarantee of delivery.
+     * Starts the exchange of the session key used to authenticate the messages sent to a node,
+     * if the link uses session keys and the exchange did not start yet.
      *
-     * @param hostname The hostname of the destination node
-     * @param port     The port of the destination node
-     * @param data     The data to be sent
+     * @param nodeId The node identifier
      */
-    public void unreliableSend(InetAddress hostname, int port, byte[] data) {
-        new Thread(() -> {
-            try {
-                socket.send(new DatagramPacket(data, data.length, hostname, port));
-            } catch (IOException e) {
-                throw new HDSSException(ErrorMessage.SOCKET_SENDING_ERROR);
+    private void exchangeSessionKey(String nodeId) {
+        if (config.getLinkAuthentication() != ProcessConfig.LinkAuthentication.SESSION_KEY
+                || nodeId.equals(config.getId()) || proposedSessionKeys.containsKey(nodeId) || !nodes.containsKey(nodeId))
+            return;
+
+        SecretKey sessionKey = CryptoUtils.generateSessionKey();
+        if (proposedSessionKeys.putIfAbsent(nodeId, sessionKey) != null)
+            return;
+
+        PublicKey publicKey = keyRegistry.getPublicKey(nodeId);
+        KeyExchangeMessage keyExchangeMessage = KeyExchangeMessage.builder()
+                .senderId(config.getId())
+                .type(Type.KEY_EXCHANGE)
+                .encryptedSessionKey(CryptoUtils.encryptSessionKey(sessionKey, publicKey))
+                .build();
+
+        send(nodeId, keyExchangeMessage);
+    }
+
+    /**
+     * Authenticates a message to a node, with the session key if one was established, or with the private key of
+     * this process otherwise. Messages forwarded as proof also carry the payload signature when authenticated
+     * with the session key.
+     * <p>
+     * Only the payload signature is shared by the copies of a broadcast. Without a session key, each copy is signed
+     * whole, since the message ID, destination and piggybacked ACK differ per destination and must be authenticated too.
+     *
+     * @param nodeId        The node identifier
+     * @param message       The message to be authenticated
+     * @param payloadSigner The signer of the payload of the message
+     * @return The authenticated message
+     */
+    private SignedMessage authenticate(String nodeId, Message message, PayloadSigner payloadSigner) {
+        byte[] data = BinaryWireCodec.encodeMessage(message);
+
+        SecretKey sessionKey = outgoingSessionKeys.get(nodeId);
+        if (sessionKey == null || message.getType() == Type.KEY_EXCHANGE)
+            return new SignedMessage(message, CryptoUtils.sign(data, keyPair.getPrivate()));
+
+        byte[] payloadSignature = requiresSignature(message.getType()) ? payloadSigner.sign(message) : null;
+
+        return new SignedMessage(message, null, CryptoUtils.mac(data, sessionKey), payloadSignature);
+    }
+
+    /**
+     * Checks whether messages of a type must be signed, even if a session key was established.
+     * PREPARE and COMMIT messages are forwarded to other nodes as proof (in ROUND-CHANGE justifications and when
+     * replying with the quorum of COMMIT), so only a signature can be verified by them.
+     * KEY-EXCHANGE messages are sent before any session key.
+     *
+     * @param type The message type
+     * @return True if the message must be signed
+     */
+    private static boolean requiresSignature(Type type) {
+        return type == Type.PREPARE || type == Type.COMMIT || type == Type.KEY_EXCHANGE;
+    }
+
+    /**
+     * Checks whether a received message was authenticated by its sender.
+     *
+     * @param signedMessage The received message
+     * @param local         Whether the message was sent by this process
+     * @param relayed       Whether the message was forwarded by a process other than its sender
+     * @return True if the message is authentic
+     */
+    private boolean isAuthentic(SignedMessage signedMessage, boolean local, boolean relayed) {
+        Message message = signedMessage.getMessage();
+
+        // The message ID and ACK of a forwarded message are meaningless, only its payload is
+        if (relayed)
+            return verifySignature(signedMessage);
+
+        if (signedMessage.getMac() != null) {
+            SecretKey sessionKey = incomingSessionKeys.get(message.getSenderId());
+            return sessionKey != null && message.getType() != Type.KEY_EXCHANGE
+                    && CryptoUtils.verifyMac(BinaryWireCodec.encodeMessage(message), signedMessage.getMac(), sessionKey)
+                    && (!requiresSignature(message.getType()) || verifySignature(signedMessage));
+        }
+
+        // Messages that never left the process may not be signed
+        if (local)
+            return (signedMessage.getSignature() == null && signedMessage.getPayloadSignature() == null) || verifySignature(signedMessage);
+
+        // Otherwise, the signature must also cover the message ID, destination and ACK
+        return signedMessage.getSignature() != null && verify(message.getSenderId(), BinaryWireCodec.encodeMessage(message), signedMessage.getSignature());
+    }
+
+    /**
+     * Verifies the signature of a message with the public key of its sender.
+     * Used for messages forwarded as proof, which carry the signature of their original sender,
+     * either over the payload only or over the whole message.
+     *
+     * @param signedMessage The signed message
+     * @return True if the signature is valid
+     */
+    public boolean verifySignature(SignedMessage signedMessage) {
+        Message message = signedMessage.getMessage();
+
+        if (signedMessage.getPayloadSignature() != null)
+            return verify(message.getSenderId(), BinaryWireCodec.encodePayload(message), signedMessage.getPayloadSignature());
+
+        return signedMessage.getSignature() != null
+                && verify(message.getSenderId(), BinaryWireCodec.encodeMessage(message), signedMessage.getSignature());
+    }
+
+    private boolean verify(String senderId, byte[] data, byte[] signature) {
+        if (!nodes.containsKey(senderId))
+            return false;
+
+        return CryptoUtils.verify(data, signature, keyRegistry.getPublicKey(senderId));
+    }
+
+    /**
+     * Sends a pending message and schedules its retransmission, in case the ACK is not received in the meantime.
+     *
+     * @param pendingMessage The message to be sent
+     */
+    private void transmit(PendingMessage pendingMessage) {
+        synchronized (pendingMessage) {
+            if (!isPending(pendingMessage))
+                return;
+
+            logger.info(MessageFormat.format("Sending {0} to {1}:{2} - \u001B[36mAttempt #{3}\u001B[37m",
+                    pendingMessage.message, pendingMessage.destination.getAddress(), String.valueOf(pendingMessage.destination.getPort()), pendingMessage.attempt));
+
+            pendingMessage.sentAt = System.nanoTime();
+            // Fragment ACKs are not authenticated, so every other transmission sends all the fragments,
+            // and forged fragment ACKs can delay a message but not keep it from being delivered
+            boolean skipFragments = !pendingMessage.skippedFragments;
+            for (int index = 0; index < pendingMessage.datagrams.length; index++) {
+                if (!skipFragments || !pendingMessage.receivedFragments.get(index))
+                    transport.send(pendingMessage.datagrams[index], pendingMessage.destination);
             }
-        }).start();
+            pendingMessage.skippedFragments = skipFragments && !pendingMessage.receivedFragments.isEmpty();
+            // A fragment ACK only applies to the next transmission, in case the destination abandoned the reassembly
+            pendingMessage.receivedFragments.clear();
+
+            pendingMessage.retransmission = scheduler.schedule(
+                    () -> senderPool.execute(() -> retransmit(pendingMessage)), pendingMessage.timeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Resends a message whose ACK was not received before the timeout expired.
+     * The timeout doubles on every attempt (exponential back-off), up to {@link RttEstimator#MAX_RTO}.
+     *
+     * @param pendingMessage The message to be resent
+     */
+    private void retransmit(PendingMessage pendingMessage) {
+        synchronized (pendingMessage) {
+            if (!isPending(pendingMessage))
+                return;
+
+            getRttEstimator(pendingMessage.nodeId).backOff(pendingMessage.timeout);
+            pendingMessage.attempt++;
+            pendingMessage.timeout = Math.min(pendingMessage.timeout << 1, RttEstimator.MAX_RTO);
+        }
+
+        transmit(pendingMessage);
+    }
+
+    private boolean isPending(PendingMessage pendingMessage) {
+        return pendingMessages.get(pendingMessage.nodeId).containsKey(pendingMessage.message.getMessageId());
+    }
+
+    /**
+     * Sends a message with no guarantee of delivery, split in fragments if needed.
+     *
+     * @param data        The encoded message
+     * @param destination The address of the destination
+     */
+    private void sendDatagrams(byte[] data, InetSocketAddress destination) {
+        for (byte[] datagram : Fragmenter.split(transferCounter.getAndIncrement(), data))
+            transport.send(datagram, destination);
+    }
+
+    /**
+     * Records the fragments of a message received by its destination, so that they are not retransmitted.
+     * Only fragment ACKs for a message still being sent to the address they come from are accepted, and only if they
+     * leave some fragment missing, since the destination sends the ACK of the message once it has every fragment.
+     *
+     * @param fragmentAck The fragment ACK
+     * @param source      The address from which the fragment ACK was received
+     */
+    private void acknowledgeFragments(Fragmenter.FragmentAck fragmentAck, InetSocketAddress source) {
+        PendingMessage pendingMessage = fragmentedMessages.get(fragmentAck.transferId());
+        if (pendingMessage == null || !pendingMessage.destination.equals(source)
+                || fragmentAck.received().length() > pendingMessage.datagrams.length
+                || fragmentAck.received().cardinality() == pendingMessage.datagrams.length)
+            return;
+
+        synchronized (pendingMessage) {
+            pendingMessage.receivedFragments.or(fragmentAck.received());
+        }
+    }
+
+    /**
+     * Marks every message covered by a cumulative ACK as received by the node that sent it.
+     * <p>
+     * The most recently sent of the newly acknowledged messages is used as a round-trip time sample,
+     * unless it was retransmitted, since then the ACK cannot be matched to a specific attempt (Karn's algorithm).
+     *
+     * @param senderId      The node that acknowledged the messages
+     * @param cumulativeAck The acknowledgement
+     */
+    private void acknowledge(String senderId, CumulativeAck cumulativeAck) {
+        ConcurrentNavigableMap<Integer, PendingMessage> pending = pendingMessages.get(senderId);
+
+        List<PendingMessage> acknowledged = new ArrayList<>(pending.headMap(cumulativeAck.floor(), true).values());
+        for (CollapsingSet.Range range : cumulativeAck.ranges())
+            acknowledged.addAll(pending.subMap(range.start(), true, range.end(), true).values());
+
+        PendingMessage latest = null;
+        for (PendingMessage pendingMessage : acknowledged) {
+            if (acknowledge(pendingMessage) && (latest == null || pendingMessage.sentAt > latest.sentAt))
+                latest = pendingMessage;
+        }
+
+        if (latest != null && latest.attempt == 1)
+            getRttEstimator(senderId).addSample((System.nanoTime() - latest.sentAt) / 1_000_000.0);
+    }
+
+    /**
+     * Marks a single message as received by the node that sent the acknowledgement.
+     *
+     * @param senderId  The node that acknowledged the message
+     * @param messageId The identifier of the acknowledged message
+     */
+    private void acknowledge(String senderId, int messageId) {
+        PendingMessage pendingMessage = pendingMessages.get(senderId).get(messageId);
+        if (pendingMessage != null)
+            acknowledge(pendingMessage);
+    }
+
+    /**
+     * Marks a message as received by its destination, stopping its retransmission.
+     *
+     * @param pendingMessage The acknowledged message
+     * @return True if the message was still waiting for its ACK
+     */
+    private boolean acknowledge(PendingMessage pendingMessage) {
+        synchronized (pendingMessage) {
+            if (pendingMessages.get(pendingMessage.nodeId).remove(pendingMessage.message.getMessageId()) == null)
+                return false;
+
+            fragmentedMessages.remove(pendingMessage.transferId);
+
+            if (pendingMessage.retransmission != null)
+                pendingMessage.retransmission.cancel(false);
+        }
+
+        if (pendingMessage.message.getType() == Type.KEY_EXCHANGE) {
+            outgoingSessionKeys.put(pendingMessage.nodeId, proposedSessionKeys.get(pendingMessage.nodeId));
+            logger.info(MessageFormat.format("Established session key with node {0}", pendingMessage.nodeId));
+        }
+
+        logger.info(MessageFormat.format("Message {0} received by {1}:{2} successfully",
+                pendingMessage.message, pendingMessage.destination.getAddress(), String.valueOf(pendingMessage.destination.getPort())));
+
+        return true;
+    }
+
+    /**
+     * Returns the acknowledgement of the messages received from a node, to be piggybacked on a message sent to it.
+     * Since the acknowledgement is no longer pending, no ACK message is sent unless new messages arrive.
+     *
+     * @param nodeId The node identifier
+     * @return The acknowledgement, or {@code null} if no message was received from the node
+     */
+    private CumulativeAck takeCumulativeAck(String nodeId) {
+        ackPending.get(nodeId).set(false);
+
+        CollapsingSet received = receivedMessages.get(nodeId);
+        CumulativeAck cumulativeAck = new CumulativeAck(received.getFloor(), received.getRanges(MAX_ACK_RANGES));
+
+        return cumulativeAck.floor() == -1 && cumulativeAck.ranges().isEmpty() ? null : cumulativeAck;
+    }
+
+    /**
+     * Schedules an ACK message to a node, unless one is already scheduled.
+     * If a message is sent to the node before the flush interval, the ACK is piggybacked on it instead.
+     *
+     * @param nodeId The node identifier
+     */
+    private void scheduleAck(String nodeId) {
+        if (ackPending.get(nodeId).compareAndSet(false, true))
+            scheduler.schedule(() -> senderPool.execute(() -> flushAck(nodeId)), ACK_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Sends an ACK message to a node, if the acknowledgement was not piggybacked on another message in the meantime.
+     * <p>
+     * ACK is sent without needing for another ACK because we're assuming an eventually synchronous network.
+     * Even if a node receives the message multiple times, it will discard duplicates and acknowledge them again.
+     *
+     * @param nodeId The node identifier
+     */
+    private void flushAck(String nodeId) {
+        if (!ackPending.get(nodeId).get())
+            return;
+
+        try {
+            Message responseMessage = new Message(this.config.getId(), Type.ACK);
+            responseMessage.setDestinationId(nodeId);
+            responseMessage.setCumulativeAck(takeCumulativeAck(nodeId));
+
+            InetSocketAddress destination = nodeAddresses.get(nodeId);
+
+            if (ENABLE_ACK_LOGGING)
+                logger.info(MessageFormat.format("Sending {0} to {1}:{2}", responseMessage, destination.getAddress(), String.valueOf(destination.getPort())));
+
+            SignedMessage signedResponseMessage = authenticate(nodeId, responseMessage, new PayloadSigner());
+            byte[] dataToSend = codec.encode(signedResponseMessage);
+
+            sendDatagrams(dataToSend, destination);
+        } catch (HDSSException e) {
+            logger.error(MessageFormat.format("Error sending ACK to {0}: {1}", nodeId, e.getMessage()));
+        }
     }
 
     /**
@@ -260,47 +694,165 @@ public class AuthenticatedPerfectLink {
      * @return The received message
      */
     public SignedMessage receive() throws IOException {
+        final VerifiedMessage verifiedMessage;
+        try {
+            verifiedMessage = verifiedMessages.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a message");
+        }
+
+        long allocatedBefore = getAllocatedBytes();
+        try {
+            return dispatch(verifiedMessage);
+        } finally {
+            if (allocatedBefore >= 0)
+                recordAllocation(getAllocatedBytes() - allocatedBefore);
+        }
+    }
+
+    /**
+     * Returns the number of datagrams read by the transport and not yet decoded.
+     *
+     * @return The queue depth of the read stage
+     */
+    public int getReadQueueDepth() {
+        return transport.getUnreleasedDatagrams();
+    }
+
+    /**
+     * Returns the number of messages waiting to be decoded and authenticated.
+     *
+     * @return The queue depth of the verify stage
+     */
+    public int getVerifyQueueDepth() {
+        return verifierPool.getQueueDepth();
+    }
+
+    /**
+     * Returns the number of authenticated messages waiting to be deduplicated and received.
+     *
+     * @return The queue depth of the dispatch stage
+     */
+    public int getDispatchQueueDepth() {
+        return verifiedMessages.size();
+    }
+
+    /**
+     * Returns the average number of bytes allocated by the receive pipeline to decode, verify and deduplicate
+     * each received message, which should stay flat regardless of the message rate.
+     *
+     * @return The allocated bytes per received message, or -1 if allocations cannot be measured
+     */
+    public long getAllocatedBytesPerReceivedMessage() {
+        long messages = receivedMessageCount.get();
+        return messages == 0 || getAllocatedBytes() < 0 ? -1 : receiveAllocatedBytes.get() / messages;
+    }
+
+    private static long getAllocatedBytes() {
+        return THREAD_MX_BEAN.isThreadAllocatedMemoryEnabled() ? THREAD_MX_BEAN.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    private void recordAllocation(long allocatedBytes) {
+        receiveAllocatedBytes.addAndGet(allocatedBytes);
+        if (receivedMessageCount.incrementAndGet() % ALLOCATION_LOG_INTERVAL == 0) {
+            logger.info(MessageFormat.format("Allocated {0} bytes per received message", String.valueOf(getAllocatedBytesPerReceivedMessage())));
+            logger.info(MessageFormat.format("Receive queue depths: read {0}, verify {1}, dispatch {2}",
+                    String.valueOf(getReadQueueDepth()), String.valueOf(getVerifyQueueDepth()), String.valueOf(getDispatchQueueDepth())));
+        }
+    }
+
+    /**
+     * Queues a message sent to self to be received, without using the network.
+     *
+     * @param signedMessage The message
+     */
+    private void deliverLocally(SignedMessage signedMessage) {
+        verifierPool.submit(config.getId(), new Delivery(signedMessage, null));
+    }
+
+    /**
+     * Decodes and authenticates a message, in a verifier thread, and queues it to be received.
+     * Messages that cannot be decoded or authenticated are dropped.
+     *
+     * @param delivery The message sent to self or the datagram read from the network
+     */
+    private void verify(Delivery delivery) {
+        long allocatedBefore = getAllocatedBytes();
+        try {
+            VerifiedMessage verifiedMessage = decodeAndAuthenticate(delivery);
+            // Fragments and fragment ACKs do not complete a message by themselves
+            if (verifiedMessage != null)
+                verifiedMessages.put(verifiedMessage);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            logger.error(MessageFormat.format("Error receiving message: {0}", e.getMessage()));
+        } finally {
+            if (allocatedBefore >= 0)
+                receiveAllocatedBytes.addAndGet(getAllocatedBytes() - allocatedBefore);
+        }
+    }
+
+    /**
+     * Decodes and authenticates a message.
+     *
+     * @param delivery The message sent to self or the datagram read from the network
+     * @return The authenticated message, or {@code null} if the datagram was a fragment of an incomplete message or a fragment ACK
+     */
+    private VerifiedMessage decodeAndAuthenticate(Delivery delivery) {
         SignedMessage signedMessage;
         Message message;
         boolean local = false;
-        DatagramPacket response = null;
-        Gson gson = SerializationUtils.getGson();
+        InetSocketAddress response = null;
 
-        if (!this.localhostQueue.isEmpty()) {
-            signedMessage = this.localhostQueue.poll();
+        if (delivery.localMessage() != null) {
+            signedMessage = delivery.localMessage();
             message = signedMessage.getMessage();
             local = true;
-            this.receivedAcks.add(message.getMessageId());
         } else {
-            byte[] buf = new byte[65536];
-            response = new DatagramPacket(buf, buf.length);
-            socket.receive(response);
-
-            byte[] buffer = Arrays.copyOfRange(response.getData(), 0, response.getLength());
-            signedMessage = SerializationUtils.deserialize(buffer, SignedMessage.class);
+            response = delivery.datagram().source();
+            try {
+                ByteBuffer data = delivery.datagram().data();
+                if (!data.hasRemaining())
+                    throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+
+                switch (data.get(data.position())) {
+                    case Fragmenter.FRAGMENT -> {
+                        ByteBuffer reassembled = reassembler.add(data, response);
+                        if (reassembled == null)
+                            return null;
+                        signedMessage = WireCodec.decodeAny(reassembled);
+                    }
+                    case Fragmenter.FRAGMENT_ACK -> {
+                        acknowledgeFragments(Fragmenter.decodeAck(data), response);
+                        return null;
+                    }
+                    default -> signedMessage = WireCodec.decodeAny(data);
+                }
+            } finally {
+                transport.release(delivery.datagram());
+            }
             message = signedMessage.getMessage();
         }
 
         String senderId = message.getSenderId();
-        int messageId = message.getMessageId();
 
         if (!nodes.containsKey(senderId))
             throw new HDSSException(ErrorMessage.NO_SUCH_NODE);
 
-        // Validate signature
-        if (signedMessage != null) {
-            PublicKey publicKey = CryptoUtils.getPublicKey(nodes.get(senderId).getPublicKeyPath());
+        // Messages forwarded by another node (e.g. a quorum of COMMIT) are not part of the link with their sender.
+        // They are told apart by their destination, which their sender authenticated with the rest of the envelope,
+        // rather than by the address they came from, which can be spoofed
+        boolean relayed = !local && !config.getId().equals(message.getDestinationId());
 
-            var data = SerializationUtils.serializeToBytes(signedMessage.getMessage());
-
-            boolean validSignature = CryptoUtils.verify(data, signedMessage.getSignature(), publicKey);
-            if (!validSignature) {
-                if (response == null)
-                    logger.error(MessageFormat.format("Invalid signature for message {0} from \u001B[33mself (locally)\u001B[37m", message));
-                else
-                    logger.error(MessageFormat.format("Invalid signature for message {0} from {1}:{2}", message, response.getAddress(), String.valueOf(response.getPort())));
-                throw new HDSSException(ErrorMessage.INVALID_SIGNATURE_ERROR);
-            }
+        // Validate signature or session key MAC
+        if (!isAuthentic(signedMessage, local, relayed)) {
+            if (response == null)
+                logger.error(MessageFormat.format("Invalid signature for message {0} from \u001B[33mself (locally)\u001B[37m", message));
+            else
+                logger.error(MessageFormat.format("Invalid signature for message {0} from {1}:{2}", message, response.getAddress(), String.valueOf(response.getPort())));
+            throw new HDSSException(ErrorMessage.INVALID_SIGNATURE_ERROR);
         }
 
         if (message.getType() != Type.ACK || ENABLE_ACK_LOGGING) {
@@ -310,69 +862,120 @@ public class AuthenticatedPerfectLink {
                 logger.info(MessageFormat.format("Received {0} from {1}:{2}", message, response.getAddress(), String.valueOf(response.getPort())));
         }
 
-        // Handle ACKS, since it's possible to receive multiple acks from the same message
-        if (message.getType().equals(Type.ACK)) {
-            receivedAcks.add(messageId);
+        return new VerifiedMessage(signedMessage, response, relayed);
+    }
+
+    /**
+     * Deduplicates and acknowledges an authenticated message.
+     *
+     * @param verifiedMessage The authenticated message
+     * @return The received message
+     */
+    private SignedMessage dispatch(VerifiedMessage verifiedMessage) {
+        SignedMessage signedMessage = verifiedMessage.signedMessage();
+        Message message = signedMessage.getMessage();
+        String senderId = message.getSenderId();
+        boolean local = verifiedMessage.source() == null;
+
+        if (verifiedMessage.relayed()) {
+            // Only messages that are forwarded as proof are accepted, and they do not acknowledge nor need to be acknowledged
+            if (!requiresSignature(message.getType()))
+                message.setType(Type.IGNORE);
+
             return signedMessage;
         }
 
-        Type originalType = message.getType();
+        // Handle ACKs, either in ACK messages or piggybacked on any other message
+        if (!local && message.getCumulativeAck() != null)
+            acknowledge(senderId, message.getCumulativeAck());
+
+        if (message.getType().equals(Type.ACK))
+            return signedMessage;
+
+        // The session key is stored before the key exchange is marked as received, since that may acknowledge it
+        if (message instanceof KeyExchangeMessage keyExchangeMessage && !receivedMessages.get(senderId).contains(message.getMessageId()))
+            incomingSessionKeys.put(senderId, CryptoUtils.decryptSessionKey(keyExchangeMessage.getEncryptedSessionKey(), keyPair.getPrivate()));
 
         // Message already received (add returns false if already exists) => Discard
-        boolean isRepeated = !receivedMessages.get(message.getSenderId()).add(messageId);
+        boolean isRepeated = !receivedMessages.get(senderId).add(message.getMessageId());
         if (isRepeated)
             message.setType(Type.IGNORE);
 
-        switch (message.getType()) {
-            case PRE_PREPARE -> {
-                return signedMessage;
-            }
-            case IGNORE -> {
-                if (!originalType.equals(Type.COMMIT) && !originalType.equals(Type.ROUND_CHANGE)) {
-                    return signedMessage;
-                }
-            }
-            case PREPARE -> {
-                ConsensusMessage consensusMessage = (ConsensusMessage) message;
-                if (consensusMessage.getReplyTo() != null && consensusMessage.getReplyTo().equals(config.getId()))
-                    receivedAcks.add(consensusMessage.getReplyToMessageId());
+        // Replies to a previous message also acknowledge it
+        if (message instanceof ConsensusMessage consensusMessage
+                && (message.getType() == Type.PREPARE || message.getType() == Type.COMMIT)
+                && consensusMessage.getReplyTo() != null && consensusMessage.getReplyTo().equals(config.getId()))
+            acknowledge(senderId, consensusMessage.getReplyToMessageId());
 
-                return signedMessage;
-            }
-            case COMMIT -> {
-                ConsensusMessage consensusMessageDto = (ConsensusMessage) message;
-                if (consensusMessageDto.getReplyTo() != null && consensusMessageDto.getReplyTo().equals(config.getId()))
-                    receivedAcks.add(consensusMessageDto.getReplyToMessageId());
-            }
-            default -> {
-                // Do nothing
-            }
-        }
+        // Acknowledge the message to the sender if it was not local, even if repeated since the previous ACK may have been lost
+        if (!local)
+            scheduleAck(senderId);
 
-        // Send ACK to the sender if the message was not local and is not ignored
+        return signedMessage;
+    }
 
-        if (!local) {
-            InetAddress address = InetAddress.getByName(response.getAddress().getHostAddress());
-            int port = response.getPort();
+    /**
+     * A message waiting to be received.
+     * Exactly one of the fields is set: the signed message if it was sent to self, or the datagram read from the network.
+     *
+     * @param localMessage The signed message sent to self
+     * @param datagram     The datagram read from the network
+     */
+    private record Delivery(SignedMessage localMessage, DatagramTransport.IncomingDatagram datagram) {
+    }
 
-            Message responseMessage = new Message(this.config.getId(), Type.ACK);
-            responseMessage.setMessageId(messageId);
+    /**
+     * A message that was authenticated, waiting to be deduplicated and received.
+     *
+     * @param signedMessage The message
+     * @param source        The address from which the message was received, or {@code null} if it was sent to self
+     * @param relayed       Whether the message was forwarded by a process other than its sender
+     */
+    private record VerifiedMessage(SignedMessage signedMessage, InetSocketAddress source, boolean relayed) {
+    }
 
-            // ACK is sent without needing for another ACK because
-            // we're assuming an eventually synchronous network
-            // Even if a node receives the message multiple times,
-            // it will discard duplicates
+    /**
+     * Signs the payload of a message at most once, however many destinations it is sent to.
+     * The payload is the same in every copy of the message, since it leaves out the message ID, destination and ACK.
+     */
+    private final class PayloadSigner {
 
-            if (ENABLE_ACK_LOGGING)
-                logger.info(MessageFormat.format("Sending {0} to {1}:{2}", responseMessage, address, String.valueOf(port)));
+        private byte[] signature;
 
-            byte[] signature = CryptoUtils.sign(responseMessage, keyPair.getPrivate());
-            SignedMessage signedResponseMessage = new SignedMessage(responseMessage, signature);
-            byte[] dataToSend = gson.toJson(signedResponseMessage).getBytes();
+        private synchronized byte[] sign(Message message) {
+            if (signature == null)
+                signature = CryptoUtils.sign(BinaryWireCodec.encodePayload(message), keyPair.getPrivate());
 
-            unreliableSend(address, port, dataToSend);
+            return signature;
         }
+    }
 
-        return signedMessage;
+    /**
+     * A message sent with guarantee of delivery, waiting for its ACK.
+     */
+    private static class PendingMessage {
+        private final String nodeId;
+        private final Message message;
+        private final int transferId;
+        // The encoded message, or its fragments
+        private final byte[][] datagrams;
+        // Fragments reported as received by the destination since the last transmission
+        private final BitSet receivedFragments = new BitSet();
+        // Whether the last transmission skipped the fragments reported as received
+        private boolean skippedFragments = false;
+        private final InetSocketAddress destination;
+        private int attempt = 1;
+        private long timeout;
+        private long sentAt;
+        private ScheduledFuture<?> retransmission;
+
+        private PendingMessage(String nodeId, Message message, int transferId, byte[][] datagrams, InetSocketAddress destination, long timeout) {
+            this.nodeId = nodeId;
+            this.message = message;
+            this.transferId = transferId;
+            this.datagrams = datagrams;
+            this.destination = destination;
+            this.timeout = timeout;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,72 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code BufferPool} class is a bounded pool of direct {@link ByteBuffer}s of the same size.
+ * <p>
+ * Buffers are allocated lazily, up to the capacity of the pool, and reused once released.
+ * When every buffer is in use, {@link #acquire()} returns {@code null} instead of allocating more.
+ * <p>
+ * This class is thread-safe.
+ */
+public class BufferPool {
+
+    private final int capacity;
+    private final int bufferSize;
+    // Buffers released and ready to be acquired again
+    private final Queue<ByteBuffer> freeBuffers = new ConcurrentLinkedQueue<>();
+    // Number of buffers allocated so far
+    private final AtomicInteger allocatedBuffers = new AtomicInteger(0);
+
+    public BufferPool(int capacity, int bufferSize) {
+        this.capacity = capacity;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool.
+     *
+     * @return the buffer, or {@code null} if every buffer is in use
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer != null)
+            return buffer;
+
+        if (allocatedBuffers.getAndUpdate(allocated -> Math.min(allocated + 1, capacity)) == capacity)
+            return null;
+
+        return ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    /**
+     * Returns a buffer to the pool, after it is no longer used.
+     *
+     * @param buffer the buffer previously acquired from this pool
+     */
+    public void release(ByteBuffer buffer) {
+        freeBuffers.add(buffer.clear());
+    }
+
+    /**
+     * Checks whether a buffer can be acquired without waiting for one to be released.
+     *
+     * @return true if a buffer is free or can still be allocated
+     */
+    public boolean hasAvailable() {
+        return !freeBuffers.isEmpty() || allocatedBuffers.get() < capacity;
+    }
+
+    /**
+     * Returns the number of buffers acquired and not yet released.
+     *
+     * @return the number of buffers in use
+     */
+    public int getInUse() {
+        return allocatedBuffers.get() - freeBuffers.size();
+    }
+}
@@ -0,0 +1,22 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication;
+
+import pt.ulisboa.tecnico.hdsledger.shared.CollapsingSet;
+
+import java.util.List;
+
+/**
+ * The {@code CumulativeAck} record acknowledges every message received from a node at once: all messages with an
+ * identifier up to the floor, plus the ranges of identifiers received above it.
+ * <p>
+ * It is sent on its own in ACK messages, or piggybacked on any other message sent to the same node.
+ *
+ * @param floor  the highest identifier such that every message up to it was received, or -1 if none
+ * @param ranges the ranges of identifiers received above the floor
+ */
+public record CumulativeAck(int floor, List<CollapsingSet.Range> ranges) {
+
+    @Override
+    public String toString() {
+        return ranges.isEmpty() ? "<=" + floor : "<=" + floor + ", " + ranges;
+    }
+}
@@ -0,0 +1,194 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication;
+
+import pt.ulisboa.tecnico.hdsledger.shared.exception.ErrorMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
+import pt.ulisboa.tecnico.hdsledger.shared.logger.ProcessLogger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.text.MessageFormat;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+/**
+ * The {@code DatagramTransport} class is a non-blocking UDP transport built on a {@link DatagramChannel}.
+ * <p>
+ * A single event loop thread owns the channel: it reads every incoming datagram and writes every queued outgoing one,
+ * so the number of threads stays the same regardless of how many messages are in flight.
+ * <p>
+ * Datagrams are read into direct buffers taken from a bounded {@link BufferPool}, which the handler must give back
+ * with {@link #release(IncomingDatagram)}. While every buffer is in use, the event loop stops reading,
+ * leaving the datagrams in the socket buffer.
+ */
+public class DatagramTransport {
+
+    // Maximum size of a UDP datagram
+    public static final int MAX_DATAGRAM_SIZE = 65536;
+    // Maximum number of datagrams read but not yet released by the handler
+    private static final int RECEIVE_BUFFERS = 64;
+
+    private final DatagramChannel channel;
+    private final Selector selector;
+    private final SelectionKey selectionKey;
+    // Datagrams waiting to be written by the event loop
+    private final Queue<OutgoingDatagram> outgoingDatagrams = new ConcurrentLinkedQueue<>();
+    // Buffers in which datagrams are read
+    private final BufferPool receiveBuffers = new BufferPool(RECEIVE_BUFFERS, MAX_DATAGRAM_SIZE);
+    // Whether the event loop stopped reading because every buffer is in use
+    private volatile boolean readPaused = false;
+    // Called by the event loop for every datagram read from the channel
+    private final Consumer<IncomingDatagram> incomingDatagramHandler;
+    private final ProcessLogger logger;
+
+    public DatagramTransport(InetSocketAddress bindAddress, Consumer<IncomingDatagram> incomingDatagramHandler, ProcessLogger logger) {
+        this.incomingDatagramHandler = incomingDatagramHandler;
+        this.logger = logger;
+
+        try {
+            this.channel = DatagramChannel.open();
+            this.channel.bind(bindAddress);
+            this.channel.configureBlocking(false);
+            this.selector = Selector.open();
+            this.selectionKey = this.channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            throw new HDSSException(ErrorMessage.CANNOT_OPEN_SOCKET);
+        }
+
+        Thread.ofPlatform()
+                .name(MessageFormat.format("transport-{0}", String.valueOf(bindAddress.getPort())))
+                .start(this::runEventLoop);
+    }
+
+    /**
+     * Queues a datagram to be sent by the event loop, with no guarantee of delivery.
+     *
+     * @param data        The data to be sent
+     * @param destination The address of the destination
+     */
+    public void send(byte[] data, InetSocketAddress destination) {
+        outgoingDatagrams.add(new OutgoingDatagram(data, destination));
+        selector.wakeup();
+    }
+
+    /**
+     * Gives back the buffer of a datagram to the pool, once its content is no longer needed.
+     *
+     * @param datagram The datagram handed to the incoming datagram handler
+     */
+    public void release(IncomingDatagram datagram) {
+        receiveBuffers.release(datagram.data());
+
+        if (readPaused)
+            selector.wakeup();
+    }
+
+    /**
+     * Returns the number of datagrams read and not yet released by the handler.
+     *
+     * @return The number of datagrams being handled
+     */
+    public int getUnreleasedDatagrams() {
+        return receiveBuffers.getInUse();
+    }
+
+    /**
+     * Reads and writes datagrams until the channel is closed.
+     */
+    private void runEventLoop() {
+        while (channel.isOpen()) {
+            try {
+                selector.select();
+                selector.selectedKeys().clear();
+
+                readDatagrams();
+                writeDatagrams();
+            } catch (IOException | ClosedSelectorException e) {
+                logger.error(MessageFormat.format("Error in transport event loop: {0}", e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Reads every datagram available in the channel and hands it to the incoming datagram handler,
+     * until the channel is empty or there are no free buffers.
+     */
+    private void readDatagrams() throws IOException {
+        while (true) {
+            ByteBuffer readBuffer = receiveBuffers.acquire();
+            if (readBuffer == null) {
+                readPaused = true;
+                return;
+            }
+
+            SocketAddress source = channel.receive(readBuffer);
+            if (source == null) {
+                receiveBuffers.release(readBuffer);
+                readPaused = false;
+                return;
+            }
+
+            try {
+                incomingDatagramHandler.accept(new IncomingDatagram(readBuffer.flip(), (InetSocketAddress) source));
+            } catch (RuntimeException e) {
+                receiveBuffers.release(readBuffer);
+                logger.error(MessageFormat.format("Error handling datagram from {0}: {1}", source, e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Writes queued datagrams until the queue is empty or the channel cannot take more,
+     * in which case the event loop waits for the channel to become writable.
+     */
+    private void writeDatagrams() {
+        OutgoingDatagram datagram;
+        while ((datagram = outgoingDatagrams.peek()) != null) {
+            try {
+                if (channel.send(ByteBuffer.wrap(datagram.data()), datagram.destination()) == 0) {
+                    selectionKey.interestOps(readInterest() | SelectionKey.OP_WRITE);
+                    return;
+                }
+            } catch (IOException e) {
+                logger.error(MessageFormat.format("Error sending datagram to {0}: {1}", datagram.destination(), e.getMessage()));
+            }
+            outgoingDatagrams.poll();
+        }
+
+        selectionKey.interestOps(readInterest());
+    }
+
+    /**
+     * Returns the read interest of the channel, which is dropped while there are no buffers to read into,
+     * so that the event loop sleeps until a buffer is released instead of spinning on a readable channel.
+     *
+     * @return The read interest operations
+     */
+    private int readInterest() {
+        return readPaused && !receiveBuffers.hasAvailable() ? 0 : SelectionKey.OP_READ;
+    }
+
+    /**
+     * A datagram read from the channel.
+     *
+     * @param data   The content of the datagram, in a pooled buffer to be released after it is decoded
+     * @param source The address of the sender
+     */
+    public record IncomingDatagram(ByteBuffer data, InetSocketAddress source) {
+    }
+
+    /**
+     * A datagram waiting to be written to the channel.
+     *
+     * @param data        The content of the datagram
+     * @param destination The address of the destination
+     */
+    private record OutgoingDatagram(byte[] data, InetSocketAddress destination) {
+    }
+}
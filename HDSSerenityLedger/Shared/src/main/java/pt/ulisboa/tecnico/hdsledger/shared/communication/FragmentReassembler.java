@@ -0,0 +1,247 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication;
+
+import pt.ulisboa.tecnico.hdsledger.shared.exception.ErrorMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * The {@code FragmentReassembler} class puts back together the messages split by a {@link Fragmenter}.
+ * <p>
+ * Fragments are kept per transfer as they arrive, in any order and possibly repeated, and the message is only
+ * allocated whole once every fragment arrived, so a fragment header alone never reserves the length it claims.
+ * If a transfer is not completed shortly after its first fragments, a fragment ACK with the fragments received
+ * so far is sent back, so that the sender only retransmits the missing ones.
+ * <p>
+ * Fragments are not authenticated, so a fragment whose header does not match the transfer in progress with the same
+ * identifier is dropped, rather than replacing it. A transfer is abandoned if no fragment arrives for
+ * {@link #REASSEMBLY_TIMEOUT} milliseconds, and fragments are dropped while the transfers of their source take
+ * {@link #MAX_SOURCE_TRANSFERS} or {@link #MAX_SOURCE_BYTES}, or all the transfers take {@link #MAX_REASSEMBLY_BYTES},
+ * until their sender retransmits them.
+ * <p>
+ * This class is thread-safe.
+ */
+public class FragmentReassembler {
+
+    // Largest message that is reassembled
+    public static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+    // Bytes of all the messages being reassembled at once
+    private static final long MAX_REASSEMBLY_BYTES = 64L * 1024 * 1024;
+    // Bytes of the messages being reassembled at once from the same source
+    private static final long MAX_SOURCE_BYTES = MAX_MESSAGE_SIZE;
+    // Messages being reassembled at once from the same source
+    private static final int MAX_SOURCE_TRANSFERS = 64;
+    // Bytes taken by each fragment of a transfer before it arrives
+    private static final int FRAGMENT_OVERHEAD = Long.BYTES;
+    // Time without new fragments after which a transfer is abandoned, in milliseconds (longer than any retransmission timeout)
+    private static final long REASSEMBLY_TIMEOUT = 2 * RttEstimator.MAX_RTO;
+
+    // Transfers being reassembled
+    private final Map<TransferKey, Reassembly> reassemblies = new HashMap<>();
+    // Transfers being reassembled from each source
+    private final Map<InetSocketAddress, SourceUsage> sources = new HashMap<>();
+    // Schedules the fragment ACKs
+    private final ScheduledExecutorService scheduler;
+    // Time to wait for the missing fragments before sending a fragment ACK, in milliseconds
+    private final long ackDelay;
+    // Sends a fragment ACK to the source of a transfer
+    private final BiConsumer<byte[], InetSocketAddress> ackSender;
+    // Bytes of all the messages being reassembled
+    private long reassemblyBytes = 0;
+
+    public FragmentReassembler(ScheduledExecutorService scheduler, long ackDelay, BiConsumer<byte[], InetSocketAddress> ackSender) {
+        this.scheduler = scheduler;
+        this.ackDelay = ackDelay;
+        this.ackSender = ackSender;
+    }
+
+    /**
+     * Adds a fragment to the reassembly of its transfer.
+     *
+     * @param fragment The fragment datagram, whose content is copied
+     * @param source   The address of the sender
+     * @return The whole message, if this was its last missing fragment, or {@code null} otherwise
+     * @throws HDSSException if the fragment is malformed
+     */
+    public synchronized ByteBuffer add(ByteBuffer fragment, InetSocketAddress source) {
+        if (fragment.remaining() < Fragmenter.HEADER_SIZE)
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+
+        fragment.get();
+        int transferId = fragment.getInt();
+        int index = fragment.getInt();
+        int count = fragment.getInt();
+        int totalLength = fragment.getInt();
+        if (!isValid(index, count, totalLength, fragment.remaining()))
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+
+        long now = System.nanoTime();
+        TransferKey key = new TransferKey(source, transferId);
+        Reassembly reassembly = reassemblies.get(key);
+        if (reassembly == null) {
+            expire(now);
+            SourceUsage usage = sources.get(source);
+            if (usage != null && usage.transfers >= MAX_SOURCE_TRANSFERS)
+                return null;
+
+            long overhead = (long) count * FRAGMENT_OVERHEAD;
+            if (!fits(usage, overhead))
+                return null;
+
+            reassembly = new Reassembly(new byte[count][], totalLength);
+            reassemblies.put(key, reassembly);
+            sources.computeIfAbsent(source, s -> new SourceUsage()).transfers++;
+            reserve(source, reassembly, overhead);
+        } else if (reassembly.totalLength != totalLength) {
+            // Forged, or from an older transfer of a restarted sender, so the transfer in progress is kept
+            return null;
+        }
+
+        reassembly.lastFragmentAt = now;
+        if (!reassembly.received.get(index)) {
+            if (!fits(sources.get(source), fragment.remaining()))
+                return null;
+
+            reserve(source, reassembly, fragment.remaining());
+            reassembly.fragments[index] = new byte[fragment.remaining()];
+            fragment.get(reassembly.fragments[index]);
+            reassembly.received.set(index);
+        }
+
+        if (reassembly.received.cardinality() == reassembly.fragments.length) {
+            discard(key);
+            return ByteBuffer.wrap(reassembly.join());
+        }
+
+        if (!reassembly.ackScheduled) {
+            reassembly.ackScheduled = true;
+            scheduler.schedule(() -> sendAck(key), ackDelay, TimeUnit.MILLISECONDS);
+        }
+
+        return null;
+    }
+
+    /**
+     * Checks whether the header of a fragment is consistent with the size of its content.
+     */
+    private static boolean isValid(int index, int count, int totalLength, int length) {
+        if (totalLength <= 0 || totalLength > MAX_MESSAGE_SIZE)
+            return false;
+        if (count != (totalLength + Fragmenter.MAX_FRAGMENT_PAYLOAD - 1) / Fragmenter.MAX_FRAGMENT_PAYLOAD)
+            return false;
+        if (index < 0 || index >= count)
+            return false;
+
+        int expectedLength = index < count - 1
+                ? Fragmenter.MAX_FRAGMENT_PAYLOAD
+                : totalLength - (count - 1) * Fragmenter.MAX_FRAGMENT_PAYLOAD;
+        return length == expectedLength;
+    }
+
+    /**
+     * Checks whether more bytes can be taken by the transfers of a source.
+     *
+     * @param usage The transfers of the source, or {@code null} if it has none
+     * @param bytes The bytes to take
+     */
+    private boolean fits(SourceUsage usage, long bytes) {
+        long sourceBytes = usage == null ? 0 : usage.bytes;
+        return reassemblyBytes + bytes <= MAX_REASSEMBLY_BYTES && sourceBytes + bytes <= MAX_SOURCE_BYTES;
+    }
+
+    private void reserve(InetSocketAddress source, Reassembly reassembly, long bytes) {
+        reassembly.bytes += bytes;
+        sources.get(source).bytes += bytes;
+        reassemblyBytes += bytes;
+    }
+
+    /**
+     * Sends the fragments received so far of a transfer, if it was not completed in the meantime.
+     *
+     * @param key The transfer
+     */
+    private synchronized void sendAck(TransferKey key) {
+        Reassembly reassembly = reassemblies.get(key);
+        if (reassembly == null)
+            return;
+
+        reassembly.ackScheduled = false;
+        ackSender.accept(Fragmenter.encodeAck(key.transferId(), reassembly.received), key.source());
+    }
+
+    /**
+     * Abandons the transfers that received no fragments for longer than {@link #REASSEMBLY_TIMEOUT}.
+     *
+     * @param now The current time, in nanoseconds
+     */
+    private void expire(long now) {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(REASSEMBLY_TIMEOUT);
+        reassemblies.entrySet().stream()
+                .filter(entry -> now - entry.getValue().lastFragmentAt > timeout)
+                .map(Map.Entry::getKey)
+                .toList()
+                .forEach(this::discard);
+    }
+
+    private void discard(TransferKey key) {
+        Reassembly reassembly = reassemblies.remove(key);
+        if (reassembly == null)
+            return;
+
+        reassemblyBytes -= reassembly.bytes;
+        SourceUsage usage = sources.get(key.source());
+        usage.bytes -= reassembly.bytes;
+        if (--usage.transfers == 0)
+            sources.remove(key.source());
+    }
+
+    /**
+     * A transfer, identified by its sender and the identifier the sender gave it.
+     */
+    private record TransferKey(InetSocketAddress source, int transferId) {
+    }
+
+    /**
+     * The transfers being reassembled from a source.
+     */
+    private static class SourceUsage {
+        private long bytes = 0;
+        private int transfers = 0;
+    }
+
+    /**
+     * A message being reassembled.
+     */
+    private static class Reassembly {
+        private final byte[][] fragments;
+        private final BitSet received;
+        private final int totalLength;
+        private long bytes = 0;
+        private long lastFragmentAt;
+        private boolean ackScheduled = false;
+
+        private Reassembly(byte[][] fragments, int totalLength) {
+            this.fragments = fragments;
+            this.received = new BitSet(fragments.length);
+            this.totalLength = totalLength;
+        }
+
+        /**
+         * Copies the fragments, once all of them arrived, into the whole message.
+         */
+        private byte[] join() {
+            byte[] data = new byte[totalLength];
+            for (int index = 0; index < fragments.length; index++)
+                System.arraycopy(fragments[index], 0, data, index * Fragmenter.MAX_FRAGMENT_PAYLOAD, fragments[index].length);
+
+            return data;
+        }
+    }
+}
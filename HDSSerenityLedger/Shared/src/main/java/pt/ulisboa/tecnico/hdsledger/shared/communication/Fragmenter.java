@@ -0,0 +1,96 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+
+/**
+ * The {@code Fragmenter} class splits encoded messages that do not fit in a single datagram of the path MTU into
+ * fragments, which are put back together by a {@link FragmentReassembler}.
+ * <p>
+ * A fragment starts with {@link #FRAGMENT}, followed by the transfer identifier, the index of the fragment,
+ * the number of fragments and the length of the whole message, and then its part of the message.
+ * A fragment ACK starts with {@link #FRAGMENT_ACK}, followed by the transfer identifier and the bitmap
+ * of the fragments received so far. Neither first byte is the first byte of an encoded message.
+ */
+public final class Fragmenter {
+
+    // First byte of a fragment
+    public static final byte FRAGMENT = (byte) 0xF7;
+    // First byte of a fragment ACK
+    public static final byte FRAGMENT_ACK = (byte) 0xF8;
+    // Bytes of a message carried by each fragment, so that fragments fit in an Ethernet MTU with the IP and UDP headers
+    public static final int MAX_FRAGMENT_PAYLOAD = 1400;
+    // Size of the header of a fragment
+    static final int HEADER_SIZE = 1 + 4 * Integer.BYTES;
+
+    private Fragmenter() {
+        // Hides the implicit public constructor
+    }
+
+    /**
+     * Splits an encoded message into fragments, unless it fits in a single datagram.
+     *
+     * @param transferId The identifier of the transfer, unique among the transfers of the sender
+     * @param data       The encoded message
+     * @return The datagrams to send, which is just the message if it is not fragmented
+     */
+    public static byte[][] split(int transferId, byte[] data) {
+        if (data.length <= MAX_FRAGMENT_PAYLOAD)
+            return new byte[][]{data};
+
+        int count = (data.length + MAX_FRAGMENT_PAYLOAD - 1) / MAX_FRAGMENT_PAYLOAD;
+        byte[][] fragments = new byte[count][];
+        for (int index = 0; index < count; index++) {
+            int offset = index * MAX_FRAGMENT_PAYLOAD;
+            int length = Math.min(MAX_FRAGMENT_PAYLOAD, data.length - offset);
+
+            fragments[index] = ByteBuffer.allocate(HEADER_SIZE + length)
+                    .put(FRAGMENT)
+                    .putInt(transferId)
+                    .putInt(index)
+                    .putInt(count)
+                    .putInt(data.length)
+                    .put(data, offset, length)
+                    .array();
+        }
+
+        return fragments;
+    }
+
+    /**
+     * Encodes the acknowledgement of the fragments of a transfer received so far.
+     *
+     * @param transferId The identifier of the transfer
+     * @param received   The indexes of the received fragments
+     * @return The fragment ACK datagram
+     */
+    public static byte[] encodeAck(int transferId, BitSet received) {
+        byte[] bitmap = received.toByteArray();
+        return ByteBuffer.allocate(1 + Integer.BYTES + bitmap.length)
+                .put(FRAGMENT_ACK)
+                .putInt(transferId)
+                .put(bitmap)
+                .array();
+    }
+
+    /**
+     * Decodes a fragment ACK.
+     *
+     * @param buffer The fragment ACK datagram
+     * @return The acknowledgement
+     */
+    public static FragmentAck decodeAck(ByteBuffer buffer) {
+        buffer.get();
+        int transferId = buffer.getInt();
+        return new FragmentAck(transferId, BitSet.valueOf(buffer));
+    }
+
+    /**
+     * The acknowledgement of the fragments of a transfer received so far.
+     *
+     * @param transferId The identifier of the transfer
+     * @param received   The indexes of the received fragments
+     */
+    public record FragmentAck(int transferId, BitSet received) {
+    }
+}
@@ -0,0 +1,26 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication;
+
+import lombok.Getter;
+import lombok.experimental.SuperBuilder;
+
+import java.text.MessageFormat;
+
+/**
+ * The {@code KeyExchangeMessage} class represents the message that establishes the session key used to authenticate
+ * the messages sent by its sender to its destination.
+ * <p>
+ * The session key is encrypted with the public key of the destination, and the message itself is always signed.
+ */
+@Getter
+@SuperBuilder
+public class KeyExchangeMessage extends Message {
+    private byte[] encryptedSessionKey;
+
+    @Override
+    public String toString() {
+        if (this.getType() == Type.IGNORE)
+            return super.toString();
+
+        return MessageFormat.format("<{0}, messageId={1}>", this.getType(), this.getMessageId());
+    }
+}
@@ -17,7 +17,9 @@ import java.util.Objects;
 /**
  * The {@code Message} class represents a message that is sent between nodes.
  * <p>
- * Contains the sender identifier, message identifier (to distinguish messages from the same sender), and the message type.
+ * Contains the sender identifier, message identifier (to distinguish messages from the same sender), destination
+ * identifier, and the message type.
+ * Any message may also carry a cumulative acknowledgement of the messages previously received from its destination.
  */
 @Setter
 @Getter
@@ -26,7 +28,11 @@ public class Message implements Serializable {
 
     protected String senderId;
     protected int messageId = -1;
+    // Identifier of the process the message was sent to, which tells apart the messages forwarded by other processes
+    protected String destinationId;
     protected Type type;
+    // Acknowledgement of the messages received from the destination, piggybacked on this message
+    protected CumulativeAck cumulativeAck;
 
     public Message() {
         // Empty constructor for serialization
@@ -52,7 +58,7 @@ public class Message implements Serializable {
     @Override
     public String toString() {
         if (this.getType() == Type.ACK) {
-            return MessageFormat.format("ACK({0})", this.getMessageId());
+            return MessageFormat.format("ACK({0})", this.getCumulativeAck());
         } else if (this.getType() == Type.IGNORE) {
             return MessageFormat.format("IGNORE({0})", this.getMessageId());
         } else throw new IllegalStateException("Unexpected value: " + this.getType());
@@ -73,24 +79,24 @@ public class Message implements Serializable {
 
     public enum Type {
         // Messages for consensus (node to node)
-        PRE_PREPARE, PREPARE, COMMIT, ROUND_CHANGE,
+        PRE_PREPARE, PREPARE, COMMIT, ROUND_CHANGE, BLOCK_REQUEST, BLOCK_RESPONSE, FETCH_REQUESTS, FETCHED_REQUESTS, CHECKPOINT,
 
         // Messages for the library (client to node)
-        BALANCE, BALANCE_RESPONSE, TRANSFER, TRANSFER_RESPONSE, LEDGER_ACK,
+        BALANCE, BALANCE_RESPONSE, TRANSFER, TRANSFER_RESPONSE, LEDGER_ACK, READ_BALANCE, READ_BALANCE_RESPONSE,
 
         // Others
-        ACK, IGNORE;
+        ACK, IGNORE, KEY_EXCHANGE;
 
         public static List<Type> consensusTypes() {
-            return Arrays.asList(PRE_PREPARE, PREPARE, COMMIT, ROUND_CHANGE);
+            return Arrays.asList(PRE_PREPARE, PREPARE, COMMIT, ROUND_CHANGE, BLOCK_REQUEST, BLOCK_RESPONSE, FETCH_REQUESTS, FETCHED_REQUESTS, CHECKPOINT);
         }
 
         public static List<Type> clientRequestTypes() {
-            return Arrays.asList(BALANCE, TRANSFER);
+            return Arrays.asList(BALANCE, TRANSFER, READ_BALANCE);
         }
 
         public static List<Type> clientResponseTypes() {
-            return Arrays.asList(BALANCE_RESPONSE, TRANSFER_RESPONSE, LEDGER_ACK);
+            return Arrays.asList(BALANCE_RESPONSE, TRANSFER_RESPONSE, LEDGER_ACK, READ_BALANCE_RESPONSE);
         }
 
         @Override
@@ -98,9 +104,16 @@ public class Message implements Serializable {
             return switch (this) {
                 case PRE_PREPARE -> "PRE-PREPARE";
                 case ROUND_CHANGE -> "ROUND-CHANGE";
+                case BLOCK_REQUEST -> "BLOCK-REQUEST";
+                case BLOCK_RESPONSE -> "BLOCK-RESPONSE";
+                case FETCH_REQUESTS -> "FETCH-REQUESTS";
+                case FETCHED_REQUESTS -> "FETCHED-REQUESTS";
                 case BALANCE_RESPONSE -> "BALANCE-RESPONSE";
                 case TRANSFER_RESPONSE -> "TRANSFER-RESPONSE";
                 case LEDGER_ACK -> "LEDGER-ACK";
+                case READ_BALANCE -> "READ-BALANCE";
+                case READ_BALANCE_RESPONSE -> "READ-BALANCE-RESPONSE";
+                case KEY_EXCHANGE -> "KEY-EXCHANGE";
                 default -> super.toString();
             };
         }
@@ -114,6 +127,8 @@ public class Message implements Serializable {
                 clazz = SignedLedgerRequest.class;
             else if (clientResponseTypes().contains(this))
                 clazz = LedgerResponse.class;
+            else if (this == KEY_EXCHANGE)
+                clazz = KeyExchangeMessage.class;
             else if (this == ACK || this == IGNORE)
                 clazz = Message.class;
             else
@@ -26,6 +26,8 @@ public class MessageDeserializer implements JsonDeserializer<Message> {
                     .type(messageType)
                     .senderId(context.deserialize(jsonObject.get("senderId"), String.class))
                     .messageId(context.deserialize(jsonObject.get("messageId"), int.class))
+                    .destinationId(context.deserialize(jsonObject.get("destinationId"), String.class))
+                    .cumulativeAck(context.deserialize(jsonObject.get("cumulativeAck"), CumulativeAck.class))
                     .build();
 
         return context.deserialize(jsonObject, messageClass);
@@ -0,0 +1,95 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication;
+
+import java.text.MessageFormat;
+
+/**
+ * The {@code RttEstimator} class estimates the round-trip time to a single peer and derives the retransmission timeout
+ * from it, following the algorithm of RFC 6298.
+ * <p>
+ * The timeout is the smoothed RTT plus four times its variance, bounded by {@link #MIN_RTO} and {@link #MAX_RTO}.
+ * An expired timeout doubles the current one (back-off), at most once per loss, until a new sample is taken.
+ * <p>
+ * This class is thread-safe.
+ */
+public class RttEstimator {
+
+    // Timeout used before any round-trip time is measured
+    public static final long INITIAL_RTO = 1000;
+    // Bounds of the retransmission timeout, in milliseconds
+    public static final long MIN_RTO = 50;
+    public static final long MAX_RTO = 8000;
+    // Smoothing factors for the RTT and its variance
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+
+    private double smoothedRtt = -1;
+    private double rttVariance = 0;
+    private long rto = INITIAL_RTO;
+
+    /**
+     * Adds a round-trip time sample, which must come from a message that was not retransmitted (Karn's algorithm).
+     *
+     * @param rtt The measured round-trip time, in milliseconds
+     */
+    public synchronized void addSample(double rtt) {
+        if (smoothedRtt < 0) {
+            smoothedRtt = rtt;
+            rttVariance = rtt / 2;
+        } else {
+            rttVariance = (1 - BETA) * rttVariance + BETA * Math.abs(smoothedRtt - rtt);
+            smoothedRtt = (1 - ALPHA) * smoothedRtt + ALPHA * rtt;
+        }
+
+        rto = clamp(Math.round(Math.ceil(smoothedRtt + 4 * rttVariance)));
+    }
+
+    /**
+     * Doubles the retransmission timeout, after a timeout expired without receiving the ACK.
+     * <p>
+     * The messages lost together expire one after another, so only a timeout at least as long as the current one
+     * backs off: the shorter ones were set before the last back-off, for the same loss, and are doubled by their
+     * own retransmissions instead.
+     *
+     * @param expiredTimeout The timeout that expired, in milliseconds
+     */
+    public synchronized void backOff(long expiredTimeout) {
+        if (expiredTimeout >= rto)
+            rto = clamp(rto << 1);
+    }
+
+    /**
+     * Returns the current retransmission timeout.
+     *
+     * @return The retransmission timeout, in milliseconds
+     */
+    public synchronized long getRto() {
+        return rto;
+    }
+
+    /**
+     * Returns the smoothed round-trip time.
+     *
+     * @return The smoothed round-trip time in milliseconds, or -1 if no sample was taken yet
+     */
+    public synchronized double getSmoothedRtt() {
+        return smoothedRtt;
+    }
+
+    /**
+     * Returns the round-trip time variance.
+     *
+     * @return The round-trip time variance, in milliseconds
+     */
+    public synchronized double getRttVariance() {
+        return rttVariance;
+    }
+
+    private static long clamp(long rto) {
+        return Math.clamp(rto, MIN_RTO, MAX_RTO);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MessageFormat.format("RTT(srtt={0}ms, rttvar={1}ms, rto={2}ms)", smoothedRtt, rttVariance, rto);
+    }
+}
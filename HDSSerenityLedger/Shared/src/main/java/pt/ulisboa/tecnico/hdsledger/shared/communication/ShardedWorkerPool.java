@@ -0,0 +1,71 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * The {@code ShardedWorkerPool} class handles tasks in parallel on a fixed number of worker threads,
+ * each with its own queue.
+ * <p>
+ * Tasks are assigned to a worker by the hash of a key, so tasks with the same key are handled one at a time,
+ * in the order they were submitted, while tasks with different keys may run in parallel.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @param <T> the type of the tasks
+ */
+public class ShardedWorkerPool<T> {
+
+    // Tasks waiting to be handled by each worker
+    private final List<BlockingQueue<T>> queues;
+
+    public ShardedWorkerPool(int workers, String name, Consumer<T> handler) {
+        this.queues = new ArrayList<>(workers);
+        for (int i = 0; i < workers; i++) {
+            BlockingQueue<T> queue = new LinkedBlockingQueue<>();
+            queues.add(queue);
+
+            Thread.ofPlatform()
+                    .name(MessageFormat.format("{0}-{1}", name, String.valueOf(i)))
+                    .daemon()
+                    .start(() -> runWorker(queue, handler));
+        }
+    }
+
+    /**
+     * Queues a task on the worker assigned to its key.
+     *
+     * @param key  the key of the task
+     * @param task the task
+     */
+    public void submit(Object key, T task) {
+        queues.get(Math.floorMod(key.hashCode(), queues.size())).add(task);
+    }
+
+    /**
+     * Returns the number of tasks waiting to be handled by all the workers.
+     *
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return queues.stream().mapToInt(BlockingQueue::size).sum();
+    }
+
+    private static <T> void runWorker(BlockingQueue<T> queue, Consumer<T> handler) {
+        while (true) {
+            final T task;
+            try {
+                task = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            handler.accept(task);
+        }
+    }
+}
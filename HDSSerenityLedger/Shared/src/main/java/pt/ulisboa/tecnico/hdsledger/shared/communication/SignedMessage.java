@@ -9,6 +9,11 @@ import pt.ulisboa.tecnico.hdsledger.shared.SerializationUtils;
 /**
  * The {@code SignedMessage} class represents a message that contains data and it's signature.
  * It is used to send messages within the network, ensuring authenticity and integrity.
+ * <p>
+ * Between processes that exchanged a session key, the message may be authenticated by a MAC instead of the signature.
+ * Such a message cannot be forwarded to other processes as proof, since they cannot verify it, unless it also carries
+ * a payload signature: a signature that leaves out the per-destination fields (message identifier, destination and acknowledgement),
+ * so that the same one is sent to every destination of a broadcast.
  */
 @Setter
 @Getter
@@ -17,6 +22,14 @@ import pt.ulisboa.tecnico.hdsledger.shared.SerializationUtils;
 public class SignedMessage {
     private Message message;
     private byte[] signature;
+    // Message authentication code computed with the session key of the link, if not signed
+    private byte[] mac;
+    // Signature of the message without the per-destination fields, if authenticated by the MAC
+    private byte[] payloadSignature;
+
+    public SignedMessage(Message message, byte[] signature) {
+        this(message, signature, null, null);
+    }
 
     @Override
     public String toString() {
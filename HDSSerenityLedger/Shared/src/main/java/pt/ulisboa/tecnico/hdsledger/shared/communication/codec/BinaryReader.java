@@ -0,0 +1,99 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication.codec;
+
+import pt.ulisboa.tecnico.hdsledger.shared.exception.ErrorMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The {@code BinaryReader} class reads the values written by a {@link BinaryWriter} from a buffer.
+ * Reading past the end of the buffer or a negative length other than -1 means the data is malformed.
+ */
+class BinaryReader {
+
+    private final ByteBuffer buffer;
+
+    BinaryReader(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    int readByte() {
+        require(1);
+        return buffer.get();
+    }
+
+    boolean readBoolean() {
+        return readByte() != 0;
+    }
+
+    int readInt() {
+        require(Integer.BYTES);
+        return buffer.getInt();
+    }
+
+    long readLong() {
+        require(Long.BYTES);
+        return buffer.getLong();
+    }
+
+    double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    byte[] readBytes() {
+        int length = readLength();
+        if (length < 0)
+            return null;
+
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return value;
+    }
+
+    String readString() {
+        int length = readLength();
+        if (length < 0)
+            return null;
+
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(buffer.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * Reads the number of elements of a collection, checking that it is not negative.
+     *
+     * @return the number of elements
+     */
+    int readCount() {
+        int count = readInt();
+        if (count < 0 || count > buffer.remaining())
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+
+        return count;
+    }
+
+    private int readLength() {
+        int length = readInt();
+        if (length < -1)
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+        if (length > 0)
+            require(length);
+
+        return length;
+    }
+
+    private void require(int length) {
+        if (buffer.remaining() < length)
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+    }
+}
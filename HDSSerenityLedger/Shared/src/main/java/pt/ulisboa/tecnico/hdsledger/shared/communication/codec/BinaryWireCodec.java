@@ -0,0 +1,353 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication.codec;
+
+import pt.ulisboa.tecnico.hdsledger.shared.CollapsingSet;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.CumulativeAck;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.KeyExchangeMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.consensus_message.ConsensusMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerCheckBalanceRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerResponse;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerTransferRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.ErrorMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
+import pt.ulisboa.tecnico.hdsledger.shared.models.Block;
+import pt.ulisboa.tecnico.hdsledger.shared.models.CompactBlock;
+import pt.ulisboa.tecnico.hdsledger.shared.models.RequestReference;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@code BinaryWireCodec} class encodes messages in a compact, versioned binary format.
+ * <p>
+ * An encoded message starts with a magic byte and the format version, followed by the message and its raw signature,
+ * MAC and payload signature. Each message starts with its type tag, so it is decoded in a single pass. Integers are big-endian,
+ * and strings (UTF-8) and byte arrays are prefixed with their length, or -1 if {@code null}.
+ * <p>
+ * The encoding is canonical: decoding and encoding a message again gives the same bytes, so {@link #encodeMessage}
+ * is also used as the input of signatures, whatever the format in which the message travelled.
+ * {@link #encodePayload} leaves out the per-destination fields of the message (identifier, destination and acknowledgement).
+ */
+public class BinaryWireCodec implements WireCodec {
+
+    public static final BinaryWireCodec INSTANCE = new BinaryWireCodec();
+    // Never the first byte of a JSON message
+    static final byte MAGIC = (byte) 0xB5;
+    // Incremented whenever the layout of any message changes
+    private static final byte VERSION = 7;
+    private static final Message.Type[] TYPES = Message.Type.values();
+
+    private BinaryWireCodec() {
+        // Use the shared instance
+    }
+
+    @Override
+    public byte[] encode(SignedMessage signedMessage) {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeByte(MAGIC);
+        writer.writeByte(VERSION);
+        writeSignedMessage(writer, signedMessage);
+        return writer.toByteArray();
+    }
+
+    @Override
+    public SignedMessage decode(ByteBuffer buffer) {
+        BinaryReader reader = new BinaryReader(buffer);
+        if ((byte) reader.readByte() != MAGIC || reader.readByte() != VERSION)
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+
+        return readSignedMessage(reader);
+    }
+
+    /**
+     * Encodes a message alone, without magic byte, version nor signature.
+     *
+     * @param message the message
+     * @return the encoded message
+     */
+    public static byte[] encodeMessage(Message message) {
+        BinaryWriter writer = new BinaryWriter();
+        writeMessage(writer, message);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes the content of a message, which is the same for every destination it is sent to:
+     * everything but the message identifier, the destination and the piggybacked acknowledgement.
+     *
+     * @param message the message
+     * @return the encoded payload
+     */
+    public static byte[] encodePayload(Message message) {
+        BinaryWriter writer = new BinaryWriter();
+        writeMessage(writer, message, false);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Encodes a block alone, as the input of its digest.
+     * The requests are encoded without their per-destination fields, like {@link #encodePayload}, so a block
+     * rebuilt from the requests a node received itself has the same digest as the block proposed by the leader.
+     *
+     * @param block the block
+     * @return the encoded block
+     */
+    public static byte[] encodeBlock(Block block) {
+        BinaryWriter writer = new BinaryWriter();
+        writer.writeString(block.getCreatorId());
+        writer.writeInt(block.getRequests().size());
+        block.getRequests().forEach(request -> writeMessage(writer, request, false));
+        return writer.toByteArray();
+    }
+
+    private static void writeSignedMessage(BinaryWriter writer, SignedMessage signedMessage) {
+        writeMessage(writer, signedMessage.getMessage());
+        writer.writeBytes(signedMessage.getSignature());
+        writer.writeBytes(signedMessage.getMac());
+        writer.writeBytes(signedMessage.getPayloadSignature());
+    }
+
+    private static SignedMessage readSignedMessage(BinaryReader reader) {
+        Message message = readMessage(reader);
+        return new SignedMessage(message, reader.readBytes(), reader.readBytes(), reader.readBytes());
+    }
+
+    private static void writeMessage(BinaryWriter writer, Message message) {
+        writeMessage(writer, message, true);
+    }
+
+    private static void writeMessage(BinaryWriter writer, Message message, boolean withEnvelope) {
+        writer.writeByte(message.getType().ordinal());
+        writer.writeString(message.getSenderId());
+        if (withEnvelope) {
+            writer.writeInt(message.getMessageId());
+            writer.writeString(message.getDestinationId());
+            writeCumulativeAck(writer, message.getCumulativeAck());
+        }
+
+        switch (message) {
+            case ConsensusMessage consensusMessage -> writeConsensusMessage(writer, consensusMessage);
+            case SignedLedgerRequest signedLedgerRequest -> writeSignedLedgerRequest(writer, signedLedgerRequest);
+            case LedgerResponse ledgerResponse -> writeLedgerResponse(writer, ledgerResponse);
+            case KeyExchangeMessage keyExchangeMessage -> writer.writeBytes(keyExchangeMessage.getEncryptedSessionKey());
+            default -> {
+                // Nothing else to write for ACK messages
+            }
+        }
+    }
+
+    private static Message readMessage(BinaryReader reader) {
+        int typeTag = reader.readByte();
+        if (typeTag < 0 || typeTag >= TYPES.length)
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+
+        Message.Type type = TYPES[typeTag];
+        String senderId = reader.readString();
+        int messageId = reader.readInt();
+        String destinationId = reader.readString();
+        CumulativeAck cumulativeAck = readCumulativeAck(reader);
+
+        Class<? extends Message> messageClass = type.getClassType();
+        Message.MessageBuilder<?, ?> builder;
+        if (messageClass == ConsensusMessage.class)
+            builder = readConsensusMessage(reader);
+        else if (messageClass == SignedLedgerRequest.class)
+            builder = readSignedLedgerRequest(reader, type);
+        else if (messageClass == LedgerResponse.class)
+            builder = readLedgerResponse(reader);
+        else if (messageClass == KeyExchangeMessage.class)
+            builder = KeyExchangeMessage.builder().encryptedSessionKey(reader.readBytes());
+        else
+            builder = Message.builder();
+
+        return builder
+                .type(type)
+                .senderId(senderId)
+                .messageId(messageId)
+                .destinationId(destinationId)
+                .cumulativeAck(cumulativeAck)
+                .build();
+    }
+
+    private static void writeCumulativeAck(BinaryWriter writer, CumulativeAck cumulativeAck) {
+        writer.writeBoolean(cumulativeAck != null);
+        if (cumulativeAck == null)
+            return;
+
+        writer.writeInt(cumulativeAck.floor());
+        writer.writeInt(cumulativeAck.ranges().size());
+        for (CollapsingSet.Range range : cumulativeAck.ranges()) {
+            writer.writeInt(range.start());
+            writer.writeInt(range.end());
+        }
+    }
+
+    private static CumulativeAck readCumulativeAck(BinaryReader reader) {
+        if (!reader.readBoolean())
+            return null;
+
+        int floor = reader.readInt();
+        int count = reader.readCount();
+        List<CollapsingSet.Range> ranges = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            ranges.add(new CollapsingSet.Range(reader.readInt(), reader.readInt()));
+
+        return new CumulativeAck(floor, ranges);
+    }
+
+    private static void writeConsensusMessage(BinaryWriter writer, ConsensusMessage message) {
+        writer.writeInt(message.getConsensusInstance());
+        writer.writeInt(message.getRound());
+        writer.writeInt(message.getPreparedRound());
+        writer.writeString(message.getPreparedValueDigest());
+        writeBlock(writer, message.getValue());
+        writeCompactBlock(writer, message.getCompactValue());
+        writer.writeString(message.getValueDigest());
+        writer.writeString(message.getReplyTo());
+        writer.writeInt(message.getReplyToMessageId());
+
+        List<SignedMessage> piggybackList = message.getPrepareQuorumPiggybackList();
+        writer.writeInt(piggybackList == null ? -1 : piggybackList.size());
+        if (piggybackList != null)
+            piggybackList.forEach(signedMessage -> writeSignedMessage(writer, signedMessage));
+    }
+
+    private static ConsensusMessage.ConsensusMessageBuilder<?, ?> readConsensusMessage(BinaryReader reader) {
+        var builder = ConsensusMessage.builder()
+                .consensusInstance(reader.readInt())
+                .round(reader.readInt())
+                .preparedRound(reader.readInt())
+                .preparedValueDigest(reader.readString())
+                .value(readBlock(reader))
+                .compactValue(readCompactBlock(reader))
+                .valueDigest(reader.readString())
+                .replyTo(reader.readString())
+                .replyToMessageId(reader.readInt());
+
+        int count = reader.readInt();
+        if (count >= 0) {
+            List<SignedMessage> piggybackList = new ArrayList<>(Math.min(count, 64));
+            for (int i = 0; i < count; i++)
+                piggybackList.add(readSignedMessage(reader));
+            builder.prepareQuorumPiggybackList(piggybackList);
+        } else if (count != -1)
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+
+        return builder;
+    }
+
+    private static void writeBlock(BinaryWriter writer, Block block) {
+        writer.writeBoolean(block != null);
+        if (block == null)
+            return;
+
+        writer.writeString(block.getCreatorId());
+        writer.writeInt(block.getRequests().size());
+        block.getRequests().forEach(request -> writeMessage(writer, request));
+    }
+
+    private static Block readBlock(BinaryReader reader) {
+        if (!reader.readBoolean())
+            return null;
+
+        String creatorId = reader.readString();
+        int count = reader.readCount();
+        List<SignedLedgerRequest> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (!(readMessage(reader) instanceof SignedLedgerRequest request))
+                throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+            requests.add(request);
+        }
+
+        return new Block(requests, creatorId);
+    }
+
+    private static void writeCompactBlock(BinaryWriter writer, CompactBlock compactBlock) {
+        writer.writeBoolean(compactBlock != null);
+        if (compactBlock == null)
+            return;
+
+        writer.writeString(compactBlock.getCreatorId());
+        writer.writeInt(compactBlock.getRequests().size());
+        compactBlock.getRequests().forEach(reference -> {
+            writer.writeString(reference.clientId());
+            writer.writeLong(reference.requestId());
+            writer.writeString(reference.digest());
+        });
+    }
+
+    private static CompactBlock readCompactBlock(BinaryReader reader) {
+        if (!reader.readBoolean())
+            return null;
+
+        String creatorId = reader.readString();
+        int count = reader.readCount();
+        List<RequestReference> references = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            references.add(new RequestReference(reader.readString(), reader.readLong(), reader.readString()));
+
+        return new CompactBlock(references, creatorId);
+    }
+
+    private static void writeSignedLedgerRequest(BinaryWriter writer, SignedLedgerRequest request) {
+        LedgerRequest ledgerRequest = request.getLedgerRequest();
+        writer.writeLong(ledgerRequest.getRequestId());
+
+        switch (ledgerRequest) {
+            case LedgerTransferRequest transferRequest -> {
+                writer.writeString(transferRequest.getSourceAccountId());
+                writer.writeString(transferRequest.getDestinationAccountId());
+                writer.writeDouble(transferRequest.getAmount());
+            }
+            case LedgerCheckBalanceRequest balanceRequest -> {
+                writer.writeString(balanceRequest.getAccountId());
+                writer.writeString(balanceRequest.getRequesterId());
+            }
+            default -> throw new IllegalStateException("Unexpected value: " + ledgerRequest);
+        }
+
+        writer.writeBytes(request.getSignature());
+    }
+
+    private static SignedLedgerRequest.SignedLedgerRequestBuilder<?, ?> readSignedLedgerRequest(BinaryReader reader, Message.Type type) {
+        long requestId = reader.readLong();
+
+        LedgerRequest ledgerRequest = switch (type) {
+            case TRANSFER -> LedgerTransferRequest.builder()
+                    .requestId(requestId)
+                    .sourceAccountId(reader.readString())
+                    .destinationAccountId(reader.readString())
+                    .amount(reader.readDouble())
+                    .build();
+            case BALANCE, READ_BALANCE -> LedgerCheckBalanceRequest.builder()
+                    .requestId(requestId)
+                    .accountId(reader.readString())
+                    .requesterId(reader.readString())
+                    .build();
+            default -> throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+        };
+
+        return SignedLedgerRequest.builder()
+                .ledgerRequest(ledgerRequest)
+                .signature(reader.readBytes());
+    }
+
+    private static void writeLedgerResponse(BinaryWriter writer, LedgerResponse response) {
+        writer.writeLong(response.getOriginalRequestId());
+        writer.writeString(response.getOriginalRequestSenderId());
+        writer.writeString(response.getMessage());
+        writer.writeInt(response.getConsensusInstance());
+    }
+
+    private static LedgerResponse.LedgerResponseBuilder<?, ?> readLedgerResponse(BinaryReader reader) {
+        return LedgerResponse.builder()
+                .originalRequestId(reader.readLong())
+                .originalRequestSenderId(reader.readString())
+                .message(reader.readString())
+                .consensusInstance(reader.readInt());
+    }
+}
@@ -0,0 +1,67 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * The {@code BinaryWriter} class writes big-endian primitive values and length-prefixed fields to a growing array.
+ * A {@code null} string or byte array is written with length -1.
+ */
+class BinaryWriter {
+
+    private static final int INITIAL_CAPACITY = 512;
+
+    private byte[] data = new byte[INITIAL_CAPACITY];
+    private int size = 0;
+
+    void writeByte(int value) {
+        ensureCapacity(1);
+        data[size++] = (byte) value;
+    }
+
+    void writeBoolean(boolean value) {
+        writeByte(value ? 1 : 0);
+    }
+
+    void writeInt(int value) {
+        ensureCapacity(Integer.BYTES);
+        data[size++] = (byte) (value >>> 24);
+        data[size++] = (byte) (value >>> 16);
+        data[size++] = (byte) (value >>> 8);
+        data[size++] = (byte) value;
+    }
+
+    void writeLong(long value) {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+
+    void writeDouble(double value) {
+        writeLong(Double.doubleToRawLongBits(value));
+    }
+
+    void writeBytes(byte[] value) {
+        if (value == null) {
+            writeInt(-1);
+            return;
+        }
+
+        writeInt(value.length);
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, data, size, value.length);
+        size += value.length;
+    }
+
+    void writeString(String value) {
+        writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > data.length)
+            data = Arrays.copyOf(data, Math.max(data.length << 1, size + length));
+    }
+}
@@ -0,0 +1,37 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication.codec;
+
+import com.google.gson.JsonParseException;
+import pt.ulisboa.tecnico.hdsledger.shared.SerializationUtils;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.ErrorMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The {@code JsonWireCodec} class encodes messages as Gson JSON, the original format of the protocol.
+ */
+public class JsonWireCodec implements WireCodec {
+
+    public static final JsonWireCodec INSTANCE = new JsonWireCodec();
+    // Every encoded message is a JSON object
+    static final byte FIRST_BYTE = '{';
+
+    private JsonWireCodec() {
+        // Use the shared instance
+    }
+
+    @Override
+    public byte[] encode(SignedMessage signedMessage) {
+        return SerializationUtils.serializeToBytes(signedMessage);
+    }
+
+    @Override
+    public SignedMessage decode(ByteBuffer buffer) {
+        try {
+            return SerializationUtils.deserialize(buffer, SignedMessage.class);
+        } catch (JsonParseException | IllegalArgumentException e) {
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package pt.ulisboa.tecnico.hdsledger.shared.communication.codec;
+
+import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.ErrorMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The {@code WireCodec} interface encodes and decodes the messages sent between processes.
+ * <p>
+ * Every process decodes messages in any format, detected from their first byte, so the format used to send
+ * messages can be chosen per deployment (or per process) with {@link ProcessConfig#getWireFormat()}.
+ */
+public interface WireCodec {
+
+    /**
+     * Returns the codec that encodes messages in the given format.
+     *
+     * @param wireFormat the format
+     * @return the codec
+     */
+    static WireCodec forFormat(ProcessConfig.WireFormat wireFormat) {
+        return switch (wireFormat) {
+            case JSON -> JsonWireCodec.INSTANCE;
+            case BINARY -> BinaryWireCodec.INSTANCE;
+        };
+    }
+
+    /**
+     * Decodes a message in any format, detected from its first byte.
+     *
+     * @param buffer the buffer with the encoded message
+     * @return the decoded message
+     * @throws HDSSException if the format is unknown or the message is malformed
+     */
+    static SignedMessage decodeAny(ByteBuffer buffer) {
+        if (!buffer.hasRemaining())
+            throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+
+        byte first = buffer.get(buffer.position());
+        if (first == BinaryWireCodec.MAGIC)
+            return BinaryWireCodec.INSTANCE.decode(buffer);
+        if (first == JsonWireCodec.FIRST_BYTE)
+            return JsonWireCodec.INSTANCE.decode(buffer);
+
+        throw new HDSSException(ErrorMessage.INVALID_MESSAGE_FORMAT);
+    }
+
+    /**
+     * Encodes a message to be sent.
+     *
+     * @param signedMessage the message
+     * @return the encoded message
+     */
+    byte[] encode(SignedMessage signedMessage);
+
+    /**
+     * Decodes a message encoded by this codec.
+     *
+     * @param buffer the buffer with the encoded message, whose position is advanced past it
+     * @return the decoded message
+     * @throws HDSSException if the message is malformed
+     */
+    SignedMessage decode(ByteBuffer buffer);
+}
@@ -6,6 +6,7 @@ import lombok.experimental.SuperBuilder;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
 import pt.ulisboa.tecnico.hdsledger.shared.models.Block;
+import pt.ulisboa.tecnico.hdsledger.shared.models.CompactBlock;
 
 import java.text.MessageFormat;
 import java.util.List;
@@ -13,6 +14,12 @@ import java.util.Objects;
 
 /**
  * The {@code ConsensusMessage} class represents a message that is used in the IBFT consensus algorithm.
+ * <p>
+ * Only PRE-PREPARE (and BLOCK-RESPONSE) messages carry the proposed block. PREPARE, COMMIT and ROUND-CHANGE messages
+ * refer to it by its digest ({@link Block#getDigest()}), and a node missing the block fetches it with a BLOCK-REQUEST.
+ * With compact blocks, PRE-PREPARE messages only reference the requests of the block, and a node missing some of them
+ * fetches them from the leader with a FETCH-REQUESTS.
+ * CHECKPOINT messages carry the digest of the state of the ledger after the block of their consensus instance.
  */
 @Setter
 @Getter
@@ -22,8 +29,15 @@ public class ConsensusMessage extends Message {
     private int consensusInstance;
     private int round;
     private int preparedRound;
-    private Block preparedValue;
+    // Digest of the prepared block, for round-change messages
+    private String preparedValueDigest;
+    // Proposed block, for pre-prepare, block-response and fetched-requests messages
     private Block value;
+    // References to the requests of the proposed block, for compact pre-prepare and fetch-requests messages
+    private CompactBlock compactValue;
+    // Digest of the proposed block, for prepare, commit, block-request and compact pre-prepare messages,
+    // or of the state of the ledger, for checkpoint messages
+    private String valueDigest;
     // Who sent the previous message
     private String replyTo;
     // ID of the previous message
@@ -39,13 +53,22 @@ public class ConsensusMessage extends Message {
     @Override
     public String toString() {
         switch (this.getType()) {
-            case Type.PRE_PREPARE, Type.PREPARE, Type.COMMIT -> {
+            case Type.PRE_PREPARE, Type.BLOCK_RESPONSE, Type.FETCH_REQUESTS, Type.FETCHED_REQUESTS -> {
                 return MessageFormat.format("<{0}({1}, {2}, {3}), senderId={4}, messageId={5}>",
                         this.getType(),
                         this.getConsensusInstance(),
                         this.getRound(),
-//                        this.getValue() != null ? this.getValue().hashCode() : "null",
-                        this.getValue(),
+                        this.getValue() != null ? this.getValue() : this.getCompactValue(),
+                        this.getSenderId(),
+                        this.getMessageId()
+                );
+            }
+            case Type.PREPARE, Type.COMMIT, Type.BLOCK_REQUEST -> {
+                return MessageFormat.format("<{0}({1}, {2}, {3}), senderId={4}, messageId={5}>",
+                        this.getType(),
+                        this.getConsensusInstance(),
+                        this.getRound(),
+                        this.getValueDigest(),
                         this.getSenderId(),
                         this.getMessageId()
                 );
@@ -55,8 +78,15 @@ public class ConsensusMessage extends Message {
                         this.getConsensusInstance(),
                         this.getRound(),
                         this.getPreparedRound(),
-//                        this.getPreparedValue() != null ? this.getPreparedValue().hashCode() : "null",
-                        this.getPreparedValue(),
+                        this.getPreparedValueDigest(),
+                        this.getSenderId(),
+                        this.getMessageId()
+                );
+            }
+            case Type.CHECKPOINT -> {
+                return MessageFormat.format("<CHECKPOINT({0}, {1}), senderId={2}, messageId={3}>",
+                        this.getConsensusInstance(),
+                        this.getValueDigest(),
                         this.getSenderId(),
                         this.getMessageId()
                 );
@@ -74,14 +104,14 @@ public class ConsensusMessage extends Message {
         if (!super.equals(o)) return false;
         ConsensusMessage that = (ConsensusMessage) o;
         return consensusInstance == that.consensusInstance && round == that.round && preparedRound == that.preparedRound
-                && replyToMessageId == that.replyToMessageId && Objects.equals(preparedValue, that.preparedValue)
-                && Objects.equals(value, that.value) && Objects.equals(replyTo, that.replyTo)
+                && replyToMessageId == that.replyToMessageId && Objects.equals(preparedValueDigest, that.preparedValueDigest)
+                && Objects.equals(value, that.value) && Objects.equals(compactValue, that.compactValue) && Objects.equals(valueDigest, that.valueDigest) && Objects.equals(replyTo, that.replyTo)
                 && Objects.equals(prepareQuorumPiggybackList, that.prepareQuorumPiggybackList);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), consensusInstance, round, preparedRound, preparedValue, value, replyTo, replyToMessageId);
+        return Objects.hash(super.hashCode(), consensusInstance, round, preparedRound, preparedValueDigest, value, compactValue, valueDigest, replyTo, replyToMessageId);
     }
 }
 
@@ -4,8 +4,8 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.ToString;
 import lombok.experimental.SuperBuilder;
-import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.crypto.CryptoUtils;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.KeyRegistry;
 
 /**
  * The {@code LedgerCheckBalanceRequest} class represents a request to check the balance of an account.
@@ -23,11 +23,11 @@ public class LedgerCheckBalanceRequest extends LedgerRequest {
      * Verifies the signature of the request.
      * A signature is valid if it was signed by the source account.
      *
-     * @param signature     the signature to verify
-     * @param clientsConfig the clients configuration
+     * @param signature   the signature to verify
+     * @param keyRegistry the registry of public keys
      * @return {@code true} if the signature is valid, {@code false} otherwise
      */
-    public boolean verifySignature(byte[] signature, ClientProcessConfig[] clientsConfig) {
-        return CryptoUtils.verifySignature(this, requesterId, signature, clientsConfig);
+    public boolean verifySignature(byte[] signature, KeyRegistry keyRegistry) {
+        return CryptoUtils.verifySignature(this, requesterId, signature, keyRegistry);
     }
 }
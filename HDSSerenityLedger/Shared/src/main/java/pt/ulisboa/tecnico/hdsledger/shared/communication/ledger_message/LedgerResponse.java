@@ -22,6 +22,9 @@ public class LedgerResponse extends Message {
 
     private String message;
 
+    // Last consensus instance added to the ledger the response was read from, only set in read-only responses
+    private int consensusInstance;
+
     @Override
     public String toString() {
         return switch (this.getType()) {
@@ -33,6 +36,14 @@ public class LedgerResponse extends Message {
                             this.getMessageId()
                     );
 
+            case Type.READ_BALANCE_RESPONSE -> MessageFormat.format("<{0}({1}, \"{2}\", {3}), messageId={4}>",
+                    this.getType(),
+                    this.getOriginalRequestId(),
+                    this.getMessage(),
+                    this.getConsensusInstance(),
+                    this.getMessageId()
+            );
+
             case Type.ACK -> MessageFormat.format("<{0}({1}), messageId={2}>",
                     this.getType(),
                     this.getMessage(),
@@ -50,11 +61,11 @@ public class LedgerResponse extends Message {
         if (o == null || getClass() != o.getClass()) return false;
 
         LedgerResponse that = (LedgerResponse) o;
-        return type == that.type && originalRequestId == that.originalRequestId && Objects.equals(originalRequestSenderId, that.originalRequestSenderId) && Objects.equals(message, that.message);
+        return type == that.type && originalRequestId == that.originalRequestId && Objects.equals(originalRequestSenderId, that.originalRequestSenderId) && Objects.equals(message, that.message) && consensusInstance == that.consensusInstance;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(type, originalRequestId, originalRequestSenderId, message);
+        return Objects.hash(type, originalRequestId, originalRequestSenderId, message, consensusInstance);
     }
 }
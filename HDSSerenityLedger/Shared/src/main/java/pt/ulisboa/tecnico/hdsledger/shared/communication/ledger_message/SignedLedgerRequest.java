@@ -5,7 +5,7 @@ import lombok.Setter;
 import lombok.ToString;
 import lombok.experimental.SuperBuilder;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
-import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.KeyRegistry;
 
 import java.text.MessageFormat;
 import java.util.Arrays;
@@ -30,16 +30,16 @@ public class SignedLedgerRequest extends Message {
     /**
      * Verifies the signature of the request.
      *
-     * @param clientsConfig the clients configuration
+     * @param keyRegistry the registry of public keys
      * @return true if the signature is valid, false otherwise
      */
-    public boolean verifySignature(ClientProcessConfig[] clientsConfig) {
+    public boolean verifySignature(KeyRegistry keyRegistry) {
         switch (this.ledgerRequest) {
             case LedgerTransferRequest ledgerTransferRequest -> {
-                return ledgerTransferRequest.verifySignature(this.signature, clientsConfig);
+                return ledgerTransferRequest.verifySignature(this.signature, keyRegistry);
             }
             case LedgerCheckBalanceRequest ledgerCheckBalanceRequest -> {
-                return ledgerCheckBalanceRequest.verifySignature(this.signature, clientsConfig);
+                return ledgerCheckBalanceRequest.verifySignature(this.signature, keyRegistry);
             }
             default -> throw new IllegalStateException("Unexpected value: " + this.ledgerRequest);
         }
@@ -60,7 +60,7 @@ public class SignedLedgerRequest extends Message {
                         this.getMessageId()
                 );
             }
-            case Type.BALANCE -> {
+            case Type.BALANCE, Type.READ_BALANCE -> {
                 LedgerCheckBalanceRequest ledgerCheckBalanceRequest = (LedgerCheckBalanceRequest) this.getLedgerRequest();
 
                 return MessageFormat.format("<{0}({1}), requesterId={2}, requestId={3}, messageId={4}>",
@@ -88,7 +88,8 @@ public class SignedLedgerRequest extends Message {
 
     @Override
     public int hashCode() {
-        int result = Objects.hash(super.hashCode(), ledgerRequest);
+        // Consistent with equals, which ignores the sender and message id of the copy of the request
+        int result = Objects.hash(ledgerRequest);
         result = 31 * result + Arrays.hashCode(signature);
         result = 31 * result + type.hashCode();
         return result;
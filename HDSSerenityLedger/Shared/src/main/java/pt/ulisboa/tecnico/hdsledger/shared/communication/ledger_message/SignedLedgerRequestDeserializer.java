@@ -5,6 +5,7 @@ import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParseException;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.CumulativeAck;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
 
 import java.lang.reflect.Type;
@@ -23,7 +24,7 @@ public class SignedLedgerRequestDeserializer implements JsonDeserializer<SignedL
         // Based on the type, deserialize the specific LedgerRequest
         final Class<? extends LedgerRequest> ledgerRequestClazz = switch (messageType) {
             case TRANSFER -> LedgerTransferRequest.class;
-            case BALANCE -> LedgerCheckBalanceRequest.class;
+            case BALANCE, READ_BALANCE -> LedgerCheckBalanceRequest.class;
             default -> throw new JsonParseException("Unknown type: " + messageType);
         };
 
@@ -33,6 +34,8 @@ public class SignedLedgerRequestDeserializer implements JsonDeserializer<SignedL
                 .type(messageType)
                 .senderId(context.deserialize(jsonObject.get("senderId"), String.class))
                 .messageId(context.deserialize(jsonObject.get("messageId"), int.class))
+                .destinationId(context.deserialize(jsonObject.get("destinationId"), String.class))
+                .cumulativeAck(context.deserialize(jsonObject.get("cumulativeAck"), CumulativeAck.class))
                 .signature(context.deserialize(jsonObject.get("signature"), byte[].class))
                 .ledgerRequest(ledgerRequest)
                 .build();
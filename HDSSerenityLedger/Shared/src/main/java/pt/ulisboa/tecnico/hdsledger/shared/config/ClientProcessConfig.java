@@ -18,9 +18,11 @@ public class ClientProcessConfig extends ProcessConfig {
             boolean useScript,
             String privateKeyPath,
             String publicKeyPath,
-            ProcessBehavior behavior
+            ProcessBehavior behavior,
+            LinkAuthentication linkAuthentication,
+            WireFormat wireFormat
     ) {
-        super(id, hostname, port, privateKeyPath, publicKeyPath, behavior);
+        super(id, hostname, port, privateKeyPath, publicKeyPath, behavior, linkAuthentication, wireFormat);
         this.scriptPath = scriptPath;
         this.useScript = useScript;
     }
@@ -7,8 +7,17 @@ import lombok.Getter;
  */
 @Getter
 public class NodeProcessConfig extends ProcessConfig {
+    // Latency budget used when the configuration file does not set one, in milliseconds
+    private static final int DEFAULT_MAX_BATCH_DELAY = 500;
+
     private final int clientPort; // Receives and sends messages to the clients of the blockchain
     private final int crashTimeout;
+    // Whether pre-prepare messages carry the whole block or only references to its requests, optional in the configuration file
+    private final BlockFormat blockFormat;
+    // Number of consensus instances that may run at the same time, optional in the configuration file
+    private final int pipelineDepth;
+    // Maximum time a request waits to be proposed, in milliseconds, optional in the configuration file
+    private final int maxBatchDelay;
 
     public NodeProcessConfig(
             String id,
@@ -18,11 +27,36 @@ public class NodeProcessConfig extends ProcessConfig {
             String privateKeyPath,
             String publicKeyPath,
             ProcessBehavior behavior,
-            int crashTimeout
+            LinkAuthentication linkAuthentication,
+            WireFormat wireFormat,
+            int crashTimeout,
+            BlockFormat blockFormat,
+            int pipelineDepth,
+            int maxBatchDelay
     ) {
-        super(id, hostname, port, privateKeyPath, publicKeyPath, behavior);
+        super(id, hostname, port, privateKeyPath, publicKeyPath, behavior, linkAuthentication, wireFormat);
         this.crashTimeout = crashTimeout;
         this.clientPort = clientPort;
+        this.blockFormat = blockFormat;
+        this.pipelineDepth = pipelineDepth;
+        this.maxBatchDelay = maxBatchDelay;
+    }
+
+    public BlockFormat getBlockFormat() {
+        return blockFormat == null ? BlockFormat.FULL : blockFormat;
+    }
+
+    public int getPipelineDepth() {
+        return Math.max(pipelineDepth, 1);
+    }
+
+    public int getMaxBatchDelay() {
+        return maxBatchDelay <= 0 ? DEFAULT_MAX_BATCH_DELAY : maxBatchDelay;
+    }
+
+    public enum BlockFormat {
+        FULL,                               // Pre-prepare messages carry every request of the block
+        COMPACT,                            // Pre-prepare messages carry references to the requests, see CompactBlock
     }
 
 }
@@ -13,6 +13,10 @@ public class ProcessConfig {
     private final String privateKeyPath;
     private final String publicKeyPath;
     private final ProcessBehavior behavior;
+    // How the messages sent by the process are authenticated, optional in the configuration file
+    private final LinkAuthentication linkAuthentication;
+    // Format in which the messages sent by the process are encoded, optional in the configuration file
+    private final WireFormat wireFormat;
 
     public ProcessConfig(
             String id,
@@ -20,7 +24,9 @@ public class ProcessConfig {
             int port,
             String privateKeyPath,
             String publicKeyPath,
-            ProcessBehavior behavior
+            ProcessBehavior behavior,
+            LinkAuthentication linkAuthentication,
+            WireFormat wireFormat
     ) {
         this.id = id;
         this.hostname = hostname;
@@ -28,6 +34,16 @@ public class ProcessConfig {
         this.privateKeyPath = privateKeyPath;
         this.publicKeyPath = publicKeyPath;
         this.behavior = behavior;
+        this.linkAuthentication = linkAuthentication;
+        this.wireFormat = wireFormat;
+    }
+
+    public LinkAuthentication getLinkAuthentication() {
+        return linkAuthentication == null ? LinkAuthentication.SIGNATURE : linkAuthentication;
+    }
+
+    public WireFormat getWireFormat() {
+        return wireFormat == null ? WireFormat.JSON : wireFormat;
     }
 
     public enum ProcessBehavior {
@@ -43,5 +59,14 @@ public class ProcessConfig {
         BULLY_LEADER,                       // Leader does not include txs from a specific client in the block
         ROBBER_LEADER,                      // Leader charges a greater fee than the one agreed
     }
-}
 
+    public enum LinkAuthentication {
+        SIGNATURE,                          // Every message is signed with the private key of the process
+        SESSION_KEY,                        // Messages are authenticated with a session key exchanged with each process
+    }
+
+    public enum WireFormat {
+        JSON,                               // Gson JSON
+        BINARY,                             // Compact binary encoding, see BinaryWireCodec
+    }
+}
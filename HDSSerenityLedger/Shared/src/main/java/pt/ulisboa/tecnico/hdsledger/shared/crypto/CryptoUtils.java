@@ -1,16 +1,25 @@
 package pt.ulisboa.tecnico.hdsledger.shared.crypto;
 
 import pt.ulisboa.tecnico.hdsledger.shared.SerializationUtils;
-import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.exception.ErrorMessage;
 import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
 
+import javax.crypto.BadPaddingException;
+import javax.crypto.Cipher;
+import javax.crypto.IllegalBlockSizeException;
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
+import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
@@ -19,17 +28,21 @@ import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
-import java.util.Arrays;
 
 /**
  * The {@code CryptoUtils} class provides utility methods for cryptographic operations.
  * It supports key pair generation, reading public and private keys from files,
  * signing data with a private key, and verifying signatures with a public key.
+ * It also supports session keys, which are exchanged encrypted with a public key and used to authenticate data with HMAC.
  */
 public class CryptoUtils {
 
     private static final String KEY_ALGORITHM = "RSA";
     private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final String KEY_ENCRYPTION_ALGORITHM = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    private static final int SESSION_KEY_SIZE = 256;
 
     /**
      * Private constructor to prevent instantiation of this utility class.
@@ -40,23 +53,22 @@ public class CryptoUtils {
 
     /**
      * Verifies the signature of the provided object, using the public key of the client with the specified id.
+     * Signatures already verified by this process are not verified again.
      *
-     * @param object        the object to verify
-     * @param id            the id of the client
-     * @param signature     the signature to verify
-     * @param clientsConfig the configuration of the clients
+     * @param object      the object to verify
+     * @param id          the id of the client
+     * @param signature   the signature to verify
+     * @param keyRegistry the registry of public keys
      * @return {@code true} if the signature is valid, {@code false} otherwise
      */
-    public static boolean verifySignature(Object object, String id, byte[] signature, ClientProcessConfig[] clientsConfig) {
-        final var clientConfig = Arrays.stream(clientsConfig).filter(c -> c.getId().equals(id)).findAny().orElse(null);
-        if (clientConfig == null)
+    public static boolean verifySignature(Object object, String id, byte[] signature, KeyRegistry keyRegistry) {
+        final var publicKey = keyRegistry.getClientPublicKey(id);
+        if (publicKey == null)
             return false;
 
-        var publicKey = CryptoUtils.getPublicKey(clientConfig.getPublicKeyPath());
         final var serializedTransferRequest = SerializationUtils.serialize(object);
 
-        return CryptoUtils.verify(serializedTransferRequest.getBytes(), signature, publicKey);
-
+        return keyRegistry.getVerifiedSignatures().verify(serializedTransferRequest.getBytes(), signature, publicKey);
     }
 
     /**
@@ -173,5 +185,109 @@ public class CryptoUtils {
         }
     }
 
-}
+    /**
+     * Computes the SHA-256 digest of the provided data, in order.
+     *
+     * @param data the data to digest
+     * @return the digest
+     * @throws HDSSException if there is an error computing the digest
+     */
+    public static byte[] digest(byte[]... data) {
+        try {
+            final MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            for (byte[] part : data) {
+                // Length-prefixed, so that different splits of the same bytes have different digests
+                messageDigest.update(ByteBuffer.allocate(Integer.BYTES).putInt(part == null ? -1 : part.length).array());
+                if (part != null)
+                    messageDigest.update(part);
+            }
+            return messageDigest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new HDSSException(ErrorMessage.DIGEST_ERROR);
+        }
+    }
 
+    /**
+     * Generates a new random session key.
+     *
+     * @return the session key
+     * @throws HDSSException if there is an error generating the key
+     */
+    public static SecretKey generateSessionKey() {
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance(MAC_ALGORITHM);
+            keyGenerator.init(SESSION_KEY_SIZE);
+            return keyGenerator.generateKey();
+        } catch (NoSuchAlgorithmException e) {
+            throw new HDSSException(ErrorMessage.KEY_EXCHANGE_ERROR);
+        }
+    }
+
+    /**
+     * Encrypts a session key with the given public key, so that only the owner of the private key can read it.
+     *
+     * @param sessionKey the session key
+     * @param publicKey  the public key of the receiver
+     * @return the encrypted session key
+     * @throws HDSSException if there is an error encrypting the key
+     */
+    public static byte[] encryptSessionKey(SecretKey sessionKey, PublicKey publicKey) {
+        try {
+            final Cipher cipher = Cipher.getInstance(KEY_ENCRYPTION_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, publicKey);
+            return cipher.doFinal(sessionKey.getEncoded());
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException |
+                 IllegalBlockSizeException | BadPaddingException e) {
+            throw new HDSSException(ErrorMessage.KEY_EXCHANGE_ERROR);
+        }
+    }
+
+    /**
+     * Decrypts a session key with the given private key.
+     *
+     * @param encryptedSessionKey the encrypted session key
+     * @param privateKey          the private key of the receiver
+     * @return the session key
+     * @throws HDSSException if there is an error decrypting the key
+     */
+    public static SecretKey decryptSessionKey(byte[] encryptedSessionKey, PrivateKey privateKey) {
+        try {
+            final Cipher cipher = Cipher.getInstance(KEY_ENCRYPTION_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, privateKey);
+            return new SecretKeySpec(cipher.doFinal(encryptedSessionKey), MAC_ALGORITHM);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException | InvalidKeyException |
+                 IllegalBlockSizeException | BadPaddingException e) {
+            throw new HDSSException(ErrorMessage.KEY_EXCHANGE_ERROR);
+        }
+    }
+
+    /**
+     * Computes the message authentication code (HMAC) of the provided data with the given session key.
+     *
+     * @param data       the data
+     * @param sessionKey the session key
+     * @return the message authentication code
+     * @throws HDSSException if there is an error computing the code
+     */
+    public static byte[] mac(byte[] data, SecretKey sessionKey) {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(sessionKey);
+            return mac.doFinal(data);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new HDSSException(ErrorMessage.MAC_ERROR);
+        }
+    }
+
+    /**
+     * Verifies the message authentication code of the provided data with the given session key, in constant time.
+     *
+     * @param data       the data
+     * @param mac        the message authentication code to verify
+     * @param sessionKey the session key
+     * @return {@code true} if the code is valid, {@code false} otherwise
+     */
+    public static boolean verifyMac(byte[] data, byte[] mac, SecretKey sessionKey) {
+        return MessageDigest.isEqual(mac(data, sessionKey), mac);
+    }
+}
@@ -0,0 +1,159 @@
+package pt.ulisboa.tecnico.hdsledger.shared.crypto;
+
+import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.config.NodeProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
+import pt.ulisboa.tecnico.hdsledger.shared.logger.ProcessLogger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.PublicKey;
+import java.text.MessageFormat;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The {@code KeyRegistry} class keeps the public keys of every node and client in memory, by process identifier,
+ * so that verifying a signature does not read nor parse key files.
+ * <p>
+ * The keys are loaded once when the registry is created, and reloaded when their files change.
+ * If a changed file cannot be read (e.g. while it is still being written), the previous key is kept.
+ * <p>
+ * This class is thread-safe.
+ */
+public class KeyRegistry {
+
+    // Process ID -> Public key
+    private final Map<String, PublicKey> publicKeys = new ConcurrentHashMap<>();
+    // Identifiers of the clients, whose keys may sign ledger requests
+    private final Set<String> clientIds = new HashSet<>();
+    // Key file -> Identifiers of the processes using it
+    private final Map<Path, List<String>> processIdsByPath = new ConcurrentHashMap<>();
+    // Signatures already verified with the keys of this registry
+    private final VerifiedSignatureCache verifiedSignatures = new VerifiedSignatureCache();
+    private final ProcessLogger logger;
+
+    public KeyRegistry(NodeProcessConfig[] nodesConfig, ClientProcessConfig[] clientsConfig, String ownerId) {
+        this.logger = new ProcessLogger(KeyRegistry.class.getName(), ownerId);
+
+        for (ProcessConfig nodeConfig : nodesConfig)
+            register(nodeConfig);
+
+        for (ProcessConfig clientConfig : clientsConfig) {
+            register(clientConfig);
+            clientIds.add(clientConfig.getId());
+        }
+
+        watchKeyFiles();
+    }
+
+    /**
+     * Returns the public key of a process.
+     *
+     * @param processId the id of the node or client
+     * @return the public key, or {@code null} if the process is unknown
+     */
+    public PublicKey getPublicKey(String processId) {
+        return publicKeys.get(processId);
+    }
+
+    /**
+     * Returns the public key of a client.
+     *
+     * @param clientId the id of the client
+     * @return the public key, or {@code null} if there is no client with that id
+     */
+    public PublicKey getClientPublicKey(String clientId) {
+        return clientIds.contains(clientId) ? publicKeys.get(clientId) : null;
+    }
+
+    /**
+     * Returns the cache of the signatures verified with the keys of this registry,
+     * shared by every component of the process that validates signed requests.
+     *
+     * @return the verified signature cache
+     */
+    public VerifiedSignatureCache getVerifiedSignatures() {
+        return verifiedSignatures;
+    }
+
+    /**
+     * Loads the public key of a process and registers its key file to be watched.
+     *
+     * @param config the configuration of the process
+     * @throws HDSSException if there is an error loading the public key
+     */
+    private void register(ProcessConfig config) {
+        publicKeys.put(config.getId(), CryptoUtils.getPublicKey(config.getPublicKeyPath()));
+
+        Path path = Path.of(config.getPublicKeyPath()).toAbsolutePath().normalize();
+        processIdsByPath.computeIfAbsent(path, k -> new CopyOnWriteArrayList<>()).add(config.getId());
+    }
+
+    /**
+     * Watches the directories of the key files, reloading the keys whose files were created or modified.
+     */
+    private void watchKeyFiles() {
+        final WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            for (Path directory : processIdsByPath.keySet().stream().map(Path::getParent).distinct().toList())
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.warn(MessageFormat.format("Cannot watch key files, keys will not be reloaded: {0}", e.getMessage()));
+            return;
+        }
+
+        Thread.ofPlatform().name("key-registry-watcher").daemon().start(() -> {
+            while (true) {
+                final WatchKey watchKey;
+                try {
+                    watchKey = watchService.take();
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    return;
+                }
+
+                Path directory = (Path) watchKey.watchable();
+                for (WatchEvent<?> event : watchKey.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                        processIdsByPath.keySet().forEach(this::reload);
+                    else
+                        reload(directory.resolve((Path) event.context()));
+                }
+
+                watchKey.reset();
+            }
+        });
+    }
+
+    /**
+     * Reloads the public key stored in a file, if it belongs to any process.
+     *
+     * @param path the path of the key file
+     */
+    private void reload(Path path) {
+        List<String> processIds = processIdsByPath.get(path);
+        if (processIds == null)
+            return;
+
+        try {
+            PublicKey publicKey = CryptoUtils.getPublicKey(path.toString());
+            processIds.forEach(processId -> publicKeys.put(processId, publicKey));
+
+            logger.info(MessageFormat.format("Reloaded public key of {0} from {1}", processIds, path));
+        } catch (HDSSException e) {
+            logger.warn(MessageFormat.format("Cannot reload public key from {0}, keeping the previous one: {1}", path, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package pt.ulisboa.tecnico.hdsledger.shared.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@code VerifiedSignatureCache} class remembers the signatures that were already verified,
+ * so that the same signed request is verified only once, however many times it is validated.
+ * <p>
+ * Each entry is the digest of the signer's public key, the signed data and the signature, so a signature verified
+ * with a key that was later replaced does not count as verified with the new key.
+ * Only valid signatures are remembered. When the cache is full, the oldest entries are evicted first.
+ * <p>
+ * This class is thread-safe.
+ */
+public class VerifiedSignatureCache {
+
+    // Default maximum number of signatures remembered
+    public static final int DEFAULT_CAPACITY = 16384;
+
+    private final int capacity;
+    // Digests of the verified signatures
+    private final Map<ByteBuffer, Boolean> verified = new ConcurrentHashMap<>();
+    // Digests in the order they were added, to evict the oldest
+    private final Queue<ByteBuffer> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public VerifiedSignatureCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public VerifiedSignatureCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Verifies a signature, unless it was already verified.
+     *
+     * @param data      the signed data
+     * @param signature the signature to verify
+     * @param publicKey the public key of the signer
+     * @return {@code true} if the signature is valid, {@code false} otherwise
+     */
+    public boolean verify(byte[] data, byte[] signature, PublicKey publicKey) {
+        ByteBuffer digest = ByteBuffer.wrap(CryptoUtils.digest(publicKey.getEncoded(), data, signature));
+        if (verified.containsKey(digest)) {
+            hits.increment();
+            return true;
+        }
+
+        misses.increment();
+        if (!CryptoUtils.verify(data, signature, publicKey))
+            return false;
+
+        if (verified.putIfAbsent(digest, Boolean.TRUE) == null) {
+            insertionOrder.add(digest);
+            while (verified.size() > capacity) {
+                ByteBuffer oldest = insertionOrder.poll();
+                if (oldest == null)
+                    break;
+                verified.remove(oldest);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the number of verifications answered by the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of verifications that computed the signature.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of signatures remembered.
+     *
+     * @return the size of the cache
+     */
+    public int size() {
+        return verified.size();
+    }
+}
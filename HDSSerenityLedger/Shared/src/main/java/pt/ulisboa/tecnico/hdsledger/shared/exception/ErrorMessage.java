@@ -18,7 +18,11 @@ public enum ErrorMessage {
     CANNOT_OPEN_SOCKET("Error while opening socket"),
     PUBLIC_KEY_LOAD_ERROR("Error while loading public key"),
     PRIVATE_KEY_LOAD_ERROR("Error while loading private key"),
-    READING_SCRIPT_ERROR("Error while reading script");
+    READING_SCRIPT_ERROR("Error while reading script"),
+    MAC_ERROR("Error while computing message authentication code"),
+    KEY_EXCHANGE_ERROR("Error while exchanging session key"),
+    INVALID_MESSAGE_FORMAT("Message has an invalid format"),
+    DIGEST_ERROR("Error while computing digest");
 
     private final String message;
 
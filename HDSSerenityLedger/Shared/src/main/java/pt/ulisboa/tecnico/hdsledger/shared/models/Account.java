@@ -1,40 +1,46 @@
 package pt.ulisboa.tecnico.hdsledger.shared.models;
 
 import lombok.Getter;
-import lombok.Setter;
 
 /**
  * An account in the HDSLedger system.
+ * <p>
+ * Accounts are immutable, so a version of the ledger state can be read while the next one is built.
  */
 @Getter
-public class Account {
+public final class Account {
     private static final int INITIAL_BALANCE = 100;
 
     private final String ownerId;
-
-    @Setter
-    private double balance = INITIAL_BALANCE;
+    private final double balance;
 
     public Account(String ownerId) {
+        this(ownerId, INITIAL_BALANCE);
+    }
+
+    private Account(String ownerId, double balance) {
         this.ownerId = ownerId;
+        this.balance = balance;
     }
 
     /**
-     * Adds the given amount to the account's balance.
+     * Returns a copy of the account with the given amount added to its balance.
      *
      * @param amount the amount to add
+     * @return the updated account
      */
-    public void addBalance(double amount) {
-        balance += amount;
+    public Account addBalance(double amount) {
+        return new Account(ownerId, balance + amount);
     }
 
     /**
-     * Subtracts the given amount from the account's balance.
+     * Returns a copy of the account with the given amount subtracted from its balance.
      *
      * @param amount the amount to subtract
+     * @return the updated account
      */
-    public void subtractBalance(double amount) {
-        balance -= amount;
+    public Account subtractBalance(double amount) {
+        return new Account(ownerId, balance - amount);
     }
 
     @Override
@@ -1,38 +1,57 @@
 package pt.ulisboa.tecnico.hdsledger.shared.models;
 
-import lombok.AllArgsConstructor;
-import lombok.Builder;
 import lombok.Getter;
-import lombok.Setter;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.BinaryWireCodec;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.CryptoUtils;
 
-import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.Objects;
 
 /**
  * A block in the blockchain.
+ * <p>
+ * Blocks are immutable, so their digest is computed once, on first use, and identifies them: two blocks are equal
+ * if and only if they have the same digest.
  */
-@Setter
 @Getter
-@Builder
-@AllArgsConstructor
-public class Block {
+public final class Block {
 
-    private List<SignedLedgerRequest> requests = new ArrayList<>();
-    private String creatorId;
+    private final List<SignedLedgerRequest> requests;
+    private final String creatorId;
+    // Computed on first use, not serialized (blocks are deserialized through the constructor, see BlockDeserializer)
+    private transient volatile String digest;
 
-    public Block() {
-        // Empty constructor for serialization
+    public Block(List<SignedLedgerRequest> requests, String creatorId) {
+        this.requests = List.copyOf(requests);
+        this.creatorId = creatorId;
     }
 
     /**
-     * Adds a request to the block.
+     * Gets the digest of the block, which identifies it in consensus messages.
+     * The digest is the SHA-256 of the canonical binary encoding of the block, in hexadecimal.
      *
-     * @param request the request to add
+     * @return the digest of the block
      */
-    public void addRequest(SignedLedgerRequest request) {
-        requests.add(request);
+    public String getDigest() {
+        String localDigest = digest;
+        if (localDigest == null) {
+            // Racing threads compute the same digest, so there is no need to synchronize
+            localDigest = HexFormat.of().formatHex(CryptoUtils.digest(BinaryWireCodec.encodeBlock(this)));
+            digest = localDigest;
+        }
+
+        return localDigest;
+    }
+
+    /**
+     * Creates a copy of the block with only the given requests.
+     *
+     * @param requests the requests of the new block
+     * @return the new block
+     */
+    public Block withRequests(List<SignedLedgerRequest> requests) {
+        return new Block(requests, creatorId);
     }
 
     @Override
@@ -47,12 +66,11 @@ public class Block {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        Block block = (Block) o;
-        return Objects.equals(requests, block.requests) && Objects.equals(creatorId, block.creatorId);
+        return getDigest().equals(((Block) o).getDigest());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(requests, creatorId);
+        return getDigest().hashCode();
     }
 }
@@ -0,0 +1,35 @@
+package pt.ulisboa.tecnico.hdsledger.shared.models;
+
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+
+import java.lang.reflect.Type;
+import java.util.List;
+
+/**
+ * The {@code BlockDeserializer} class is a custom deserializer for the {@code Block} class.
+ * Blocks are built through their constructor, like the binary codec does, so a decoded block is as immutable as any other.
+ */
+public class BlockDeserializer implements JsonDeserializer<Block> {
+
+    private static final Type REQUESTS_TYPE = new TypeToken<List<SignedLedgerRequest>>() {
+    }.getType();
+
+    @Override
+    public Block deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
+        JsonObject jsonObject = json.getAsJsonObject();
+
+        List<SignedLedgerRequest> requests = context.deserialize(jsonObject.get("requests"), REQUESTS_TYPE);
+        if (requests == null)
+            requests = List.of();
+        else if (requests.contains(null))
+            throw new JsonParseException("Block with a null request");
+
+        return new Block(requests, context.deserialize(jsonObject.get("creatorId"), String.class));
+    }
+}
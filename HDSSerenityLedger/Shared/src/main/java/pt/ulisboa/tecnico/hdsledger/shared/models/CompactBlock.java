@@ -0,0 +1,59 @@
+package pt.ulisboa.tecnico.hdsledger.shared.models;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A block whose requests are referenced instead of carried, which nodes rebuild from the requests they already have.
+ */
+@Setter
+@Getter
+@AllArgsConstructor
+public class CompactBlock {
+
+    private List<RequestReference> requests = new ArrayList<>();
+    private String creatorId;
+
+    public CompactBlock() {
+        // Empty constructor for serialization
+    }
+
+    /**
+     * Creates the compact form of a block.
+     *
+     * @param block the block
+     * @return the compact block
+     */
+    public static CompactBlock of(Block block) {
+        return new CompactBlock(
+                block.getRequests().stream().map(RequestReference::of).toList(),
+                block.getCreatorId()
+        );
+    }
+
+    @Override
+    public String toString() {
+        return "\u001B[36mCompactBlock{" +
+                "requests=\u001B[37m" + requests.size() +
+                "\u001B[36m, creatorId=\u001B[37m\"" + creatorId + '\"' +
+                "\u001B[36m}\u001B[37m";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CompactBlock that = (CompactBlock) o;
+        return Objects.equals(requests, that.requests) && Objects.equals(creatorId, that.creatorId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(requests, creatorId);
+    }
+}
@@ -0,0 +1,91 @@
+package pt.ulisboa.tecnico.hdsledger.shared.models;
+
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerCheckBalanceRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerTransferRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The {@code ExecutionPlan} class splits the requests of a block into groups that can be executed in parallel with
+ * the same result as executing the whole block in order.
+ * <p>
+ * A transfer accesses its source and destination accounts, and a balance request the account it reads. Requests that
+ * access a common account, directly or through other requests, are in the same group, in block order, so groups
+ * never access the same account. The fees to the block creator are not an access, since they are credited once the
+ * whole block is executed.
+ * <p>
+ * There is no plan, and the block is executed in order, if a request accesses the account of the block creator, whose
+ * balance would then depend on the fees credited so far, or if a request appears more than once in the block.
+ *
+ * @param groups the indexes of the requests of each group, in block order
+ */
+public record ExecutionPlan(List<List<Integer>> groups) {
+
+    /**
+     * Plans the execution of the requests of a block.
+     *
+     * @param requests  the requests, in block order
+     * @param creatorId the id of the block creator
+     * @return the plan, or empty if the requests must be executed in order
+     */
+    public static Optional<ExecutionPlan> of(List<SignedLedgerRequest> requests, String creatorId) {
+        Map<String, String> parents = new HashMap<>();
+        Set<SignedLedgerRequest> seen = new HashSet<>();
+
+        for (var request : requests) {
+            List<String> accounts = accessedAccounts(request);
+            if (accounts.contains(creatorId) || !seen.add(request))
+                return Optional.empty();
+
+            for (var account : accounts)
+                union(parents, accounts.getFirst(), account);
+        }
+
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            String root = find(parents, accessedAccounts(requests.get(i)).getFirst());
+            groups.computeIfAbsent(root, k -> new ArrayList<>()).add(i);
+        }
+
+        return Optional.of(new ExecutionPlan(List.copyOf(groups.values())));
+    }
+
+    /**
+     * Returns the accounts a request reads or writes, besides the block creator's.
+     *
+     * @param request the request
+     * @return the account ids
+     */
+    private static List<String> accessedAccounts(SignedLedgerRequest request) {
+        return switch (request.getLedgerRequest()) {
+            case LedgerTransferRequest transfer -> List.of(transfer.getSourceAccountId(), transfer.getDestinationAccountId());
+            case LedgerCheckBalanceRequest balance -> List.of(balance.getAccountId());
+            default -> throw new IllegalStateException("Unexpected value: " + request.getLedgerRequest());
+        };
+    }
+
+    private static String find(Map<String, String> parents, String account) {
+        String parent = parents.getOrDefault(account, account);
+        if (parent.equals(account))
+            return account;
+
+        String root = find(parents, parent);
+        parents.put(account, root);
+        return root;
+    }
+
+    private static void union(Map<String, String> parents, String first, String second) {
+        String firstRoot = find(parents, first);
+        String secondRoot = find(parents, second);
+        if (!firstRoot.equals(secondRoot))
+            parents.put(secondRoot, firstRoot);
+    }
+}
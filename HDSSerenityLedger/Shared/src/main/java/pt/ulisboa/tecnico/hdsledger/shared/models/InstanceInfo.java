@@ -14,7 +14,7 @@ public class InstanceInfo {
     private Block inputValue = null;
     private int currentRound = 1;
     private int preparedRound = -1;
-    private Block preparedValue = null;
+    private String preparedValueDigest = null;
     private int decidedRound = -1;
     private Block decidedValue = null;
 
@@ -1,6 +1,5 @@
 package pt.ulisboa.tecnico.hdsledger.shared.models;
 
-import lombok.Getter;
 import pt.ulisboa.tecnico.hdsledger.shared.Utils;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
 import pt.ulisboa.tecnico.hdsledger.shared.communication.Message.Type;
@@ -11,100 +10,247 @@ import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLe
 import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.NodeProcessConfig;
 import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.KeyRegistry;
 
 import java.text.MessageFormat;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * The {@code Ledger} class represents the ledger of the system, containing all the accounts and the blockchain.
+ * <p>
+ * The state of the ledger is published as an immutable {@link LedgerState} after each block is added. Validating
+ * requests, reading balances and computing the state digest read the latest version without locking, while the next
+ * one is built on a copy of the accounts, so adding a block and reading the state never wait for each other.
+ * Blocks are added by a single thread at a time.
+ * <p>
+ * Unlike the per-instance consensus state, the requests added are never discarded at the stable checkpoint: they are
+ * what keeps a request signed by a client from being executed twice, whenever it is proposed again, and request IDs
+ * are chosen by the clients (and restart with them), so no smaller watermark tells an old request apart from a new
+ * one. Discarding them at the stable checkpoint, which each node reaches at a different time, would also let nodes
+ * disagree on whether a request is repeated. They take one entry per request added, sharing the request with its
+ * block while the block is kept, which is around half a kilobyte per transfer with 2048-bit RSA signatures.
  */
 public class Ledger {
 
     public static final double FEE = 0.01;
-
-    // PublicKey -> Account
-    @Getter
-    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
-
-    @Getter
-    private final HashSet<SignedLedgerRequest> requests = new HashSet<>();
-    private final ClientProcessConfig[] clientsConfig;
+    // Minimum number of requests of a block to execute them in parallel
+    private static final int PARALLEL_EXECUTION_THRESHOLD = 64;
+
+    // Latest version of the state
+    private final AtomicReference<LedgerState> state;
+    // Request -> Consensus instance it was added in, shared by every version of the state and never discarded
+    private final Map<SignedLedgerRequest, Integer> addedRequests = new ConcurrentHashMap<>();
+    private final KeyRegistry keyRegistry;
     private final String nodeId; // The id of the node that owns this ledger
     private final NodeProcessConfig config;
 
-    public Ledger(ClientProcessConfig[] clientsConfig, NodeProcessConfig[] nodesConfig, NodeProcessConfig config) {
-        this.clientsConfig = clientsConfig;
+    public Ledger(ClientProcessConfig[] clientsConfig, NodeProcessConfig[] nodesConfig, NodeProcessConfig config, KeyRegistry keyRegistry) {
+        this.keyRegistry = keyRegistry;
         this.nodeId = config.getId();
         this.config = config;
 
         // Initialize accounts for both clients and nodes
+        Map<String, Account> accounts = new HashMap<>();
         for (var clientConfig : clientsConfig)
             accounts.put(clientConfig.getId(), new Account(clientConfig.getId()));
 
         for (var nodeConfig : nodesConfig)
             accounts.put(nodeConfig.getId(), new Account(nodeConfig.getId()));
+
+        this.state = new AtomicReference<>(new LedgerState(0, Map.copyOf(accounts), addedRequests));
+    }
+
+    /**
+     * Gets the latest version of the state of the ledger.
+     *
+     * @return the state
+     */
+    public LedgerState getState() {
+        return state.get();
+    }
+
+    /**
+     * Gets the accounts in the latest version of the state of the ledger.
+     *
+     * @return account id -> account
+     */
+    public Map<String, Account> getAccounts() {
+        return state.get().accounts();
     }
 
+    /**
+     * Gets the consensus instance of the last block added.
+     *
+     * @return the consensus instance, 0 before any block is added
+     */
+    public int getLastConsensusInstance() {
+        return state.get().consensusInstance();
+    }
 
     /**
-     * Adds a block to the ledger.
+     * Adds a block to the ledger, publishing a new version of the state.
+     * <p>
+     * Each request is validated again against the current state, since the block may have been validated before
+     * the blocks of the previous consensus instances were added. Requests that were already added are skipped,
+     * and requests that are no longer valid are answered with a failure, without changing the state.
+     * <p>
+     * Large blocks are executed in parallel, following their {@link ExecutionPlan}, with the fees credited to the
+     * block creator once all the requests are executed. The result is the same as executing them in order.
      *
-     * @param block the block to add
+     * @param consensusInstance the consensus instance the block was decided in
+     * @param block             the block to add
      * @return the responses to the requests in the block
      */
-    public List<LedgerResponse> addBlock(Block block) {
-        var responses = new ArrayList<LedgerResponse>();
+    public synchronized List<LedgerResponse> addBlock(int consensusInstance, Block block) {
+        LedgerState current = state.get();
+        List<SignedLedgerRequest> requests = block.getRequests().stream()
+                .filter(request -> !current.containsRequest(request))
+                .toList();
+        Map<String, Account> accounts = new ConcurrentHashMap<>(current.accounts());
+        // Requests of this block added so far
+        Projection added = new Projection(Map.of(), ConcurrentHashMap.newKeySet());
+        var executions = new Execution[requests.size()];
+
+        Optional<ExecutionPlan> plan = requests.size() >= PARALLEL_EXECUTION_THRESHOLD
+                ? ExecutionPlan.of(requests, block.getCreatorId())
+                : Optional.empty();
+
+        if (plan.isPresent() && plan.get().groups().size() > 1) {
+            plan.get().groups().parallelStream().forEach(group -> group.forEach(i ->
+                    executions[i] = execute(requests.get(i), block, current, accounts, added)));
+
+            for (var execution : executions)
+                creditFee(accounts, block, execution);
+        } else {
+            for (int i = 0; i < requests.size(); i++) {
+                executions[i] = execute(requests.get(i), block, current, accounts, added);
+                creditFee(accounts, block, executions[i]);
+            }
+        }
+
+        // Recorded before the new version is published, which is the first one to include them
+        added.requests().forEach(request -> addedRequests.putIfAbsent(request, consensusInstance));
+        state.set(new LedgerState(consensusInstance, Map.copyOf(accounts), addedRequests));
 
-        for (var request : block.getRequests()) {
-            requests.add(request);
+        return Arrays.stream(executions)
+                .map(Execution::response)
+                .filter(Objects::nonNull)
+                .toList();
+    }
 
-            if (request.getType() == Type.TRANSFER) {
-                final var transferRequest = (LedgerTransferRequest) request.getLedgerRequest();
+    /**
+     * Executes a request of a block, except for crediting its fee to the block creator.
+     * Only the accounts the request accesses are read or written.
+     *
+     * @param request  the request to execute
+     * @param block    the block of the request
+     * @param current  the version of the ledger the block is added to
+     * @param accounts the accounts being updated
+     * @param added    the requests of the block added so far
+     * @return the response to the request, if any, and the fee to credit
+     */
+    private Execution execute(SignedLedgerRequest request, Block block, LedgerState current, Map<String, Account> accounts, Projection added) {
+        if (added.requests().contains(request))
+            return new Execution(null, 0);
+
+        if (!validateRequest(request, current, accounts, added)) {
+            return new Execution(LedgerResponse.builder()
+                    .senderId(nodeId)
+                    .originalRequestSenderId(request.getSenderId())
+                    .originalRequestId(request.getLedgerRequest().getRequestId())
+                    .type(request.getType() == Type.TRANSFER ? Type.TRANSFER_RESPONSE : Type.BALANCE_RESPONSE)
+                    .message("Request is no longer valid when added to the ledger")
+                    .build(), 0);
+        }
 
-                final Account sender = accounts.get(transferRequest.getSourceAccountId());
-                final Account receiver = accounts.get(transferRequest.getDestinationAccountId());
-                final Account blockCreator = accounts.get(block.getCreatorId());
+        added.requests().add(request);
 
-                var fee = transferRequest.getAmount() * FEE;
-                if (this.nodeId.equals(block.getCreatorId()) && this.config.getBehavior() == ProcessConfig.ProcessBehavior.ROBBER_LEADER)
-                    fee = transferRequest.getAmount() * (FEE * 2);
-
-                sender.subtractBalance(transferRequest.getAmount() + fee);
-                receiver.addBalance(transferRequest.getAmount());
-                blockCreator.addBalance(fee);
-
-
-                responses.add(LedgerResponse.builder()
-                        .senderId(nodeId)
-                        .originalRequestSenderId(request.getSenderId())
-                        .originalRequestId(request.getLedgerRequest().getRequestId())
-                        .type(Message.Type.TRANSFER_RESPONSE)
-                        .message(MessageFormat.format("Successfully transferred {0} HDC from {1} to {2}",
-                                transferRequest.getAmount(),
-                                transferRequest.getSourceAccountId(),
-                                transferRequest.getDestinationAccountId()))
-                        .build());
-            } else if (request.getType() == Type.BALANCE) {
-                String accountId = ((LedgerCheckBalanceRequest) request.getLedgerRequest()).getAccountId();
-
-                Account account = accounts.get(accountId);
-                double balance = account.getBalance();
-
-                responses.add(LedgerResponse.builder()
-                        .senderId(nodeId)
-                        .originalRequestSenderId(request.getSenderId())
-                        .originalRequestId(request.getLedgerRequest().getRequestId())
-                        .type(Message.Type.BALANCE_RESPONSE)
-                        .message(MessageFormat.format("The balance of account {0} is {1}", accountId, balance))
-                        .build());
-            }
+        if (request.getType() == Type.TRANSFER) {
+            final var transferRequest = (LedgerTransferRequest) request.getLedgerRequest();
+
+            var fee = transferRequest.getAmount() * FEE;
+            if (this.nodeId.equals(block.getCreatorId()) && this.config.getBehavior() == ProcessConfig.ProcessBehavior.ROBBER_LEADER)
+                fee = transferRequest.getAmount() * (FEE * 2);
+
+            final var amountWithFee = transferRequest.getAmount() + fee;
+            accounts.computeIfPresent(transferRequest.getSourceAccountId(), (id, sender) -> sender.subtractBalance(amountWithFee));
+            accounts.computeIfPresent(transferRequest.getDestinationAccountId(), (id, receiver) -> receiver.addBalance(transferRequest.getAmount()));
+
+            return new Execution(LedgerResponse.builder()
+                    .senderId(nodeId)
+                    .originalRequestSenderId(request.getSenderId())
+                    .originalRequestId(request.getLedgerRequest().getRequestId())
+                    .type(Message.Type.TRANSFER_RESPONSE)
+                    .message(MessageFormat.format("Successfully transferred {0} HDC from {1} to {2}",
+                            transferRequest.getAmount(),
+                            transferRequest.getSourceAccountId(),
+                            transferRequest.getDestinationAccountId()))
+                    .build(), fee);
         }
 
-        return responses;
+        if (request.getType() != Type.BALANCE)
+            return new Execution(null, 0);
+
+        String accountId = ((LedgerCheckBalanceRequest) request.getLedgerRequest()).getAccountId();
+
+        Account account = accounts.get(accountId);
+        double balance = account.getBalance();
+
+        return new Execution(LedgerResponse.builder()
+                .senderId(nodeId)
+                .originalRequestSenderId(request.getSenderId())
+                .originalRequestId(request.getLedgerRequest().getRequestId())
+                .type(Message.Type.BALANCE_RESPONSE)
+                .message(MessageFormat.format("The balance of account {0} is {1}", accountId, balance))
+                .build(), 0);
+    }
+
+    private static void creditFee(Map<String, Account> accounts, Block block, Execution execution) {
+        if (execution.fee() != 0)
+            accounts.computeIfPresent(block.getCreatorId(), (id, blockCreator) -> blockCreator.addBalance(execution.fee()));
+    }
+
+    /**
+     * The result of executing a request of a block.
+     *
+     * @param response the response to the request, or {@code null} if there is none
+     * @param fee      the fee to credit to the block creator
+     */
+    private record Execution(LedgerResponse response, double fee) {
+    }
+
+    /**
+     * Answers a read-only balance request from the state of the ledger, without adding it to a block.
+     * The response carries the consensus instance of the version read, so a client only accepts matching
+     * responses read from the same state.
+     *
+     * @param request the balance request
+     * @return the response to the request
+     */
+    public LedgerResponse readBalance(SignedLedgerRequest request) {
+        LedgerState current = state.get();
+        String accountId = ((LedgerCheckBalanceRequest) request.getLedgerRequest()).getAccountId();
+        Account account = current.accounts().get(accountId);
+
+        return LedgerResponse.builder()
+                .senderId(nodeId)
+                .originalRequestSenderId(request.getSenderId())
+                .originalRequestId(request.getLedgerRequest().getRequestId())
+                .type(Message.Type.READ_BALANCE_RESPONSE)
+                .message(account == null
+                        ? MessageFormat.format("Account {0} not found", accountId)
+                        : MessageFormat.format("The balance of account {0} is {1}", accountId, account.getBalance()))
+                .consensusInstance(current.consensusInstance())
+                .build();
     }
 
     /**
@@ -115,10 +261,23 @@ public class Ledger {
      * @return {@code true} if the block is valid, {@code false} otherwise
      */
     public boolean validateBlock(Block block) {
+        return validateBlock(block, List.of());
+    }
+
+    /**
+     * Validates a block against the state of the ledger once the given pending blocks are added.
+     *
+     * @param block         the block to validate
+     * @param pendingBlocks the blocks that will be added before it, in order
+     * @return {@code true} if the block is valid, {@code false} otherwise
+     */
+    public boolean validateBlock(Block block, List<Block> pendingBlocks) {
         if (block == null)
             return false;
 
-        return block.getRequests().stream().allMatch(this::validateRequest);
+        LedgerState current = state.get();
+        Projection projection = project(current, pendingBlocks);
+        return block.getRequests().stream().allMatch(request -> validateRequest(request, current, current.accounts(), projection));
     }
 
     /**
@@ -129,10 +288,26 @@ public class Ledger {
      * @return {@code true} if the request is valid, {@code false} otherwise
      */
     public boolean validateRequest(SignedLedgerRequest request) {
-        if (!request.verifySignature(clientsConfig))
+        return validateRequest(request, List.of());
+    }
+
+    /**
+     * Validates a request against the state of the ledger once the given pending blocks are added.
+     *
+     * @param request       the request to validate
+     * @param pendingBlocks the blocks that will be added before it, in order
+     * @return {@code true} if the request is valid, {@code false} otherwise
+     */
+    public boolean validateRequest(SignedLedgerRequest request, List<Block> pendingBlocks) {
+        LedgerState current = state.get();
+        return validateRequest(request, current, current.accounts(), project(current, pendingBlocks));
+    }
+
+    private boolean validateRequest(SignedLedgerRequest request, LedgerState current, Map<String, Account> accounts, Projection projection) {
+        if (!request.verifySignature(keyRegistry))
             return false;
 
-        if (requests.contains(request))
+        if (current.containsRequest(request) || projection.requests().contains(request))
             return false;
 
         if (request.getType() == Type.TRANSFER) {
@@ -145,15 +320,65 @@ public class Ledger {
                 return false;
 
             final var fee = transferMessage.getAmount() * FEE;
+            final var balance = sender.getBalance() + projection.balanceChanges().getOrDefault(sender.getOwnerId(), 0.0);
 
-            return sender.getBalance() >= transferMessage.getAmount() + fee;
+            return balance >= transferMessage.getAmount() + fee;
         }
 
         return true;
     }
 
+    /**
+     * Computes the changes to a version of the ledger made by adding the given blocks, without adding them.
+     *
+     * @param current       the version of the ledger
+     * @param pendingBlocks the blocks, in order
+     * @return the projected changes
+     */
+    private Projection project(LedgerState current, List<Block> pendingBlocks) {
+        Projection projection = new Projection(new HashMap<>(), new HashSet<>());
+
+        for (Block pendingBlock : pendingBlocks) {
+            for (SignedLedgerRequest request : pendingBlock.getRequests()) {
+                if (!validateRequest(request, current, current.accounts(), projection))
+                    continue;
+
+                projection.requests().add(request);
+                if (request.getType() != Type.TRANSFER)
+                    continue;
+
+                var transferRequest = (LedgerTransferRequest) request.getLedgerRequest();
+                var fee = transferRequest.getAmount() * FEE;
+                projection.balanceChanges().merge(transferRequest.getSourceAccountId(), -(transferRequest.getAmount() + fee), Double::sum);
+                projection.balanceChanges().merge(transferRequest.getDestinationAccountId(), transferRequest.getAmount(), Double::sum);
+                projection.balanceChanges().merge(pendingBlock.getCreatorId(), fee, Double::sum);
+            }
+        }
+
+        return projection;
+    }
+
+    /**
+     * Changes to the ledger made by blocks that were not added yet.
+     *
+     * @param balanceChanges account id -> change to its balance
+     * @param requests       the requests in the blocks
+     */
+    private record Projection(Map<String, Double> balanceChanges, Set<SignedLedgerRequest> requests) {
+    }
+
+    /**
+     * Computes the digest of the latest state of the ledger, the balance of every account, so that nodes can check
+     * that they reached the same state after the same consensus instance.
+     *
+     * @return the hex-encoded digest of the state
+     */
+    public String getStateDigest() {
+        return state.get().getDigest();
+    }
+
     @Override
     public String toString() {
-        return Utils.convertWithStream(accounts);
+        return Utils.convertWithStream(state.get().accounts());
     }
 }
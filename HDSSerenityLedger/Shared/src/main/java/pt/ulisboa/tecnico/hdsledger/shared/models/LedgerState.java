@@ -0,0 +1,50 @@
+package pt.ulisboa.tecnico.hdsledger.shared.models;
+
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.CryptoUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Map;
+
+/**
+ * An immutable version of the state of the ledger, after the block of a consensus instance was added.
+ * <p>
+ * The accounts are copied into each version. The requests added are not, since they only grow: every version shares
+ * the same map, and a request belongs to a version if it was added in that consensus instance or before.
+ * The map grows with every request added, as explained in {@link Ledger}.
+ *
+ * @param consensusInstance the consensus instance of the last block added, 0 before any
+ * @param accounts          account id -> account
+ * @param addedRequests     request -> consensus instance it was added in, shared by every version
+ */
+public record LedgerState(int consensusInstance, Map<String, Account> accounts, Map<SignedLedgerRequest, Integer> addedRequests) {
+
+    /**
+     * Checks if a request was added to the ledger in this version.
+     *
+     * @param request the request
+     * @return {@code true} if the request was added, {@code false} otherwise
+     */
+    public boolean containsRequest(SignedLedgerRequest request) {
+        Integer addedIn = addedRequests.get(request);
+        return addedIn != null && addedIn <= consensusInstance;
+    }
+
+    /**
+     * Computes the digest of the balance of every account, so that nodes can check that they reached the same state
+     * after the same consensus instance.
+     *
+     * @return the hex-encoded digest of the state
+     */
+    public String getDigest() {
+        var state = new StringBuilder();
+        accounts.values().stream()
+                .sorted(Comparator.comparing(Account::getOwnerId))
+                .forEach(account -> state.append(account.getOwnerId()).append('=')
+                        .append(Double.doubleToLongBits(account.getBalance())).append(';'));
+
+        return HexFormat.of().formatHex(CryptoUtils.digest(state.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+}
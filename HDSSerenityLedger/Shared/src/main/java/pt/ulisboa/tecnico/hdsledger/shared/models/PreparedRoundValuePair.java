@@ -1,24 +1,11 @@
 package pt.ulisboa.tecnico.hdsledger.shared.models;
 
 /**
- * Stores a prepared round and value pair.
+ * Stores a prepared round and the digest of the prepared value.
  */
-public record PreparedRoundValuePair(int round, Block value) {
+public record PreparedRoundValuePair(int round, String valueDigest) {
 
     public boolean isNull() {
-        return round == -1 && value == null;
-    }
-
-    @Override
-    public boolean equals(Object obj) {
-        if (obj == this)
-            return true;
-
-        if (!(obj instanceof PreparedRoundValuePair preparedRoundValuePair))
-            return false;
-
-        return preparedRoundValuePair.round == round &&
-                ((preparedRoundValuePair.value == null && value == null) ||
-                        (preparedRoundValuePair.value != null && preparedRoundValuePair.value.equals(value)));
+        return round == -1 && valueDigest == null;
     }
 }
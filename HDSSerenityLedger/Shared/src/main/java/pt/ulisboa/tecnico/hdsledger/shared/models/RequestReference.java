@@ -0,0 +1,42 @@
+package pt.ulisboa.tecnico.hdsledger.shared.models;
+
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.BinaryWireCodec;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.CryptoUtils;
+
+import java.util.HexFormat;
+
+/**
+ * Identifies a signed request of a block, without carrying it.
+ * <p>
+ * The digest is computed over the request without its per-destination fields, so it is the same at every node,
+ * whichever copy of the request it received.
+ */
+public record RequestReference(String clientId, long requestId, String digest) {
+
+    /**
+     * Creates the reference to a request.
+     *
+     * @param request the request
+     * @return the reference
+     */
+    public static RequestReference of(SignedLedgerRequest request) {
+        return new RequestReference(request.getSenderId(), request.getLedgerRequest().getRequestId(), digestOf(request));
+    }
+
+    /**
+     * Checks whether a request is the one referenced.
+     *
+     * @param request the request
+     * @return true if the request is the referenced one, false otherwise
+     */
+    public boolean matches(SignedLedgerRequest request) {
+        return clientId.equals(request.getSenderId())
+                && requestId == request.getLedgerRequest().getRequestId()
+                && digest.equals(digestOf(request));
+    }
+
+    private static String digestOf(SignedLedgerRequest request) {
+        return HexFormat.of().formatHex(CryptoUtils.digest(BinaryWireCodec.encodePayload(request)));
+    }
+}
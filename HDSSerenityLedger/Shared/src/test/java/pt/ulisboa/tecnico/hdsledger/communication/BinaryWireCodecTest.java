@@ -0,0 +1,211 @@
+package pt.ulisboa.tecnico.hdsledger.communication;
+
+import org.junit.jupiter.api.Test;
+import pt.ulisboa.tecnico.hdsledger.shared.CollapsingSet;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.CumulativeAck;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.BinaryWireCodec;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.JsonWireCodec;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.WireCodec;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.consensus_message.ConsensusMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerCheckBalanceRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerResponse;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerTransferRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
+import pt.ulisboa.tecnico.hdsledger.shared.models.Block;
+import pt.ulisboa.tecnico.hdsledger.shared.models.CompactBlock;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryWireCodecTest {
+
+    @Test
+    void consensusMessageRoundTrip() {
+        SignedMessage signedMessage = new SignedMessage(prePrepare(), new byte[]{1, 2, 3});
+
+        byte[] encoded = BinaryWireCodec.INSTANCE.encode(signedMessage);
+        SignedMessage decoded = WireCodec.decodeAny(ByteBuffer.wrap(encoded));
+
+        assertEquals(signedMessage, decoded);
+        assertArrayEquals(encoded, BinaryWireCodec.INSTANCE.encode(decoded));
+    }
+
+    @Test
+    void compactPrePrepareRoundTrip() {
+        ConsensusMessage message = prePrepare();
+        message.setCompactValue(CompactBlock.of(message.getValue()));
+        message.setValue(null);
+        SignedMessage signedMessage = new SignedMessage(message, new byte[]{1, 2, 3});
+
+        SignedMessage decoded = WireCodec.decodeAny(ByteBuffer.wrap(BinaryWireCodec.INSTANCE.encode(signedMessage)));
+
+        assertEquals(signedMessage, decoded);
+        assertEquals(signedMessage, WireCodec.decodeAny(ByteBuffer.wrap(JsonWireCodec.INSTANCE.encode(signedMessage))));
+    }
+
+    @Test
+    void jsonDecodedBlockIsImmutable() {
+        SignedMessage signedMessage = new SignedMessage(prePrepare(), new byte[]{1});
+
+        SignedMessage decoded = WireCodec.decodeAny(ByteBuffer.wrap(JsonWireCodec.INSTANCE.encode(signedMessage)));
+        Block block = ((ConsensusMessage) decoded.getMessage()).getValue();
+
+        assertEquals(((ConsensusMessage) signedMessage.getMessage()).getValue().getDigest(), block.getDigest());
+        assertThrows(UnsupportedOperationException.class, () -> block.getRequests().clear());
+    }
+
+    @Test
+    void blockDigestIsIndependentOfDestination() {
+        Block block = prePrepare().getValue();
+        String digest = block.getDigest();
+
+        block.getRequests().forEach(request -> request.setMessageId(request.getMessageId() + 10));
+
+        assertEquals(digest, block.getDigest());
+        assertTrue(CompactBlock.of(block).getRequests().stream().allMatch(reference -> block.getRequests().stream().anyMatch(reference::matches)));
+    }
+
+    @Test
+    void ledgerResponseRoundTrip() {
+        LedgerResponse response = LedgerResponse.builder()
+                .type(Message.Type.LEDGER_ACK)
+                .senderId("1")
+                .messageId(3)
+                .destinationId("101")
+                .originalRequestId(42)
+                .originalRequestSenderId("101")
+                .message("Received transfer request")
+                .build();
+        SignedMessage signedMessage = new SignedMessage(response, null, new byte[]{9}, new byte[]{8});
+
+        SignedMessage decoded = WireCodec.decodeAny(ByteBuffer.wrap(BinaryWireCodec.INSTANCE.encode(signedMessage)));
+
+        assertEquals(response, decoded.getMessage());
+        assertEquals(response.getMessageId(), decoded.getMessage().getMessageId());
+        assertEquals("101", decoded.getMessage().getDestinationId());
+        assertArrayEquals(new byte[]{9}, decoded.getMac());
+        assertArrayEquals(new byte[]{8}, decoded.getPayloadSignature());
+    }
+
+    @Test
+    void readBalanceResponseRoundTrip() {
+        LedgerResponse response = LedgerResponse.builder()
+                .type(Message.Type.READ_BALANCE_RESPONSE)
+                .senderId("1")
+                .originalRequestId(7)
+                .originalRequestSenderId("101")
+                .message("The balance of account 101 is 100")
+                .consensusInstance(12)
+                .build();
+        SignedMessage signedMessage = new SignedMessage(response, new byte[]{1});
+
+        SignedMessage decoded = WireCodec.decodeAny(ByteBuffer.wrap(BinaryWireCodec.INSTANCE.encode(signedMessage)));
+
+        assertEquals(response, decoded.getMessage());
+        assertEquals(12, ((LedgerResponse) decoded.getMessage()).getConsensusInstance());
+        assertEquals(response, WireCodec.decodeAny(ByteBuffer.wrap(JsonWireCodec.INSTANCE.encode(signedMessage))).getMessage());
+    }
+
+    @Test
+    void payloadIsIndependentOfDestination() {
+        ConsensusMessage message = prePrepare();
+        byte[] payload = BinaryWireCodec.encodePayload(message);
+
+        message.setMessageId(6);
+        message.setDestinationId("3");
+        message.setCumulativeAck(null);
+
+        assertArrayEquals(payload, BinaryWireCodec.encodePayload(message));
+    }
+
+    @Test
+    void encodingIsIndependentOfWireFormat() {
+        Message request = SignedLedgerRequest.builder()
+                .type(Message.Type.BALANCE)
+                .senderId("101")
+                .messageId(4)
+                .destinationId("1")
+                .ledgerRequest(LedgerCheckBalanceRequest.builder().requestId(3).accountId("101").requesterId("101").build())
+                .signature(new byte[]{2})
+                .build();
+        Message ack = Message.builder()
+                .type(Message.Type.ACK)
+                .senderId("2")
+                .destinationId("1")
+                .cumulativeAck(new CumulativeAck(4, List.of()))
+                .build();
+
+        for (Message message : List.of(prePrepare(), request, ack)) {
+            SignedMessage signedMessage = new SignedMessage(message, new byte[]{1});
+
+            SignedMessage fromJson = WireCodec.decodeAny(ByteBuffer.wrap(JsonWireCodec.INSTANCE.encode(signedMessage)));
+
+            assertArrayEquals(BinaryWireCodec.encodeMessage(message), BinaryWireCodec.encodeMessage(fromJson.getMessage()));
+        }
+    }
+
+    @Test
+    void binaryIsSmallerThanJson() {
+        SignedMessage signedMessage = new SignedMessage(prePrepare(), new byte[256]);
+
+        assertTrue(BinaryWireCodec.INSTANCE.encode(signedMessage).length < JsonWireCodec.INSTANCE.encode(signedMessage).length / 2);
+    }
+
+    @Test
+    void truncatedMessageIsRejected() {
+        byte[] encoded = BinaryWireCodec.INSTANCE.encode(new SignedMessage(prePrepare(), new byte[]{1}));
+        byte[] truncated = Arrays.copyOf(encoded, encoded.length / 2);
+
+        assertThrows(HDSSException.class, () -> WireCodec.decodeAny(ByteBuffer.wrap(truncated)));
+    }
+
+    private static ConsensusMessage prePrepare() {
+        List<SignedLedgerRequest> requests = new ArrayList<>();
+        requests.add(SignedLedgerRequest.builder()
+                .type(Message.Type.TRANSFER)
+                .senderId("101")
+                .messageId(7)
+                .ledgerRequest(LedgerTransferRequest.builder()
+                        .requestId(1)
+                        .sourceAccountId("101")
+                        .destinationAccountId("102")
+                        .amount(10.5)
+                        .build())
+                .signature(new byte[256])
+                .build());
+        requests.add(SignedLedgerRequest.builder()
+                .type(Message.Type.BALANCE)
+                .senderId("102")
+                .messageId(8)
+                .ledgerRequest(LedgerCheckBalanceRequest.builder()
+                        .requestId(2)
+                        .accountId("101")
+                        .requesterId("102")
+                        .build())
+                .signature(new byte[256])
+                .build());
+
+        return ConsensusMessage.builder()
+                .type(Message.Type.PRE_PREPARE)
+                .senderId("1")
+                .messageId(5)
+                .destinationId("2")
+                .cumulativeAck(new CumulativeAck(3, List.of(new CollapsingSet.Range(5, 6))))
+                .consensusInstance(1)
+                .round(2)
+                .preparedRound(-1)
+                .value(new Block(requests, "1"))
+                .valueDigest(new Block(requests, "1").getDigest())
+                .build();
+    }
+}
@@ -0,0 +1,122 @@
+package pt.ulisboa.tecnico.hdsledger.communication;
+
+import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.SignedMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.BinaryWireCodec;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.JsonWireCodec;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.codec.WireCodec;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.consensus_message.ConsensusMessage;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerTransferRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.models.Block;
+import pt.ulisboa.tecnico.hdsledger.shared.models.CompactBlock;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the pre-prepare messages with full blocks against the ones with compact blocks: the bytes the leader
+ * uploads for each proposal and the time to build and encode the message.
+ * <p>
+ * Not run by the test suite. Run it with the test classpath, for instance
+ * {@code java -cp Shared/target/classes:Shared/target/test-classes:<gson jar> pt.ulisboa.tecnico.hdsledger.communication.CompactBlockBenchmark [nodes]}.
+ */
+public class CompactBlockBenchmark {
+
+    private static final int[] BLOCK_SIZES = {3, 10, 100, 1000};
+    private static final int ITERATIONS = 200;
+    // Size of an RSA-2048 signature
+    private static final int SIGNATURE_SIZE = 256;
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+
+        System.out.println(MessageFormat.format("Leader upload per proposal to {0} nodes (bytes), and time to build and encode a pre-prepare (us)",
+                String.valueOf(nodes - 1)));
+        System.out.println("requests | format | full bytes | compact bytes | saved | full us | compact us");
+
+        for (int blockSize : BLOCK_SIZES) {
+            Block block = block(blockSize);
+
+            for (WireCodec codec : List.of(BinaryWireCodec.INSTANCE, JsonWireCodec.INSTANCE)) {
+                long fullBytes = (long) (nodes - 1) * encode(codec, prePrepare(block, false)).length;
+                long compactBytes = (long) (nodes - 1) * encode(codec, prePrepare(block, true)).length;
+
+                double fullMicros = measure(codec, block, false);
+                double compactMicros = measure(codec, block, true);
+
+                System.out.println(MessageFormat.format("{0} | {1} | {2} | {3} | {4}% | {5} | {6}",
+                        String.valueOf(blockSize),
+                        codec == BinaryWireCodec.INSTANCE ? "BINARY" : "JSON",
+                        String.valueOf(fullBytes),
+                        String.valueOf(compactBytes),
+                        String.valueOf(Math.round(100.0 * (fullBytes - compactBytes) / fullBytes)),
+                        String.format("%.1f", fullMicros),
+                        String.format("%.1f", compactMicros)));
+            }
+        }
+    }
+
+    private static double measure(WireCodec codec, Block block, boolean compact) {
+        // Warm up
+        for (int i = 0; i < ITERATIONS; i++)
+            encode(codec, prePrepare(block, compact));
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++)
+            encode(codec, prePrepare(block, compact));
+
+        return (System.nanoTime() - start) / 1000.0 / ITERATIONS;
+    }
+
+    private static byte[] encode(WireCodec codec, ConsensusMessage message) {
+        return codec.encode(new SignedMessage(message, new byte[SIGNATURE_SIZE]));
+    }
+
+    private static ConsensusMessage prePrepare(Block block, boolean compact) {
+        // The leader stores every proposed block by its digest, whatever the format
+        String digest = block.getDigest();
+
+        var builder = ConsensusMessage.builder()
+                .type(Message.Type.PRE_PREPARE)
+                .senderId("1")
+                .messageId(1)
+                .consensusInstance(1)
+                .round(1)
+                .preparedRound(-1);
+
+        if (compact)
+            builder.compactValue(CompactBlock.of(block)).valueDigest(digest);
+        else
+            builder.value(block);
+
+        return builder.build();
+    }
+
+    private static Block block(int size) {
+        Random random = new Random(size);
+        List<SignedLedgerRequest> requests = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] signature = new byte[SIGNATURE_SIZE];
+            random.nextBytes(signature);
+
+            String clientId = String.valueOf(101 + i % 10);
+            requests.add(SignedLedgerRequest.builder()
+                    .type(Message.Type.TRANSFER)
+                    .senderId(clientId)
+                    .messageId(i)
+                    .ledgerRequest(LedgerTransferRequest.builder()
+                            .requestId(i)
+                            .sourceAccountId(clientId)
+                            .destinationAccountId(String.valueOf(101 + (i + 1) % 10))
+                            .amount(random.nextInt(100))
+                            .build())
+                    .signature(signature)
+                    .build());
+        }
+
+        return new Block(requests, "1");
+    }
+}
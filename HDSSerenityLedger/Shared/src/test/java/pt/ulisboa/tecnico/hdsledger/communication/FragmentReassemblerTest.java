@@ -0,0 +1,110 @@
+package pt.ulisboa.tecnico.hdsledger.communication;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.FragmentReassembler;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.Fragmenter;
+import pt.ulisboa.tecnico.hdsledger.shared.exception.HDSSException;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FragmentReassemblerTest {
+
+    private static final InetSocketAddress SOURCE = new InetSocketAddress("localhost", 3001);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final BlockingQueue<byte[]> sentAcks = new LinkedBlockingQueue<>();
+    private final FragmentReassembler reassembler = new FragmentReassembler(scheduler, 1, (ack, destination) -> sentAcks.add(ack));
+
+    @AfterEach
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void smallMessageIsNotFragmented() {
+        byte[] data = message(Fragmenter.MAX_FRAGMENT_PAYLOAD);
+
+        assertArrayEquals(new byte[][]{data}, Fragmenter.split(0, data));
+    }
+
+    @Test
+    void fragmentsAreReassembledInAnyOrder() {
+        byte[] data = message(5 * Fragmenter.MAX_FRAGMENT_PAYLOAD + 7);
+        byte[][] fragments = Fragmenter.split(1, data);
+        assertEquals(6, fragments.length);
+
+        int[] order = {5, 0, 3, 3, 1, 4};
+        for (int index : order)
+            assertNull(reassembler.add(ByteBuffer.wrap(fragments[index]), SOURCE));
+
+        ByteBuffer reassembled = reassembler.add(ByteBuffer.wrap(fragments[2]), SOURCE);
+
+        assertNotNull(reassembled);
+        assertArrayEquals(data, reassembled.array());
+    }
+
+    @Test
+    void missingFragmentsAreReported() throws InterruptedException {
+        // Long enough for the ACK to cover both fragments, rather than firing in between
+        FragmentReassembler reassembler = new FragmentReassembler(scheduler, 200, (ack, destination) -> sentAcks.add(ack));
+        byte[][] fragments = Fragmenter.split(2, message(3 * Fragmenter.MAX_FRAGMENT_PAYLOAD));
+        reassembler.add(ByteBuffer.wrap(fragments[0]), SOURCE);
+        reassembler.add(ByteBuffer.wrap(fragments[2]), SOURCE);
+
+        byte[] ack = sentAcks.poll(1, TimeUnit.SECONDS);
+        assertNotNull(ack);
+
+        Fragmenter.FragmentAck fragmentAck = Fragmenter.decodeAck(ByteBuffer.wrap(ack));
+        BitSet expected = new BitSet();
+        expected.set(0);
+        expected.set(2);
+        assertEquals(2, fragmentAck.transferId());
+        assertEquals(expected, fragmentAck.received());
+    }
+
+    @Test
+    void inconsistentFragmentIsRejected() {
+        byte[] fragment = Fragmenter.split(3, message(2 * Fragmenter.MAX_FRAGMENT_PAYLOAD))[0];
+        // Claim more fragments than the length of the message needs
+        ByteBuffer.wrap(fragment).putInt(9, 5);
+
+        assertThrows(HDSSException.class, () -> reassembler.add(ByteBuffer.wrap(fragment), SOURCE));
+    }
+
+    @Test
+    void mismatchedFragmentKeepsTheTransferInProgress() {
+        byte[] data = message(3 * Fragmenter.MAX_FRAGMENT_PAYLOAD);
+        byte[][] fragments = Fragmenter.split(4, data);
+        reassembler.add(ByteBuffer.wrap(fragments[0]), SOURCE);
+
+        // Same transfer identifier, but a message of another length
+        assertNull(reassembler.add(ByteBuffer.wrap(Fragmenter.split(4, message(2 * Fragmenter.MAX_FRAGMENT_PAYLOAD))[1]), SOURCE));
+
+        reassembler.add(ByteBuffer.wrap(fragments[1]), SOURCE);
+        ByteBuffer reassembled = reassembler.add(ByteBuffer.wrap(fragments[2]), SOURCE);
+
+        assertNotNull(reassembled);
+        assertArrayEquals(data, reassembled.array());
+    }
+
+    private static byte[] message(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,68 @@
+package pt.ulisboa.tecnico.hdsledger.communication;
+
+import org.junit.jupiter.api.Test;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.RttEstimator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RttEstimatorTest {
+
+    @Test
+    void initialRtoBeforeAnySample() {
+        var rttEstimator = new RttEstimator();
+
+        assertEquals(RttEstimator.INITIAL_RTO, rttEstimator.getRto());
+        assertEquals(-1, rttEstimator.getSmoothedRtt());
+    }
+
+    @Test
+    void rtoFollowsSmoothedRttAndVariance() {
+        var rttEstimator = new RttEstimator();
+
+        rttEstimator.addSample(100);
+        assertEquals(100, rttEstimator.getSmoothedRtt());
+        assertEquals(50, rttEstimator.getRttVariance());
+        assertEquals(300, rttEstimator.getRto());
+
+        for (int i = 0; i < 100; i++)
+            rttEstimator.addSample(100);
+        assertTrue(rttEstimator.getRto() < 110, "Timeout should converge to the RTT when the variance vanishes");
+    }
+
+    @Test
+    void rtoIsBoundedOnFastLinks() {
+        var rttEstimator = new RttEstimator();
+
+        for (int i = 0; i < 100; i++)
+            rttEstimator.addSample(0.2);
+
+        assertEquals(RttEstimator.MIN_RTO, rttEstimator.getRto());
+    }
+
+    @Test
+    void backOffDoublesUpToTheMaximum() {
+        var rttEstimator = new RttEstimator();
+        rttEstimator.addSample(100);
+
+        rttEstimator.backOff(rttEstimator.getRto());
+        assertEquals(600, rttEstimator.getRto());
+
+        for (int i = 0; i < 20; i++)
+            rttEstimator.backOff(rttEstimator.getRto());
+        assertEquals(RttEstimator.MAX_RTO, rttEstimator.getRto());
+    }
+
+    @Test
+    void messagesLostTogetherBackOffOnce() {
+        var rttEstimator = new RttEstimator();
+        rttEstimator.addSample(100);
+
+        for (int i = 0; i < 8; i++)
+            rttEstimator.backOff(300);
+        assertEquals(600, rttEstimator.getRto());
+
+        rttEstimator.backOff(600);
+        assertEquals(1200, rttEstimator.getRto());
+    }
+}
@@ -0,0 +1,71 @@
+package pt.ulisboa.tecnico.hdsledger.models;
+
+import org.junit.jupiter.api.Test;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerCheckBalanceRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerTransferRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.models.ExecutionPlan;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutionPlanTest {
+
+    @Test
+    void requestsAccessingCommonAccountsAreGroupedInBlockOrder() {
+        List<SignedLedgerRequest> requests = List.of(
+                transfer(0, "101", "102"),
+                transfer(1, "103", "104"),
+                balance(2, "102"),
+                transfer(3, "105", "106"),
+                transfer(4, "104", "101"));
+
+        ExecutionPlan plan = ExecutionPlan.of(requests, "1").orElseThrow();
+
+        assertEquals(List.of(List.of(0, 1, 2, 4), List.of(3)), plan.groups());
+    }
+
+    @Test
+    void blockCreatorAccountIsExecutedInOrder() {
+        List<SignedLedgerRequest> requests = List.of(transfer(0, "101", "102"), transfer(1, "1", "103"));
+
+        assertTrue(ExecutionPlan.of(requests, "1").isEmpty());
+    }
+
+    @Test
+    void repeatedRequestIsExecutedInOrder() {
+        SignedLedgerRequest request = transfer(0, "101", "102");
+
+        assertTrue(ExecutionPlan.of(List.of(request, transfer(1, "103", "104"), request), "1").isEmpty());
+    }
+
+    private static SignedLedgerRequest transfer(long requestId, String source, String destination) {
+        return SignedLedgerRequest.builder()
+                .type(Message.Type.TRANSFER)
+                .senderId(source)
+                .ledgerRequest(LedgerTransferRequest.builder()
+                        .requestId(requestId)
+                        .sourceAccountId(source)
+                        .destinationAccountId(destination)
+                        .amount(1)
+                        .build())
+                .signature(new byte[]{(byte) requestId})
+                .build();
+    }
+
+    private static SignedLedgerRequest balance(long requestId, String accountId) {
+        return SignedLedgerRequest.builder()
+                .type(Message.Type.BALANCE)
+                .senderId(accountId)
+                .ledgerRequest(LedgerCheckBalanceRequest.builder()
+                        .requestId(requestId)
+                        .accountId(accountId)
+                        .requesterId(accountId)
+                        .build())
+                .signature(new byte[]{(byte) requestId})
+                .build();
+    }
+}
@@ -0,0 +1,161 @@
+package pt.ulisboa.tecnico.hdsledger.models;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.Message;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerCheckBalanceRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerResponse;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.LedgerTransferRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.communication.ledger_message.SignedLedgerRequest;
+import pt.ulisboa.tecnico.hdsledger.shared.config.ClientProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.config.NodeProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.config.ProcessConfig;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.CryptoUtils;
+import pt.ulisboa.tecnico.hdsledger.shared.crypto.KeyRegistry;
+import pt.ulisboa.tecnico.hdsledger.shared.models.Block;
+import pt.ulisboa.tecnico.hdsledger.shared.models.ExecutionPlan;
+import pt.ulisboa.tecnico.hdsledger.shared.models.Ledger;
+
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LedgerTest {
+
+    private static final int CLIENTS = 16;
+    private static final String CREATOR_ID = "1";
+
+    private static ClientProcessConfig[] clientsConfig;
+    private static NodeProcessConfig[] nodesConfig;
+    private static KeyRegistry keyRegistry;
+    private static PrivateKey privateKey;
+
+    private long requestIdCounter = 0;
+
+    @BeforeAll
+    static void setUp() {
+        // Every process shares the same key pair, which is enough to sign and verify the requests
+        String publicKeyPath = getResourceAbsolutePath("public_key.der");
+        String privateKeyPath = getResourceAbsolutePath("private_key.der");
+
+        clientsConfig = IntStream.range(0, CLIENTS)
+                .mapToObj(i -> new ClientProcessConfig(String.valueOf(101 + i), "localhost", 5000 + i, null, false,
+                        privateKeyPath, publicKeyPath, ProcessConfig.ProcessBehavior.REGULAR, null, null))
+                .toArray(ClientProcessConfig[]::new);
+        nodesConfig = IntStream.range(0, 4)
+                .mapToObj(i -> new NodeProcessConfig(String.valueOf(1 + i), "localhost", 3000 + i, 4000 + i,
+                        privateKeyPath, publicKeyPath, ProcessConfig.ProcessBehavior.REGULAR, null, null, 0, null, 1, 0))
+                .toArray(NodeProcessConfig[]::new);
+        keyRegistry = new KeyRegistry(nodesConfig, clientsConfig, CREATOR_ID);
+        privateKey = CryptoUtils.getPrivateKey(privateKeyPath);
+    }
+
+    @Test
+    void parallelExecutionMatchesSerialExecution() {
+        List<SignedLedgerRequest> requests = new ArrayList<>();
+        // Each pair of clients is a group: transfers that run out of balance partway, and balance requests in between
+        for (int step = 0; step < 8; step++) {
+            for (int pair = 0; pair < CLIENTS / 2; pair++) {
+                String first = String.valueOf(101 + 2 * pair);
+                String second = String.valueOf(102 + 2 * pair);
+
+                requests.add(switch (step) {
+                    case 0, 2, 3 -> transfer(first, second, 30 + pair);
+                    case 1, 5 -> balance(first);
+                    case 4 -> transfer(first, second, 30);
+                    case 6 -> transfer(second, first, 50);
+                    default -> balance(second);
+                });
+            }
+        }
+        requests.add(transfer("101", "999", 1));
+
+        assertTrue(requests.size() >= 64);
+        assertTrue(ExecutionPlan.of(requests, CREATOR_ID).orElseThrow().groups().size() > 1);
+
+        assertSameAsSerial(requests, CREATOR_ID);
+    }
+
+    @Test
+    void blockTouchingTheCreatorMatchesSerialExecution() {
+        List<SignedLedgerRequest> requests = new ArrayList<>();
+        // Every client pays the creator until it runs out of balance, while the creator checks its own
+        for (int i = 0; i < 64; i++)
+            requests.add(i % 4 == 0 ? balance("101") : transfer(String.valueOf(102 + i % (CLIENTS - 1)), "101", 40));
+
+        assertTrue(ExecutionPlan.of(requests, "101").isEmpty());
+
+        assertSameAsSerial(requests, "101");
+    }
+
+    /**
+     * Adds the requests as a single block, and one by one in blocks of their own, which are always executed in order
+     * with the fees credited right away, checking that both reach the same state and responses.
+     */
+    private void assertSameAsSerial(List<SignedLedgerRequest> requests, String creatorId) {
+        Ledger ledger = newLedger();
+        List<LedgerResponse> responses = ledger.addBlock(1, new Block(requests, creatorId));
+
+        Ledger serialLedger = newLedger();
+        List<LedgerResponse> serialResponses = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++)
+            serialResponses.addAll(serialLedger.addBlock(i + 1, new Block(List.of(requests.get(i)), creatorId)));
+
+        assertEquals(serialResponses, responses);
+        assertEquals(serialLedger.getStateDigest(), ledger.getStateDigest());
+        assertTrue(responses.stream().anyMatch(response -> response.getMessage().contains("no longer valid")));
+    }
+
+    private Ledger newLedger() {
+        return new Ledger(clientsConfig, nodesConfig, nodesConfig[0], keyRegistry);
+    }
+
+    private SignedLedgerRequest transfer(String source, String destination, double amount) {
+        var transferRequest = LedgerTransferRequest.builder()
+                .requestId(requestIdCounter++)
+                .sourceAccountId(source)
+                .destinationAccountId(destination)
+                .amount(amount)
+                .build();
+
+        return SignedLedgerRequest.builder()
+                .type(Message.Type.TRANSFER)
+                .senderId(source)
+                .ledgerRequest(transferRequest)
+                .signature(CryptoUtils.sign(transferRequest, privateKey))
+                .build();
+    }
+
+    private SignedLedgerRequest balance(String accountId) {
+        var balanceRequest = LedgerCheckBalanceRequest.builder()
+                .requestId(requestIdCounter++)
+                .accountId(accountId)
+                .requesterId(accountId)
+                .build();
+
+        return SignedLedgerRequest.builder()
+                .type(Message.Type.BALANCE)
+                .senderId(accountId)
+                .ledgerRequest(balanceRequest)
+                .signature(CryptoUtils.sign(balanceRequest, privateKey))
+                .build();
+    }
+
+    private static String getResourceAbsolutePath(String resourcePath) {
+        var resource = Thread.currentThread().getContextClassLoader().getResource(resourcePath);
+
+        if (resource == null) throw new IllegalArgumentException("Resource not found: " + resourcePath);
+
+        try {
+            return Paths.get(resource.toURI()).toAbsolutePath().toString();
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException("Invalid resource path: " + resourcePath, e);
+        }
+    }
+}